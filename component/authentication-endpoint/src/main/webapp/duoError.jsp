@@ -53,6 +53,8 @@
                     errorMessage = "Authentication failed due to mismatch in mobile numbers. Please update the correct registered duo mobile number in user profile.";
                 } else if (errorMessage.equalsIgnoreCase("user.not.found")) {
                     errorMessage = "Couldn't get the verified user name. Authentication Failed.";
+                } else if (errorMessage.equalsIgnoreCase("duo.unavailable")) {
+                    errorMessage = "Duo is temporarily unavailable. Please try again later.";
                 }
             }
         }
@@ -0,0 +1,60 @@
+<%--
+  ~ Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+  ~
+  ~ WSO2 Inc. licenses this file to you under the Apache License,
+  ~ Version 2.0 (the "License"); you may not use this file except
+  ~ in compliance with the License.
+  ~ You may obtain a copy of the License at
+  ~
+  ~ http://www.apache.org/licenses/LICENSE-2.0
+  ~
+  ~ Unless required by applicable law or agreed to in writing,
+  ~ software distributed under the License is distributed on an
+  ~ "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+  ~ KIND, either express or implied.  See the License for the
+  ~ specific language governing permissions and limitations
+  ~ under the License.
+  --%>
+<%@ page import="java.net.InetAddress" %>
+<%@ page import="java.util.Map" %>
+<%@ page import="org.wso2.carbon.identity.authenticator.duo.DuoHealthProber" %>
+<%@ page import="org.wso2.carbon.identity.authenticator.duo.DuoHostHealth" %>
+<%@ page language="java" contentType="application/json; charset=UTF-8" pageEncoding="UTF-8" session="false"
+         trimDirectiveWhitespaces="true" %>
+<%
+    // Health of the Duo API hosts, read from the background health prober without calling Duo. A Duo host being
+    // down does not make this node unready, so the status code is always 200 and the outcome is in the "status"
+    // field. Host names are only reported to callers on this machine, since they tell which tenants use Duo.
+    response.setHeader("Cache-Control", "no-store");
+    DuoHealthProber healthProber = DuoHealthProber.getActiveProber();
+    boolean local;
+    try {
+        local = InetAddress.getByName(request.getRemoteAddr()).isLoopbackAddress();
+    } catch (Exception e) {
+        local = false;
+    }
+    StringBuilder hosts = new StringBuilder();
+    int down = 0;
+    if (healthProber != null) {
+        for (Map.Entry<String, DuoHostHealth> entry : healthProber.getHealthByHost().entrySet()) {
+            DuoHostHealth health = entry.getValue();
+            down += health.isAvailable() ? 0 : 1;
+            if (!local) {
+                continue;
+            }
+            if (hosts.length() > 0) {
+                hosts.append(',');
+            }
+            hosts.append('"').append(entry.getKey().replace("\\", "\\\\").replace("\"", "\\\"")).append("\":{")
+                    .append("\"available\":").append(health.isAvailable())
+                    .append(",\"availability\":").append(health.getAvailability())
+                    .append(",\"latencyMillis\":").append(health.getAverageLatencyMillis())
+                    .append(",\"consecutiveFailures\":").append(health.getConsecutiveFailures())
+                    .append(",\"lastChecked\":").append(health.getLastCheckedAt())
+                    .append('}');
+        }
+    }
+    String status = healthProber == null ? "UNKNOWN" : down == 0 ? "UP" : "DEGRADED";
+    out.print("{\"status\":\"" + status + "\",\"hostsDown\":" + down
+            + (local ? ",\"hosts\":{" + hosts + "}" : "") + "}");
+%>
\ No newline at end of file
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Derives the timeout of each Duo host and endpoint from its observed latency: the p99 plus a margin, kept between
+ * a floor and a ceiling. Until an endpoint has enough samples the ceiling is used.
+ */
+public class DuoAdaptiveTimeouts {
+
+    private static final double QUANTILE = 0.99;
+    private static final long GRANULARITY_MILLIS = 100;
+    private static final int DECAY_INTERVAL = 1000;
+
+    private final long floorMillis;
+    private final long ceilingMillis;
+    private final int marginPercent;
+    private final int minimumSamples;
+    private final ConcurrentMap<String, DuoLatencyEstimator> estimators = new ConcurrentHashMap<>();
+
+    /**
+     * @param floorMillis    the shortest timeout in milliseconds
+     * @param ceilingMillis  the longest timeout in milliseconds, also used until there are enough samples
+     * @param marginPercent  the margin added to the p99 latency, in percent of it
+     * @param minimumSamples the number of samples needed before the timeout adapts
+     */
+    public DuoAdaptiveTimeouts(long floorMillis, long ceilingMillis, int marginPercent, int minimumSamples) {
+        this.floorMillis = Math.max(floorMillis, GRANULARITY_MILLIS);
+        this.ceilingMillis = Math.max(ceilingMillis, this.floorMillis);
+        this.marginPercent = Math.max(marginPercent, 0);
+        this.minimumSamples = minimumSamples;
+    }
+
+    /**
+     * Record the latency of a call that got a reply or timed out.
+     *
+     * @param host          the Duo API host
+     * @param uri           the endpoint path
+     * @param latencyMillis the latency in milliseconds
+     */
+    public void record(String host, String uri, long latencyMillis) {
+        String key = getKey(host, uri);
+        DuoLatencyEstimator estimator = estimators.get(key);
+        if (estimator == null) {
+            estimator = estimators.computeIfAbsent(key, k -> new DuoLatencyEstimator(DECAY_INTERVAL));
+        }
+        estimator.record(latencyMillis);
+    }
+
+    /**
+     * @param host the Duo API host
+     * @param uri  the endpoint path
+     * @return the timeout in milliseconds, rounded up to a tenth of a second so that few HTTP clients are needed
+     */
+    public long getTimeoutMillis(String host, String uri) {
+        long p99 = getP99Millis(host, uri);
+        if (p99 < 0) {
+            return ceilingMillis;
+        }
+        long timeout = p99 + p99 * marginPercent / 100;
+        timeout = (timeout + GRANULARITY_MILLIS - 1) / GRANULARITY_MILLIS * GRANULARITY_MILLIS;
+        return Math.min(Math.max(timeout, floorMillis), ceilingMillis);
+    }
+
+    /**
+     * @param host the Duo API host
+     * @param uri  the endpoint path
+     * @return the estimated p99 latency in milliseconds, or -1 if there are not enough samples
+     */
+    public long getP99Millis(String host, String uri) {
+        return getQuantileMillis(host, uri, QUANTILE);
+    }
+
+    /**
+     * @param host     the Duo API host
+     * @param uri      the endpoint path
+     * @param quantile the quantile, such as 0.95
+     * @return the estimated latency quantile in milliseconds, or -1 if there are not enough samples
+     */
+    public long getQuantileMillis(String host, String uri, double quantile) {
+        DuoLatencyEstimator estimator = estimators.get(getKey(host, uri));
+        if (estimator == null || estimator.getSampleCount() < minimumSamples) {
+            return -1;
+        }
+        return estimator.getQuantile(quantile);
+    }
+
+    /**
+     * @return the latency estimators, keyed by host and endpoint path
+     */
+    public Map<String, DuoLatencyEstimator> getEstimators() {
+        return Collections.unmodifiableMap(estimators);
+    }
+
+    private static String getKey(String host, String uri) {
+        return (host == null ? "" : host.toLowerCase()) + uri;
+    }
+}
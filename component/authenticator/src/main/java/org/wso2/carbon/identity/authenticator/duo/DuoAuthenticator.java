@@ -25,7 +25,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.identity.application.authentication.framework.AbstractApplicationAuthenticator;
 import org.wso2.carbon.identity.application.authentication.framework.FederatedApplicationAuthenticator;
 import org.wso2.carbon.identity.application.authentication.framework.LocalApplicationAuthenticator;
@@ -47,12 +47,21 @@ import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 /**
  * Mobile based 2nd factor Local Authenticator
@@ -60,6 +69,10 @@ import java.util.Map;
 public class DuoAuthenticator extends AbstractApplicationAuthenticator implements FederatedApplicationAuthenticator {
     private static final long serialVersionUID = 4438354156955223654L;
     private static Log log = LogFactory.getLog(DuoAuthenticator.class);
+    private static final DuoPhoneNumberNormalizer DEFAULT_PHONE_NUMBER_NORMALIZER =
+            new DuoPhoneNumberNormalizer(null);
+    private static final double HEDGE_QUANTILE = 0.95;
+    private static final DuoUserResponseParser USER_RESPONSE_PARSER = new DuoUserResponseParser();
 
     @Override
     public boolean canHandle(HttpServletRequest request) {
@@ -91,6 +104,15 @@ public class DuoAuthenticator extends AbstractApplicationAuthenticator implement
         if (context.isRetrying()) {
             checkStatusCode(response, context);
         } else if (StringUtils.isNotEmpty(username)) {
+            DuoConnectionWarmer connectionWarmer = DuoAuthenticatorServiceComponent.getConnectionWarmer();
+            if (connectionWarmer != null) {
+                // Open the connections for the user info lookup while the user is in the Duo iframe.
+                connectionWarmer.warmUp(authenticatorProperties.get(DuoAuthenticatorConstants.HOST));
+            }
+            DuoHealthProber healthProber = DuoAuthenticatorServiceComponent.getHealthProber();
+            if (healthProber != null) {
+                healthProber.register(authenticatorProperties.get(DuoAuthenticatorConstants.HOST));
+            }
             String sig_request = DuoWeb.signRequest(authenticatorProperties.get
                     (DuoAuthenticatorConstants.INTEGRATION_KEY), authenticatorProperties.get
                     (DuoAuthenticatorConstants.SECRET_KEY), integrationSecretKey, username);
@@ -104,6 +126,7 @@ public class DuoAuthenticator extends AbstractApplicationAuthenticator implement
                     DuoAuthenticatorConstants.RequestParams.DUO_HOST + "=" +
                     encoder.encode(authenticatorProperties.get(DuoAuthenticatorConstants.HOST));
             String DuoUrl = IdentityUtil.getServerURL(enrollmentPage, false, false);
+            prefetchUserData(context, username);
             try {
                 response.sendRedirect(DuoUrl);
             } catch (IOException e) {
@@ -137,74 +160,396 @@ public class DuoAuthenticator extends AbstractApplicationAuthenticator implement
     }
 
     /**
-     * Get DUO user's information
+     * Start fetching DUO user's information without blocking the calling thread
      *
      * @param context  the authentication context
      * @param username the username
-     * @return DUO user information
-     * @throws AuthenticationFailedException
+     * @return a future completed with the DUO user information
      */
-    private JSONArray getUserInfo(AuthenticationContext context, String username) throws AuthenticationFailedException {
+    private CompletableFuture<DuoUserRecord> getUserInfoAsync(AuthenticationContext context, final String username) {
         Map<String, String> authenticatorProperties = context.getAuthenticatorProperties();
-        DuoHttp duoRequest = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET,
-                authenticatorProperties.get(DuoAuthenticatorConstants.HOST), DuoAuthenticatorConstants.API_USER);
+        final String host = authenticatorProperties.get(DuoAuthenticatorConstants.HOST);
+        final String ikey = authenticatorProperties.get(DuoAuthenticatorConstants.ADMIN_IKEY);
+        final String skey = authenticatorProperties.get(DuoAuthenticatorConstants.ADMIN_SKEY);
+        final String userNameFromContext = String.valueOf(context.getProperty(DuoAuthenticatorConstants
+                .DUO_USERNAME));
+        final DuoUserLookupCoalescer coalescer = DuoAuthenticatorServiceComponent.getUserLookupCoalescer();
+        Supplier<CompletableFuture<DuoUserRecord>> loader = () -> {
+            // Only a lookup that calls DUO is counted against the tenant, so resolve it on a cache miss only.
+            final int tenantId = IdentityTenantUtil.getTenantIdOfUser(userNameFromContext);
+            if (coalescer == null) {
+                return fetchUserInfo(host, ikey, skey, username, tenantId);
+            }
+            return coalescer.lookup(host, ikey, username, () -> fetchUserInfo(host, ikey, skey, username, tenantId));
+        };
+        DuoUserInfoCache userInfoCache = DuoAuthenticatorServiceComponent.getUserInfoCache();
+        if (userInfoCache == null) {
+            return loader.get();
+        }
+        return userInfoCache.get(host, username, loader);
+    }
+
+    /**
+     * Drop the cached DUO user's information, so that the next attempt reads it from DUO again
+     *
+     * @param context  the authentication context
+     * @param username the username
+     */
+    private void invalidateUserInfo(AuthenticationContext context, String username) {
+        DuoUserInfoCache userInfoCache = DuoAuthenticatorServiceComponent.getUserInfoCache();
+        if (userInfoCache != null) {
+            userInfoCache.invalidate(context.getAuthenticatorProperties().get(DuoAuthenticatorConstants.HOST),
+                    username);
+        }
+    }
+
+    /**
+     * Drop the cached mobile claim value of the user
+     *
+     * @param username the username
+     * @return whether a mobile claim value was cached for the user
+     */
+    private boolean invalidateMobileClaim(String username) {
+        DuoMobileClaimCache mobileClaimCache = DuoAuthenticatorServiceComponent.getMobileClaimCache();
+        return mobileClaimCache != null && mobileClaimCache.invalidate(IdentityTenantUtil.getTenantIdOfUser(username),
+                MultitenantUtils.getTenantAwareUsername(username));
+    }
+
+    /**
+     * Call the DUO Admin API for the user's information
+     *
+     * @param host     the DUO API host
+     * @param ikey     the admin integration key
+     * @param skey     the admin secret key
+     * @param username the username
+     * @param tenantId the tenant the call is made for
+     * @return a future completed with the DUO user information
+     */
+    private CompletableFuture<DuoUserRecord> fetchUserInfo(String host, String ikey, String skey, String username,
+                                                           int tenantId) {
+        DuoHttp duoRequest = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET, host,
+                DuoAuthenticatorConstants.API_USER);
         duoRequest.addParam(DuoAuthenticatorConstants.DUO_USERNAME, username);
         try {
-            duoRequest.signRequest(authenticatorProperties.get(DuoAuthenticatorConstants.ADMIN_IKEY),
-                    authenticatorProperties.get(DuoAuthenticatorConstants.ADMIN_SKEY));
-            //Execute Duo API request
-            Object result = duoRequest.executeRequest();
-            JSONArray userInfo = new JSONArray(result.toString());
-            if (userInfo.length() == 0) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Couldn't get the DUO user information");
+            duoRequest.signRequest(ikey, skey);
+        } catch (UnsupportedEncodingException e) {
+            CompletableFuture<DuoUserRecord> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        duoRequest.setResponseParser(USER_RESPONSE_PARSER);
+        //Execute Duo API request
+        return executeRequest(host, ikey, tenantId, duoRequest).thenApply(result -> (DuoUserRecord) result);
+    }
+
+    /**
+     * Execute a signed DUO API request within the limits of the tenant and the rate limit of the integration key,
+     * failing fast while the circuit breaker of the host is open
+     *
+     * @param host       the DUO API host
+     * @param ikey       the integration key the request is signed with
+     * @param tenantId   the tenant the call is made for
+     * @param duoRequest the signed request
+     * @return a future completed with the "response" element of the DUO reply
+     */
+    private CompletableFuture<Object> executeRequest(final String host, final String ikey, int tenantId,
+                                                     final DuoHttp duoRequest) {
+        final DuoRateLimiter rateLimiter = DuoAuthenticatorServiceComponent.getRateLimiter();
+        Supplier<CompletableFuture<Object>> call;
+        if (rateLimiter == null) {
+            call = () -> executeRequest(host, duoRequest);
+        } else {
+            duoRequest.setRateLimiter(rateLimiter, ikey);
+            call = () -> rateLimiter.execute(ikey, () -> executeRequest(host, duoRequest));
+        }
+        DuoTenantBulkhead tenantBulkhead = DuoAuthenticatorServiceComponent.getTenantBulkhead();
+        if (tenantBulkhead == null) {
+            return call.get();
+        }
+        return tenantBulkhead.execute(tenantId, call);
+    }
+
+    private CompletableFuture<Object> executeRequest(final String host, final DuoHttp duoRequest) {
+        DuoHealthProber healthProber = DuoAuthenticatorServiceComponent.getHealthProber();
+        if (healthProber != null && !healthProber.isAvailable(host)) {
+            CompletableFuture<Object> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new DuoUnavailableException("Duo host " + host
+                    + " is failing its health probes"));
+            return rejected;
+        }
+        DuoRequestExecutor requestExecutor = DuoAuthenticatorServiceComponent.getRequestExecutor();
+        DuoCircuitBreakerRegistry circuitBreakerRegistry = DuoAuthenticatorServiceComponent.getCircuitBreakerRegistry();
+        final DuoCircuitBreaker circuitBreaker = circuitBreakerRegistry != null ? circuitBreakerRegistry.get(host)
+                : null;
+        if (circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+            CompletableFuture<Object> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new DuoUnavailableException("Circuit breaker for Duo host " + host
+                    + " is open"));
+            return rejected;
+        }
+        final DuoAdaptiveTimeouts adaptiveTimeouts = DuoAuthenticatorServiceComponent.getAdaptiveTimeouts();
+        if (adaptiveTimeouts != null) {
+            duoRequest.setTimeout(adaptiveTimeouts.getTimeoutMillis(host, duoRequest.getUri()), TimeUnit.MILLISECONDS);
+        }
+        DuoRetryPolicy retryPolicy = DuoAuthenticatorServiceComponent.getRetryPolicy();
+        if (retryPolicy != null) {
+            duoRequest.setRetryPolicy(retryPolicy);
+            if (retryPolicy.isHedgingEnabled() && adaptiveTimeouts != null) {
+                long hedgeDelay = adaptiveTimeouts.getQuantileMillis(host, duoRequest.getUri(), HEDGE_QUANTILE);
+                if (hedgeDelay > 0) {
+                    duoRequest.setHedgeDelay(hedgeDelay, TimeUnit.MILLISECONDS);
                 }
-                context.setProperty(DuoAuthenticatorConstants.USER_NOT_REGISTERED_IN_DUO, true);
-                throw new AuthenticationFailedException("Couldn't find the user information ");
             }
-            return userInfo;
-        } catch (UnsupportedEncodingException e) {
-            throw new AuthenticationFailedException(DuoAuthenticatorConstants.DuoErrors.ERROR_SIGN_REQUEST, e);
-        } catch (JSONException e) {
-            throw new AuthenticationFailedException(DuoAuthenticatorConstants.DuoErrors.ERROR_JSON, e);
-        } catch (Exception e) {
+        }
+        final long start = System.nanoTime();
+        CompletableFuture<Object> response = requestExecutor != null ? requestExecutor.execute(duoRequest)
+                : duoRequest.executeRequestAsync();
+        if (circuitBreaker == null && adaptiveTimeouts == null) {
+            return response;
+        }
+        response.whenComplete((result, error) -> {
+            long duration = System.nanoTime() - start;
+            if (adaptiveTimeouts != null && (error == null || isTimeout(error))) {
+                adaptiveTimeouts.record(host, duoRequest.getUri(), TimeUnit.NANOSECONDS.toMillis(duration));
+            }
+            if (circuitBreaker == null) {
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause()
+                    : error;
+            if (cause instanceof CancellationException || cause instanceof DuoUnavailableException) {
+                circuitBreaker.onIgnored();
+            } else if (cause != null && DuoCircuitBreaker.isFailure(cause, duoRequest.getStatusCode())) {
+                circuitBreaker.onFailure(duration);
+            } else {
+                // Duo answered, even if with an error of the request.
+                circuitBreaker.onSuccess(duration);
+            }
+        });
+        return response;
+    }
+
+    private static boolean isTimeout(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof TimeoutException || cause instanceof InterruptedIOException;
+    }
+
+    /**
+     * Wait for the DUO user's information
+     *
+     * @param context  the authentication context
+     * @param userInfo the pending DUO user information
+     * @param deadline the System.nanoTime() by which the authentication step must finish
+     * @return DUO user information
+     * @throws AuthenticationFailedException
+     */
+    private DuoUserRecord awaitUserInfo(AuthenticationContext context, Future<DuoUserRecord> userInfo, long deadline)
+            throws AuthenticationFailedException {
+        DuoUserRecord result;
+        try {
+            result = userInfo.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            userInfo.cancel(true);
+            context.setProperty(DuoAuthenticatorConstants.DUO_UNAVAILABLE, true);
+            throw new AuthenticationFailedException(DuoAuthenticatorConstants.DuoErrors.ERROR_STEP_DEADLINE, e);
+        } catch (InterruptedException e) {
+            userInfo.cancel(true);
+            Thread.currentThread().interrupt();
             throw new AuthenticationFailedException(DuoAuthenticatorConstants.DuoErrors.ERROR_EXECUTE_REQUEST, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DuoUnavailableException) {
+                context.setProperty(DuoAuthenticatorConstants.DUO_UNAVAILABLE, true);
+                throw new AuthenticationFailedException(DuoAuthenticatorConstants.DuoErrors.ERROR_DUO_UNAVAILABLE,
+                        e.getCause());
+            } else if (e.getCause() instanceof UnsupportedEncodingException) {
+                throw new AuthenticationFailedException(DuoAuthenticatorConstants.DuoErrors.ERROR_SIGN_REQUEST,
+                        e.getCause());
+            } else if (e.getCause() instanceof JSONException) {
+                throw new AuthenticationFailedException(DuoAuthenticatorConstants.DuoErrors.ERROR_JSON, e.getCause());
+            }
+            throw new AuthenticationFailedException(DuoAuthenticatorConstants.DuoErrors.ERROR_EXECUTE_REQUEST,
+                    e.getCause());
+        }
+        return result;
+    }
+
+    /**
+     * Check that the user is registered in DUO
+     *
+     * @param context    the authentication context
+     * @param userRecord the DUO user information
+     * @throws AuthenticationFailedException
+     */
+    private void checkRegistered(AuthenticationContext context, DuoUserRecord userRecord)
+            throws AuthenticationFailedException {
+        if (!userRecord.isRegistered()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Couldn't get the DUO user information");
+            }
+            context.setProperty(DuoAuthenticatorConstants.USER_NOT_REGISTERED_IN_DUO, true);
+            throw new AuthenticationFailedException("Couldn't find the user information ");
         }
     }
 
+    /**
+     * Read the DUO user's information again, instead of a record that was read before DUO verified the user
+     *
+     * @param context  the authentication context
+     * @param username the username
+     * @return a future completed with the DUO user information
+     */
+    private CompletableFuture<DuoUserRecord> reloadUserInfo(AuthenticationContext context, String username) {
+        invalidateUserInfo(context, username);
+        return getUserInfoAsync(context, username);
+    }
+
     /**
      * Check the validation of phone numbers
      *
      * @param context  the authentication context
      * @param username the user name
+     * @param deadline the System.nanoTime() by which the authentication step must finish
      * @throws AuthenticationFailedException
      * @throws JSONException
      */
-    private void checkPhoneNumberValidation(AuthenticationContext context, String username)
+    private void checkPhoneNumberValidation(AuthenticationContext context, String username, long deadline)
             throws AuthenticationFailedException, JSONException {
         String userNameFromContext = String.valueOf(context.getProperty(DuoAuthenticatorConstants.DUO_USERNAME));
-        String mobile = getMobileClaimValue(userNameFromContext);
+        DuoUserPrefetcher userPrefetcher = DuoAuthenticatorServiceComponent.getUserPrefetcher();
+        DuoUserPrefetcher.Prefetch prefetch = userPrefetcher != null ?
+                userPrefetcher.take(context.getContextIdentifier(), username) : null;
+        // Start the DUO lookup first, so that it runs while the mobile claim is read from the user store.
+        CompletableFuture<DuoUserRecord> pendingUserInfo = prefetch != null ? prefetch.getUserInfo() : null;
+        // A prefetched or cached record may have been read before the user enrolled or changed phones in DUO.
+        boolean reusedUserInfo = pendingUserInfo != null && !pendingUserInfo.isCompletedExceptionally();
+        if (!reusedUserInfo) {
+            pendingUserInfo = getUserInfoAsync(context, username);
+            reusedUserInfo = DuoAuthenticatorServiceComponent.getUserInfoCache() != null;
+        }
+        String mobile;
+        try {
+            mobile = prefetch != null ? awaitMobileClaimValue(prefetch.getMobileClaim(), userNameFromContext, deadline)
+                    : getMobileClaimValue(userNameFromContext);
+        } catch (AuthenticationFailedException | RuntimeException e) {
+            pendingUserInfo.cancel(true);
+            throw e;
+        }
         if (StringUtils.isNotEmpty(mobile)) {
-            JSONArray userInfo = getUserInfo(context, username);
-            context.setProperty(DuoAuthenticatorConstants.USER_INFO, userInfo);
-            JSONObject object = userInfo.getJSONObject(0);
-            JSONArray phoneArray = (JSONArray) object.get(DuoAuthenticatorConstants.DUO_PHONES);
-            if (isValidPhoneNumber(context, phoneArray, mobile)) {
+            DuoUserRecord userRecord = awaitUserInfo(context, pendingUserInfo, deadline);
+            if (!userRecord.isRegistered() && reusedUserInfo) {
+                // DUO has just verified the user, so a reused "not registered" record is out of date.
+                userRecord = awaitUserInfo(context, reloadUserInfo(context, username), deadline);
+                reusedUserInfo = false;
+            }
+            checkRegistered(context, userRecord);
+            context.setProperty(DuoAuthenticatorConstants.USER_INFO, userRecord.getUserInfo());
+            String[] phones = userRecord.getPhones();
+            if (phones.length == 0) {
+                invalidateUserInfo(context, username);
+            }
+            DuoPhoneNumberSet phoneNumbers = userRecord.getPhoneNumbers(getPhoneNumberNormalizer());
+            // A reused record without phones is checked again below, the user may have added one since.
+            boolean valid = !(reusedUserInfo && phones.length == 0)
+                    && isValidPhoneNumber(context, phones, phoneNumbers, mobile);
+            if (!valid && reusedUserInfo) {
+                // The reused record may predate a phone change in DUO, check a fresh one before failing.
+                userRecord = awaitUserInfo(context, reloadUserInfo(context, username), deadline);
+                checkRegistered(context, userRecord);
+                context.setProperty(DuoAuthenticatorConstants.USER_INFO, userRecord.getUserInfo());
+                phones = userRecord.getPhones();
+                phoneNumbers = userRecord.getPhoneNumbers(getPhoneNumberNormalizer());
+                valid = isValidPhoneNumber(context, phones, phoneNumbers, mobile);
+            }
+            if (!valid && invalidateMobileClaim(userNameFromContext)) {
+                // The cached claim value may be stale, check the one in the user store before failing.
+                String storedMobile = getMobileClaimValue(userNameFromContext);
+                valid = StringUtils.isNotEmpty(storedMobile) && !storedMobile.equals(mobile)
+                        && isValidPhoneNumber(context, phones, phoneNumbers, storedMobile);
+            }
+            if (valid) {
                 context.setSubject(AuthenticatedUser.createLocalAuthenticatedUserFromSubjectIdentifier(username));
             } else {
                 if (log.isDebugEnabled()) {
                     log.debug("The mobile claim value and registered DUO mobile number should be in same format");
                 }
                 context.setProperty(DuoAuthenticatorConstants.NUMBER_MISMATCH, true);
+                invalidateUserInfo(context, username);
                 throw new AuthenticationFailedException("Authentication failed due to mismatch in mobile numbers");
             }
         } else {
+            pendingUserInfo.cancel(true);
             context.setProperty(DuoAuthenticatorConstants.MOBILE_CLAIM_NOT_FOUND, true);
             throw new AuthenticationFailedException("Error while getting the mobile number from user's profile " +
                     "for username " + username);
         }
     }
 
+    /**
+     * Start reading the DUO user's information and mobile claim value while the user is in the DUO iframe, so that
+     * they are ready when the DUO response comes back
+     *
+     * @param context  the authentication context
+     * @param username the username sent to DUO
+     */
+    private void prefetchUserData(AuthenticationContext context, String username) {
+        DuoUserPrefetcher userPrefetcher = DuoAuthenticatorServiceComponent.getUserPrefetcher();
+        if (userPrefetcher == null || !Boolean.parseBoolean(getAuthenticatorConfig().getParameterMap()
+                .get(DuoAuthenticatorConstants.ENABLE_MOBILE_VERIFICATION))) {
+            return;
+        }
+        final String userNameFromContext = String.valueOf(context.getProperty(DuoAuthenticatorConstants
+                .DUO_USERNAME));
+        userPrefetcher.prefetch(context.getContextIdentifier(), username, getUserInfoAsync(context, username),
+                () -> getMobileClaimValueInTenantFlow(userNameFromContext));
+    }
+
+    /**
+     * Get the mobile claim value of user from a thread that does not carry the user's tenant, such as a prefetch
+     * pool thread
+     *
+     * @param username the username
+     * @return the mobile claim value
+     * @throws AuthenticationFailedException
+     */
+    private String getMobileClaimValueInTenantFlow(String username) throws AuthenticationFailedException {
+        PrivilegedCarbonContext.startTenantFlow();
+        try {
+            PrivilegedCarbonContext.getThreadLocalCarbonContext()
+                    .setTenantDomain(MultitenantUtils.getTenantDomain(username), true);
+            return getMobileClaimValue(username);
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    /**
+     * Wait for a prefetched mobile claim value, reading it again if the prefetch failed
+     *
+     * @param mobileClaim the pending mobile claim value
+     * @param username    the username
+     * @param deadline    the System.nanoTime() by which the authentication step must finish
+     * @return the mobile claim value
+     * @throws AuthenticationFailedException
+     */
+    private String awaitMobileClaimValue(Future<String> mobileClaim, String username, long deadline)
+            throws AuthenticationFailedException {
+        try {
+            return mobileClaim.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            mobileClaim.cancel(true);
+            throw new AuthenticationFailedException(DuoAuthenticatorConstants.DuoErrors.ERROR_STEP_DEADLINE, e);
+        } catch (InterruptedException e) {
+            mobileClaim.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthenticationFailedException(DuoAuthenticatorConstants.DuoErrors.ERROR_USER_STORE, e);
+        } catch (ExecutionException | CancellationException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Prefetching the mobile claim failed, reading it from the user store again", e);
+            }
+            return getMobileClaimValue(username);
+        }
+    }
+
     /**
      * Verify the duo phone number with user's mobile claim value
      *
@@ -217,15 +562,38 @@ public class DuoAuthenticator extends AbstractApplicationAuthenticator implement
      */
     private boolean isValidPhoneNumber(AuthenticationContext context, JSONArray phoneArray, String mobile)
             throws AuthenticationFailedException, JSONException {
-        if (phoneArray.length() == 0) {
+        String[] phones = DuoUserRecord.toPhoneNumbers(phoneArray);
+        return isValidPhoneNumber(context, phones, DuoPhoneNumberSet.of(phones, getPhoneNumberNormalizer()), mobile);
+    }
+
+    /**
+     * Verify the duo phone number with user's mobile claim value, comparing the normalized numbers so that the
+     * claim and the DUO number may be written in different formats
+     *
+     * @param context      the authentication context
+     * @param phones       the phone numbers as DUO holds them
+     * @param phoneNumbers the normalized phone numbers
+     * @param mobile       the mobile claim value
+     * @return true or false
+     * @throws AuthenticationFailedException
+     */
+    private boolean isValidPhoneNumber(AuthenticationContext context, String[] phones,
+                                       DuoPhoneNumberSet phoneNumbers, String mobile)
+            throws AuthenticationFailedException {
+        if (phones.length == 0) {
             if (log.isDebugEnabled()) {
                 log.debug("Couldn't get the phone number of DUO user");
             }
             context.setProperty(DuoAuthenticatorConstants.MOBILE_NUMBER_NOT_FOUND, true);
             throw new AuthenticationFailedException("User doesn't have a mobile number in DUO for Authentication ");
+        }
+        long normalizedMobile = phoneNumbers.getNormalizer().normalize(mobile);
+        if (normalizedMobile > 0) {
+            return phoneNumbers.contains(normalizedMobile);
         } else {
-            for (int i = 0; i < phoneArray.length(); i++) {
-                if (((JSONObject) phoneArray.get(i)).getString(DuoAuthenticatorConstants.DUO_NUMBER).equals(mobile)) {
+            // Numbers that cannot be normalized still match when written exactly the same way.
+            for (String phone : phones) {
+                if (phone.equals(mobile)) {
                     return true;
                 }
             }
@@ -233,6 +601,16 @@ public class DuoAuthenticator extends AbstractApplicationAuthenticator implement
         return false;
     }
 
+    /**
+     * Get the phone number normalizer configured for the authenticator
+     *
+     * @return the phone number normalizer
+     */
+    private DuoPhoneNumberNormalizer getPhoneNumberNormalizer() {
+        DuoPhoneNumberNormalizer normalizer = DuoAuthenticatorServiceComponent.getPhoneNumberNormalizer();
+        return normalizer != null ? normalizer : DEFAULT_PHONE_NUMBER_NORMALIZER;
+    }
+
     /**
      * Check the status codes when retry enabled
      *
@@ -258,6 +636,9 @@ public class DuoAuthenticator extends AbstractApplicationAuthenticator implement
             } else if (Boolean.parseBoolean(String.valueOf(context.getProperty
                     (DuoAuthenticatorConstants.UNABLE_TO_FIND_VERIFIED_USER)))) {
                 response.sendRedirect(redirectUrl + DuoAuthenticatorConstants.DuoErrors.ERROR_GETTING_VERIFIED_USER);
+            } else if (Boolean.parseBoolean(String.valueOf(context.getProperty
+                    (DuoAuthenticatorConstants.DUO_UNAVAILABLE)))) {
+                response.sendRedirect(redirectUrl + DuoAuthenticatorConstants.DuoErrors.ERROR_SERVICE_UNAVAILABLE);
             }
         } catch (IOException e) {
             throw new AuthenticationFailedException("Authentication Failed: An IOException was caught. ", e);
@@ -289,15 +670,17 @@ public class DuoAuthenticator extends AbstractApplicationAuthenticator implement
         String mobileNumber;
         try {
             int tenantId = IdentityTenantUtil.getTenantIdOfUser(username);
-            UserRealm userRealm = DuoAuthenticatorServiceComponent.getRealmService().getTenantUserRealm(tenantId);
             String tenantAwareUsername = MultitenantUtils.getTenantAwareUsername(username);
-            if (userRealm != null) {
-                UserStoreManager userStoreManager = (UserStoreManager) userRealm.getUserStoreManager();
+            DuoMobileClaimCache mobileClaimCache = DuoAuthenticatorServiceComponent.getMobileClaimCache();
+            mobileNumber = mobileClaimCache != null ? mobileClaimCache.getMobileClaim(tenantId, tenantAwareUsername)
+                    : null;
+            if (mobileNumber == null) {
+                UserStoreManager userStoreManager = getUserStoreManager(tenantId);
                 mobileNumber = userStoreManager.getUserClaimValue(tenantAwareUsername,
                         DuoAuthenticatorConstants.MOBILE_CLAIM, null);
-            } else {
-                throw new AuthenticationFailedException(
-                        "Cannot find the user realm for the given tenant: " + tenantId);
+                if (mobileClaimCache != null && StringUtils.isNotEmpty(mobileNumber)) {
+                    mobileClaimCache.putMobileClaim(tenantId, tenantAwareUsername, mobileNumber);
+                }
             }
         } catch (UserStoreException e) {
             throw new AuthenticationFailedException(DuoAuthenticatorConstants.DuoErrors.ERROR_USER_STORE, e);
@@ -308,6 +691,24 @@ public class DuoAuthenticator extends AbstractApplicationAuthenticator implement
         return mobileNumber;
     }
 
+    /**
+     * Get the user store manager of the tenant
+     *
+     * @param tenantId the tenant id
+     * @return the user store manager
+     * @throws AuthenticationFailedException
+     * @throws UserStoreException
+     */
+    private UserStoreManager getUserStoreManager(int tenantId)
+            throws AuthenticationFailedException, UserStoreException {
+        UserRealm userRealm = DuoAuthenticatorServiceComponent.getRealmService().getTenantUserRealm(tenantId);
+        if (userRealm == null) {
+            throw new AuthenticationFailedException(
+                    "Cannot find the user realm for the given tenant: " + tenantId);
+        }
+        return (UserStoreManager) userRealm.getUserStoreManager();
+    }
+
     /**
      * Get the configuration properties of UI
      */
@@ -381,6 +782,9 @@ public class DuoAuthenticator extends AbstractApplicationAuthenticator implement
                                                  AuthenticationContext context) throws AuthenticationFailedException {
         Map<String, String> authenticatorProperties = context.getAuthenticatorProperties();
         Map<String, String> duoParameters = getAuthenticatorConfig().getParameterMap();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DuoUtil.getLongParameter(duoParameters,
+                DuoAuthenticatorConstants.AUTHENTICATION_STEP_TIMEOUT,
+                DuoAuthenticatorConstants.DEFAULT_AUTHENTICATION_STEP_TIMEOUT));
         try {
             String username = DuoWeb.verifyResponse(authenticatorProperties.get
                             (DuoAuthenticatorConstants.INTEGRATION_KEY), authenticatorProperties.get
@@ -392,7 +796,7 @@ public class DuoAuthenticator extends AbstractApplicationAuthenticator implement
             }
             if (StringUtils.isNotEmpty(username)) {
                 if (Boolean.parseBoolean(duoParameters.get(DuoAuthenticatorConstants.ENABLE_MOBILE_VERIFICATION))) {
-                    checkPhoneNumberValidation(context, username);
+                    checkPhoneNumberValidation(context, username, deadline);
                 } else {
                     context.setSubject(AuthenticatedUser.createLocalAuthenticatedUserFromSubjectIdentifier(username));
                 }
@@ -37,6 +37,7 @@ public abstract class DuoAuthenticatorConstants {
     public static final String MOBILE_CLAIM = "http://wso2.org/claims/mobile";
     public static final String DUO_NUMBER = "number";
     public static final String API_USER = "/admin/v1/users";
+    public static final String API_PING = "/auth/v2/ping";
     public static final String DUO_USERNAME = "username";
     public static final String DEFAULT_USER_IDENTIFIER = "username";
     public static final String DUO_PHONES = "phones";
@@ -52,9 +53,98 @@ public abstract class DuoAuthenticatorConstants {
     public static final String MOBILE_NUMBER_NOT_FOUND = "unableToFindMobileNumber";
     public static final String MOBILE_CLAIM_NOT_FOUND = "unableToFindMobileClaim";
     public static final String UNABLE_TO_FIND_VERIFIED_USER = "unableToFindVerifiedUser";
+    public static final String DUO_UNAVAILABLE = "duoUnavailable";
     public static final String USER_INFO = "userInfo";
     public static final String USER_STORE_DOMAIN = "UserStoreDomain";
     public static final String TENANT_DOMAIN = "TenantDomain";
+    public static final String HTTP_MAX_IDLE_CONNECTIONS = "HttpMaxIdleConnections";
+    public static final String HTTP_KEEP_ALIVE_DURATION = "HttpKeepAliveDuration";
+    public static final String HTTP_MAX_REQUESTS_PER_HOST = "HttpMaxRequestsPerHost";
+    public static final String EXECUTION_MODE = "ExecutionMode";
+    public static final String MAX_CONCURRENT_REQUESTS = "MaxConcurrentRequests";
+    public static final String EXECUTOR_POOL_SIZE = "ExecutorPoolSize";
+    public static final String USER_INFO_CACHE_TTL = "UserInfoCacheTTL";
+    public static final String USER_INFO_CACHE_NEGATIVE_TTL = "UserInfoCacheNegativeTTL";
+    public static final String USER_INFO_CACHE_REFRESH_AHEAD = "UserInfoCacheRefreshAhead";
+    public static final String USER_INFO_CACHE_MAX_ENTRIES = "UserInfoCacheMaxEntries";
+    public static final String MOBILE_CLAIM_CACHE_TTL = "MobileClaimCacheTTL";
+    public static final String MOBILE_CLAIM_CACHE_MAX_ENTRIES = "MobileClaimCacheMaxEntries";
+    public static final String ENABLE_USER_PREFETCH = "EnableUserPrefetch";
+    public static final String DEFAULT_COUNTRY_CODE = "DefaultCountryCode";
+    public static final String CIRCUIT_BREAKER_WINDOW_SIZE = "CircuitBreakerWindowSize";
+    public static final String CIRCUIT_BREAKER_MINIMUM_CALLS = "CircuitBreakerMinimumCalls";
+    public static final String CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD = "CircuitBreakerFailureRateThreshold";
+    public static final String CIRCUIT_BREAKER_SLOW_CALL_RATE_THRESHOLD = "CircuitBreakerSlowCallRateThreshold";
+    public static final String CIRCUIT_BREAKER_SLOW_CALL_DURATION = "CircuitBreakerSlowCallDuration";
+    public static final String CIRCUIT_BREAKER_OPEN_DURATION = "CircuitBreakerOpenDuration";
+    public static final String CIRCUIT_BREAKER_HALF_OPEN_CALLS = "CircuitBreakerHalfOpenCalls";
+    public static final String TENANT_MAX_CONCURRENT_REQUESTS = "TenantMaxConcurrentRequests";
+    public static final String TENANT_MAX_QUEUED_REQUESTS = "TenantMaxQueuedRequests";
+    public static final String HTTP_TIMEOUT_FLOOR = "HttpTimeoutFloor";
+    public static final String HTTP_TIMEOUT_CEILING = "HttpTimeoutCeiling";
+    public static final String HTTP_TIMEOUT_MARGIN = "HttpTimeoutMargin";
+    public static final String AUTHENTICATION_STEP_TIMEOUT = "AuthenticationStepTimeout";
+    public static final String RETRY_MAX_ATTEMPTS = "RetryMaxAttempts";
+    public static final String RETRY_BASE_DELAY = "RetryBaseDelay";
+    public static final String RETRY_MAX_DELAY = "RetryMaxDelay";
+    public static final String RETRY_BUDGET = "RetryBudget";
+    public static final String ENABLE_HEDGING = "EnableHedging";
+    public static final String HEDGE_BUDGET = "HedgeBudget";
+    public static final String HEALTH_CHECK_INTERVAL = "HealthCheckInterval";
+    public static final String HEALTH_CHECK_TIMEOUT = "HealthCheckTimeout";
+    public static final String HEALTH_CHECK_FAILURE_THRESHOLD = "HealthCheckFailureThreshold";
+    public static final String ENABLE_WARM_UP = "EnableWarmUp";
+    public static final String WARM_UP_HOSTS = "WarmUpHosts";
+    public static final String WARM_UP_CONNECTIONS = "WarmUpConnections";
+    public static final String HTTP_PROTOCOLS = "HttpProtocols";
+    public static final String RATE_LIMIT = "RateLimit";
+    public static final String RATE_LIMIT_BURST = "RateLimitBurst";
+    public static final String RATE_LIMIT_MAX_WAIT = "RateLimitMaxWait";
+    public static final String RATE_LIMIT_COOL_DOWN = "RateLimitCoolDown";
+    public static final int DEFAULT_HTTP_MAX_IDLE_CONNECTIONS = 5;
+    public static final long DEFAULT_HTTP_KEEP_ALIVE_DURATION = 300000;
+    public static final int DEFAULT_HTTP_MAX_REQUESTS_PER_HOST = 20;
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 200;
+    public static final int DEFAULT_EXECUTOR_POOL_SIZE = 20;
+    public static final long DEFAULT_USER_INFO_CACHE_TTL = 300;
+    public static final long DEFAULT_USER_INFO_CACHE_NEGATIVE_TTL = 60;
+    public static final long DEFAULT_USER_INFO_CACHE_REFRESH_AHEAD = 60;
+    public static final int DEFAULT_USER_INFO_CACHE_MAX_ENTRIES = 10000;
+    public static final long DEFAULT_MOBILE_CLAIM_CACHE_TTL = 300;
+    public static final int DEFAULT_MOBILE_CLAIM_CACHE_MAX_ENTRIES = 10000;
+    public static final int DEFAULT_CIRCUIT_BREAKER_WINDOW_SIZE = 20;
+    public static final int DEFAULT_CIRCUIT_BREAKER_MINIMUM_CALLS = 10;
+    public static final int DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD = 50;
+    public static final int DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_RATE_THRESHOLD = 80;
+    public static final long DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_DURATION = 10000;
+    public static final long DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION = 30000;
+    public static final int DEFAULT_CIRCUIT_BREAKER_HALF_OPEN_CALLS = 3;
+    public static final int DEFAULT_TENANT_MAX_CONCURRENT_REQUESTS = 0;
+    public static final int DEFAULT_TENANT_MAX_QUEUED_REQUESTS = 20;
+    public static final long DEFAULT_HTTP_TIMEOUT_FLOOR = 1000;
+    public static final long DEFAULT_HTTP_TIMEOUT_CEILING = 15000;
+    public static final int DEFAULT_HTTP_TIMEOUT_MARGIN = 50;
+    public static final int HTTP_TIMEOUT_MINIMUM_SAMPLES = 20;
+    public static final long DEFAULT_AUTHENTICATION_STEP_TIMEOUT = 20000;
+    public static final int DEFAULT_RETRY_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_RETRY_BASE_DELAY = 100;
+    public static final long DEFAULT_RETRY_MAX_DELAY = 2000;
+    public static final int DEFAULT_RETRY_BUDGET = 10;
+    public static final int DEFAULT_HEDGE_BUDGET = 5;
+    public static final long DEFAULT_HEALTH_CHECK_INTERVAL = 0;
+    public static final long DEFAULT_HEALTH_CHECK_TIMEOUT = 5000;
+    public static final int DEFAULT_HEALTH_CHECK_FAILURE_THRESHOLD = 3;
+    public static final int HEALTH_CHECK_WINDOW_SIZE = 10;
+    public static final int DEFAULT_WARM_UP_CONNECTIONS = 2;
+    public static final long WARM_UP_TIMEOUT = 10000;
+    public static final int WARM_UP_ITERATIONS = 2000;
+    public static final String DEFAULT_HTTP_PROTOCOLS = "h2,http/1.1";
+    public static final int DEFAULT_RATE_LIMIT = 0;
+    public static final int DEFAULT_RATE_LIMIT_BURST = 10;
+    public static final long DEFAULT_RATE_LIMIT_MAX_WAIT = 2000;
+    public static final long DEFAULT_RATE_LIMIT_COOL_DOWN = 1000;
+    public static final long USER_PREFETCH_TTL = 300000;
+    public static final int USER_PREFETCH_MAX_ENTRIES = 10000;
 
     public static class RequestParams {
         public static final String DUO = "duo";
@@ -68,6 +158,7 @@ public abstract class DuoAuthenticatorConstants {
         public static final String ERROR_GETTING_NUMBER_FROM_DUO = "&authFailure=true&authFailureMsg=unable.to.get.duo.mobileNumber";
         public static final String ERROR_NUMBER_NOT_FOUND = "&authFailure=true&authFailureMsg=unable.to.find.number";
         public static final String ERROR_NUMBER_MISMATCH = "&authFailure=true&authFailureMsg=number.mismatch";
+        public static final String ERROR_SERVICE_UNAVAILABLE = "&authFailure=true&authFailureMsg=duo.unavailable";
 
         public static final String ERROR_JSON = "Error while handling JSON object";
         public static final String ERROR_USER_ATTRIBUTES = "Error while getting user attributes from DUO";
@@ -76,6 +167,8 @@ public abstract class DuoAuthenticatorConstants {
         public static final String ERROR_SIGN_REQUEST = "Error while signing Duo request";
         public static final String ERROR_EXECUTE_REQUEST = "Error while executing Duo API request";
         public static final String ERROR_REDIRECTING = "Error while redirecting to Duo authentication page";
+        public static final String ERROR_DUO_UNAVAILABLE = "Duo API is unavailable";
+        public static final String ERROR_STEP_DEADLINE = "Duo authentication step did not finish in time";
     }
 
     /**
@@ -18,6 +18,11 @@
 
 package org.wso2.carbon.identity.authenticator.duo;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
 public class DuoBase64 {
     /**
      * No options specified. Value is zero.
@@ -453,6 +458,10 @@ public class DuoBase64 {
      */
     public static String encodeBytes(byte[] source, int off, int len,
                                      int options) throws java.io.IOException {
+        Base64.Encoder encoder = getEncoder(options);
+        if (encoder != null && source != null && off == 0 && len == source.length) {
+            return encoder.encodeToString(source);
+        }
         byte[] encoded = encodeBytesToBytes(source, off, len, options);
         // Return value according to relevant encoding.
         try {
@@ -492,6 +501,15 @@ public class DuoBase64 {
             throw new IllegalArgumentException(String.format("Cannot have offset of %d and length of %d with array of length %d",
                             off, len, source.length));
         }
+        Base64.Encoder encoder = getEncoder(options);
+        if (encoder != null) {
+            if (off == 0 && len == source.length) {
+                return encoder.encode(source);
+            }
+            byte[] encoded = new byte[(len + 2) / 3 * 4];
+            encode(source, off, len, encoded, 0, options);
+            return encoded;
+        }
         if ((options & GZIP) != 0) {
             java.io.ByteArrayOutputStream baos = null;
             java.util.zip.GZIPOutputStream gzos = null;
@@ -573,6 +591,60 @@ public class DuoBase64 {
         }
     }
 
+    /**
+     * Encodes a ByteBuffer into standard Base64 notation, consuming its
+     * remaining bytes. Heap buffers are encoded in place without copying.
+     *
+     * @param source the data to convert
+     * @return the Base64-encoded data as a String
+     * @throws NullPointerException if source is null
+     */
+    public static String encodeBytes(ByteBuffer source) {
+        if (source.hasArray()) {
+            int off = source.arrayOffset() + source.position();
+            int len = source.remaining();
+            byte[] encoded = new byte[(len + 2) / 3 * 4];
+            encode(source.array(), off, len, encoded, 0, NO_OPTIONS);
+            source.position(source.limit());
+            return new String(encoded, StandardCharsets.US_ASCII);
+        }
+        ByteBuffer encoded = Base64.getEncoder().encode(source);
+        return new String(encoded.array(), encoded.arrayOffset(), encoded.remaining(), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Encodes a range of a byte array into Base64 notation, writing the
+     * result into the destination array without allocating. Supports the
+     * standard and URL-safe alphabets; line breaking and GZIP are not applied.
+     *
+     * @param source      the data to convert
+     * @param off         offset in array where conversion should begin
+     * @param len         length of data to convert
+     * @param destination the array to hold the encoded data
+     * @param destOffset  the index where output will be put
+     * @param options     alphabet type is pulled from this (standard, url-safe)
+     * @return the number of bytes written, always a multiple of four
+     * @throws IllegalArgumentException if the ranges are invalid or the destination is too small
+     */
+    public static int encode(byte[] source, int off, int len, byte[] destination, int destOffset, int options) {
+        int encLen = (len + 2) / 3 * 4;
+        if (off < 0 || len < 0 || off + len > source.length || destOffset < 0
+                || destOffset + encLen > destination.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Cannot encode %d bytes at offset %d of %d into offset %d of %d",
+                    len, off, source.length, destOffset, destination.length));
+        }
+        int d = 0;
+        int e = destOffset;
+        for (; d < len - 2; d += 3, e += 4) {
+            encode3to4(source, off + d, 3, destination, e, options);
+        }
+        if (d < len) {
+            encode3to4(source, off + d, len - d, destination, e, options);
+        }
+        return encLen;
+    }
+
     /**
      * Decoding Methods
      * Decodes four bytes from array source and writes the resulting
@@ -689,6 +761,10 @@ public class DuoBase64 {
             throw new IllegalArgumentException("Base64-encoded string must have at least four characters, but length specified was "
                             + len);
         }
+        byte[] fast = decodeFast(ByteBuffer.wrap(source, off, len), options);
+        if (fast != null) {
+            return fast;
+        }
         byte[] DECODABET = getDecodabet(options);
         int len34 = len * 3 / 4; // Estimate on array size
         byte[] outBuff = new byte[len34]; // Upper limit on size of output
@@ -728,6 +804,52 @@ public class DuoBase64 {
         return out;
     }
 
+    /**
+     * Decodes a range of a string that is in canonical standard Base64, that is
+     * whose length is a multiple of four, with no white space and with '=' only
+     * as padding of the last quartet, into the destination array. For such input
+     * the result is the same as {@link #decode(byte[], int, int, int)}. Any other
+     * input is left to the general decoder by returning -1, as is input whose
+     * decoded length would not fit the destination. Does not check for gzip data.
+     *
+     * @param s           the string holding the Base64 data
+     * @param off         the index of the first character
+     * @param len         the number of characters
+     * @param destination the array to hold the decoded bytes
+     * @param destOffset  the index where output will be put
+     * @return the number of decoded bytes, or -1 if the input is not canonical
+     */
+    static int decodeCanonical(String s, int off, int len, byte[] destination, int destOffset) {
+        if (len < 4 || len % 4 != 0 || destOffset + len / 4 * 3 > destination.length) {
+            return -1;
+        }
+        int padding = s.charAt(off + len - 1) != '=' ? 0 : s.charAt(off + len - 2) != '=' ? 1 : 2;
+        int dataEnd = off + len - padding;
+        int bits = 0;
+        int posn = destOffset;
+        for (int i = off; i < dataEnd; i++) {
+            char c = s.charAt(i);
+            byte value = c < 128 ? _STANDARD_DECODABET[c] : -9;
+            if (value < 0) {
+                return -1;
+            }
+            bits = (bits << 6) | value;
+            if (((i - off) & 3) == 3) {
+                destination[posn++] = (byte) (bits >> 16);
+                destination[posn++] = (byte) (bits >> 8);
+                destination[posn++] = (byte) bits;
+                bits = 0;
+            }
+        }
+        if (padding == 2) {
+            destination[posn++] = (byte) (bits >> 4);
+        } else if (padding == 1) {
+            destination[posn++] = (byte) (bits >> 10);
+            destination[posn++] = (byte) (bits >> 2);
+        }
+        return posn - destOffset;
+    }
+
     /**
      * Decodes data from Base64 notation, automatically detecting
      * gzip-compressed data and decompressing it.
@@ -754,15 +876,17 @@ public class DuoBase64 {
         if (s == null) {
             throw new NullPointerException("Input string was null.");
         }
-        byte[] bytes;
-        try {
-            bytes = s.getBytes(PREFERRED_ENCODING);
-        }
-        catch (java.io.UnsupportedEncodingException uee) {
-            bytes = s.getBytes();
+        byte[] bytes = s.length() < 4 ? null : decodeFast(s, options);
+        if (bytes == null) {
+            try {
+                bytes = s.getBytes(PREFERRED_ENCODING);
+            }
+            catch (java.io.UnsupportedEncodingException uee) {
+                bytes = s.getBytes();
+            }
+            // Decode
+            bytes = decode(bytes, 0, bytes.length, options);
         }
-        // Decode
-        bytes = decode(bytes, 0, bytes.length, options);
         // Check to see if it's gzip-compressed
         // GZIP Magic Two-Byte Number: 0x8b1f (35615)
         boolean dontGunzip = (options & DONT_GUNZIP) != 0;
@@ -806,6 +930,121 @@ public class DuoBase64 {
         return bytes;
     }
 
+    /**
+     * Decodes the remaining bytes of a ByteBuffer from Base64 notation,
+     * consuming them. Like {@link #decode(byte[], int, int, int)}, white space
+     * is skipped and GZIP data is not decompressed.
+     *
+     * @param source the Base64 encoded data
+     * @return the decoded data
+     * @throws java.io.IOException if bogus characters exist in source data
+     */
+    public static ByteBuffer decode(ByteBuffer source) throws java.io.IOException {
+        byte[] decoded;
+        if (source.hasArray()) {
+            decoded = decode(source.array(), source.arrayOffset() + source.position(), source.remaining(),
+                    NO_OPTIONS);
+        } else {
+            byte[] copy = new byte[source.remaining()];
+            source.duplicate().get(copy);
+            decoded = decode(copy, 0, copy.length, NO_OPTIONS);
+        }
+        source.position(source.limit());
+        return ByteBuffer.wrap(decoded);
+    }
+
+    /**
+     * Decodes a range of a string from standard Base64 notation into the
+     * destination array. Canonical input is decoded without allocating; other
+     * input is decoded like {@link #decode(byte[], int, int, int)}. GZIP data is
+     * not decompressed.
+     *
+     * @param s           the string holding the Base64 data
+     * @param off         the index of the first character
+     * @param len         the number of characters
+     * @param destination the array to hold the decoded bytes
+     * @param destOffset  the index where output will be put
+     * @return the number of decoded bytes
+     * @throws java.io.IOException      if bogus characters exist in source data
+     * @throws IllegalArgumentException if the decoded data does not fit the destination
+     */
+    public static int decode(String s, int off, int len, byte[] destination, int destOffset)
+            throws java.io.IOException {
+        int decodedLength = decodeCanonical(s, off, len, destination, destOffset);
+        if (decodedLength >= 0) {
+            return decodedLength;
+        }
+        byte[] bytes = s.substring(off, off + len).getBytes(StandardCharsets.US_ASCII);
+        byte[] decoded = decode(bytes, 0, bytes.length, NO_OPTIONS);
+        if (destOffset < 0 || destOffset + decoded.length > destination.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Destination array with length %d cannot store %d bytes at offset %d",
+                    destination.length, decoded.length, destOffset));
+        }
+        System.arraycopy(decoded, 0, destination, destOffset, decoded.length);
+        return decoded.length;
+    }
+
+    /**
+     * Returns the JDK encoder for options that only select the standard or
+     * URL-safe alphabet, or null if the options need the general encoder.
+     */
+    private static Base64.Encoder getEncoder(int options) {
+        if ((options & ~ENCODE) == NO_OPTIONS) {
+            return Base64.getEncoder();
+        } else if ((options & ~ENCODE) == URL_SAFE) {
+            return Base64.getUrlEncoder();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the JDK decoder for options that only select the standard or
+     * URL-safe alphabet, or null if the options need the general decoder.
+     */
+    private static Base64.Decoder getDecoder(int options) {
+        int alphabet = options & ~(ENCODE | GZIP | DONT_GUNZIP);
+        if (alphabet == NO_OPTIONS) {
+            return Base64.getDecoder();
+        } else if (alphabet == URL_SAFE) {
+            return Base64.getUrlDecoder();
+        }
+        return null;
+    }
+
+    /**
+     * Decodes canonical, padded Base64 with the JDK decoder. The JDK rejects
+     * white space, misplaced padding and bad characters, all of which the
+     * general decoder handles in its own way, so null is returned for them and
+     * the caller falls back to the general decoder. Canonical input decodes to
+     * the same bytes either way.
+     */
+    private static byte[] decodeFast(ByteBuffer source, int options) {
+        Base64.Decoder decoder = getDecoder(options);
+        if (decoder == null || source.remaining() % 4 != 0) {
+            return null;
+        }
+        try {
+            ByteBuffer decoded = decoder.decode(source);
+            byte[] array = decoded.array();
+            return decoded.remaining() == array.length ? array : Arrays.copyOf(array, decoded.remaining());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static byte[] decodeFast(String s, int options) {
+        Base64.Decoder decoder = getDecoder(options);
+        if (decoder == null || s.length() % 4 != 0) {
+            return null;
+        }
+        try {
+            return decoder.decode(s);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     /**
      * A {@link DuoBase64.OutputStream} will write data to anotherjava.io.OutputStream,
      * given in the constructor, and encode/decode to/from Base64 notation on the fly.
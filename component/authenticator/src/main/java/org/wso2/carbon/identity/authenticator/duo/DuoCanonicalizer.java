@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Builds the canonical form of Duo API requests. Parameters are kept sorted by name as they are added, and names
+ * and values are percent-encoded as RFC 3986 requires in a single pass into one StringBuilder.
+ */
+public final class DuoCanonicalizer {
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private DuoCanonicalizer() {
+    }
+
+    /**
+     * @param params the request parameters, sorted by name
+     * @return the encoded query string, "name=value" pairs joined with '&amp;'
+     */
+    public static String queryString(SortedMap<String, String> params) {
+        if (params.isEmpty()) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder(params.size() * 32);
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append('&');
+            }
+            appendEncoded(builder, param.getKey());
+            builder.append('=');
+            appendEncoded(builder, param.getValue());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param date        the request date, only part of version 2 signatures
+     * @param sigVersion  the signature version
+     * @param method      the HTTP method in upper case
+     * @param host        the API host
+     * @param uri         the request path
+     * @param queryString the encoded query string
+     * @return the string to sign
+     */
+    public static String canonRequest(String date, int sigVersion, String method, String host, String uri,
+                                      String queryString) {
+        StringBuilder builder = new StringBuilder(64 + host.length() + uri.length() + queryString.length());
+        if (sigVersion == 2) {
+            builder.append(date).append('\n');
+        }
+        builder.append(method).append('\n');
+        builder.append(host.toLowerCase()).append('\n');
+        builder.append(uri).append('\n');
+        builder.append(queryString);
+        return builder.toString();
+    }
+
+    /**
+     * Percent-encode a value as UTF-8, leaving only the RFC 3986 unreserved characters as they are. Unpaired
+     * surrogates are encoded as '?', as String.getBytes does.
+     *
+     * @param builder the builder to append to
+     * @param value   the value to encode
+     */
+    public static void appendEncoded(StringBuilder builder, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '.' || c == '_' || c == '~') {
+                builder.append(c);
+            } else if (c < 0x80) {
+                appendByte(builder, c);
+            } else if (c < 0x800) {
+                appendByte(builder, 0xc0 | (c >> 6));
+                appendByte(builder, 0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                appendByte(builder, 0xf0 | (codePoint >> 18));
+                appendByte(builder, 0x80 | ((codePoint >> 12) & 0x3f));
+                appendByte(builder, 0x80 | ((codePoint >> 6) & 0x3f));
+                appendByte(builder, 0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                appendByte(builder, '?');
+            } else {
+                appendByte(builder, 0xe0 | (c >> 12));
+                appendByte(builder, 0x80 | ((c >> 6) & 0x3f));
+                appendByte(builder, 0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    /**
+     * Append a value as a JSON string the way Duo's reference clients serialize it, with every character outside
+     * printable ASCII written as a unicode escape.
+     *
+     * @param builder the builder to append to
+     * @param value   the value to quote
+     */
+    public static void appendJsonString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\b':
+                    builder.append("\\b");
+                    break;
+                case '\f':
+                    builder.append("\\f");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7f) {
+                        builder.append("\\u").append(Character.forDigit(c >> 12, 16))
+                                .append(Character.forDigit((c >> 8) & 0xF, 16))
+                                .append(Character.forDigit((c >> 4) & 0xF, 16))
+                                .append(Character.forDigit(c & 0xF, 16));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        builder.append('"');
+    }
+
+    private static void appendByte(StringBuilder builder, int value) {
+        builder.append('%').append(HEX_DIGITS[(value >> 4) & 0x0f]).append(HEX_DIGITS[value & 0x0f]);
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Circuit breaker for the calls to one Duo API host. The outcomes of the last calls are kept in a count based
+ * window. When enough of them failed or were slow the breaker opens and calls fail fast for a while. After that a
+ * few trial calls are let through in the half-open state, and their outcome decides whether the breaker closes or
+ * opens again.
+ */
+public class DuoCircuitBreaker {
+
+    /**
+     * The states of a circuit breaker.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static Log log = LogFactory.getLog(DuoCircuitBreaker.class);
+
+    private final String name;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallDurationNanos;
+    private final int minimumCalls;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+
+    private final boolean[] failures;
+    private final boolean[] slowCalls;
+    private int windowSize;
+    private int windowIndex;
+    private int failureCount;
+    private int slowCallCount;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private long rejectedCount;
+    private long openedCount;
+
+    /**
+     * @param name                   the name used in log messages, usually the Duo API host
+     * @param windowSize             the number of recent calls the rates are computed over
+     * @param minimumCalls           the number of calls needed in the window before the breaker may open
+     * @param failureRateThreshold   the percentage of failed calls that opens the breaker
+     * @param slowCallRateThreshold  the percentage of slow calls that opens the breaker, above 100 to ignore slow
+     *                               calls
+     * @param slowCallDurationMillis the duration in milliseconds above which a call is slow
+     * @param openDurationMillis     the time in milliseconds calls fail fast before trial calls are let through
+     * @param halfOpenCalls          the number of trial calls in the half-open state
+     */
+    public DuoCircuitBreaker(String name, int windowSize, int minimumCalls, int failureRateThreshold,
+                             int slowCallRateThreshold, long slowCallDurationMillis, long openDurationMillis,
+                             int halfOpenCalls) {
+        this.name = name;
+        this.failures = new boolean[Math.max(windowSize, 1)];
+        this.slowCalls = new boolean[this.failures.length];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.failures.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(slowCallDurationMillis);
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+        this.halfOpenCalls = Math.max(halfOpenCalls, 1);
+    }
+
+    /**
+     * Ask for permission to make a call. Every permitted call must be followed by exactly one of
+     * {@link #onSuccess(long)}, {@link #onFailure(long)} or {@link #onIgnored()}.
+     *
+     * @return whether the call may go to Duo
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openDurationNanos) {
+                rejectedCount++;
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                rejectedCount++;
+                return false;
+            }
+            halfOpenPermits--;
+        }
+        return true;
+    }
+
+    /**
+     * Record a call that got a reply from Duo.
+     *
+     * @param durationNanos how long the call took in nanoseconds
+     */
+    public void onSuccess(long durationNanos) {
+        record(false, durationNanos >= slowCallDurationNanos);
+    }
+
+    /**
+     * Record a call that failed or timed out, see {@link #isFailure(Throwable, int)}.
+     *
+     * @param durationNanos how long the call took in nanoseconds
+     */
+    public void onFailure(long durationNanos) {
+        record(true, durationNanos >= slowCallDurationNanos);
+    }
+
+    /**
+     * Tell whether a call failed because of Duo or the way to it, as opposed to Duo answering with an error of the
+     * request such as an unknown user or an invalid signature.
+     *
+     * @param error      the error the call failed with
+     * @param statusCode the HTTP status code of the reply, or 0 if there was none
+     * @return true for I/O errors, timeouts, and 5xx and 429 replies
+     */
+    public static boolean isFailure(Throwable error, int statusCode) {
+        if (statusCode >= 500 || statusCode == 429) {
+            return true;
+        }
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof IOException || cause instanceof TimeoutException;
+    }
+
+    /**
+     * Give back a permit without recording an outcome, for calls cancelled by the caller.
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && halfOpenPermits < halfOpenCalls) {
+            halfOpenPermits++;
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDurationNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * @return the percentage of failed calls in the window, or -1 if there are fewer than the minimum calls
+     */
+    public synchronized float getFailureRate() {
+        return windowSize < minimumCalls ? -1 : failureCount * 100f / windowSize;
+    }
+
+    /**
+     * @return the percentage of slow calls in the window, or -1 if there are fewer than the minimum calls
+     */
+    public synchronized float getSlowCallRate() {
+        return windowSize < minimumCalls ? -1 : slowCallCount * 100f / windowSize;
+    }
+
+    /**
+     * @return the number of calls refused since the breaker was created
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return the number of times the breaker opened since it was created
+     */
+    public synchronized long getOpenedCount() {
+        return openedCount;
+    }
+
+    private synchronized void record(boolean failure, boolean slow) {
+        if (state == State.OPEN) {
+            // A call that started before the breaker opened.
+            return;
+        }
+        int capacity = state == State.HALF_OPEN ? halfOpenCalls : failures.length;
+        if (windowSize == capacity) {
+            failureCount -= failures[windowIndex] ? 1 : 0;
+            slowCallCount -= slowCalls[windowIndex] ? 1 : 0;
+        } else {
+            windowSize++;
+        }
+        failures[windowIndex] = failure;
+        slowCalls[windowIndex] = slow;
+        failureCount += failure ? 1 : 0;
+        slowCallCount += slow ? 1 : 0;
+        windowIndex = (windowIndex + 1) % capacity;
+
+        if (state == State.HALF_OPEN) {
+            if (windowSize < halfOpenCalls) {
+                return;
+            }
+            transitionTo(isAboveThresholds() ? State.OPEN : State.CLOSED);
+        } else if (windowSize >= minimumCalls && isAboveThresholds()) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private boolean isAboveThresholds() {
+        return failureCount * 100L >= (long) failureRateThreshold * windowSize
+                || slowCallCount * 100L >= (long) slowCallRateThreshold * windowSize;
+    }
+
+    private void transitionTo(State newState) {
+        if (newState == State.OPEN) {
+            openedAt = System.nanoTime();
+            openedCount++;
+            log.warn("Circuit breaker for Duo host " + name + " opened, failure rate: "
+                    + failureCount * 100 / Math.max(windowSize, 1) + "%, slow call rate: "
+                    + slowCallCount * 100 / Math.max(windowSize, 1) + "%");
+        } else if (log.isDebugEnabled()) {
+            log.debug("Circuit breaker for Duo host " + name + " is " + newState);
+        }
+        if (newState == State.CLOSED && state == State.HALF_OPEN) {
+            log.info("Circuit breaker for Duo host " + name + " closed");
+        }
+        state = newState;
+        halfOpenPermits = newState == State.HALF_OPEN ? halfOpenCalls : 0;
+        windowSize = 0;
+        windowIndex = 0;
+        failureCount = 0;
+        slowCallCount = 0;
+    }
+}
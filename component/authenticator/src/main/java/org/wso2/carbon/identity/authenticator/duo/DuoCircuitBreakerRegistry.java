@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One circuit breaker per Duo API host, so that a failing Duo account does not cut off the others.
+ */
+public class DuoCircuitBreakerRegistry {
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallDurationMillis;
+    private final long openDurationMillis;
+    private final int halfOpenCalls;
+    private final ConcurrentMap<String, DuoCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    public DuoCircuitBreakerRegistry(int windowSize, int minimumCalls, int failureRateThreshold,
+                                     int slowCallRateThreshold, long slowCallDurationMillis, long openDurationMillis,
+                                     int halfOpenCalls) {
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDurationMillis = slowCallDurationMillis;
+        this.openDurationMillis = openDurationMillis;
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    /**
+     * @param host the Duo API host
+     * @return the circuit breaker of the host
+     */
+    public DuoCircuitBreaker get(String host) {
+        String key = host == null ? "" : host.toLowerCase();
+        DuoCircuitBreaker circuitBreaker = circuitBreakers.get(key);
+        if (circuitBreaker == null) {
+            circuitBreaker = circuitBreakers.computeIfAbsent(key, name -> new DuoCircuitBreaker(name, windowSize,
+                    minimumCalls, failureRateThreshold, slowCallRateThreshold, slowCallDurationMillis,
+                    openDurationMillis, halfOpenCalls));
+        }
+        return circuitBreaker;
+    }
+
+    /**
+     * @return the circuit breakers created so far, keyed by host
+     */
+    public Map<String, DuoCircuitBreaker> getCircuitBreakers() {
+        return Collections.unmodifiableMap(circuitBreakers);
+    }
+
+    /**
+     * @return the current state of every circuit breaker, keyed by host
+     */
+    public Map<String, DuoCircuitBreaker.State> getStates() {
+        Map<String, DuoCircuitBreaker.State> states = new TreeMap<>();
+        for (Map.Entry<String, DuoCircuitBreaker> entry : circuitBreakers.entrySet()) {
+            states.put(entry.getKey(), entry.getValue().getState());
+        }
+        return states;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes the cold start cost off the first Duo logins. For every Duo API host it resolves the host name and opens
+ * pooled TLS connections with unsigned calls to /auth/v2/ping, and once per activation it runs the request signing
+ * code enough times for the JIT compiler to pick it up. The work is done on a background thread, so activation and
+ * logins never wait for it. A host is warmed up again once its idle connections may have been evicted from the pool.
+ */
+public class DuoConnectionWarmer {
+
+    private static Log log = LogFactory.getLog(DuoConnectionWarmer.class);
+
+    private static final String IKEY = "DIWARMUP000000000000";
+    private static final String SKEY = "warmupwarmupwarmupwarmupwarmupwarmupwarm";
+    private static final String AKEY = "warmupwarmupwarmupwarmupwarmupwarmupakey";
+    private static final String USERNAME = "warmup";
+
+    private final int connections;
+    private final long timeoutMillis;
+    private final long warmDurationMillis;
+    private final ConcurrentMap<String, Long> warmedHosts = new ConcurrentHashMap<>();
+    private final ExecutorService executorService;
+
+    /**
+     * @param connections   the number of connections opened to each host
+     * @param timeoutMillis the time to wait for the connections of a host in milliseconds
+     */
+    public DuoConnectionWarmer(int connections, long timeoutMillis) {
+        this(connections, timeoutMillis, DuoAuthenticatorConstants.DEFAULT_HTTP_KEEP_ALIVE_DURATION);
+    }
+
+    /**
+     * @param connections        the number of connections opened to each host
+     * @param timeoutMillis      the time to wait for the connections of a host in milliseconds
+     * @param warmDurationMillis the time a host counts as warmed up in milliseconds, the keep-alive duration of the
+     *                           connection pool
+     */
+    public DuoConnectionWarmer(int connections, long timeoutMillis, long warmDurationMillis) {
+        this.connections = connections;
+        this.timeoutMillis = timeoutMillis;
+        this.warmDurationMillis = warmDurationMillis;
+        this.executorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "duo-warm-up");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Warm up the signing code in the background.
+     *
+     * @param iterations the number of requests to sign and verify
+     */
+    public void warmUpSigning(final int iterations) {
+        submit(() -> {
+            long start = System.nanoTime();
+            try {
+                sign(iterations);
+                if (log.isDebugEnabled()) {
+                    log.debug("Warmed up Duo request signing in "
+                            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+                }
+            } catch (Exception e) {
+                log.warn("Could not warm up Duo request signing", e);
+            }
+        });
+    }
+
+    /**
+     * Warm up the connections to a host in the background, unless it has been done within the keep-alive duration.
+     *
+     * @param host the Duo API host
+     */
+    public void warmUp(final String host) {
+        if (host == null || host.trim().isEmpty()) {
+            return;
+        }
+        String key = host.trim().toLowerCase();
+        long now = System.currentTimeMillis();
+        Long warmUntil = warmedHosts.get(key);
+        if (warmUntil != null && now < warmUntil) {
+            return;
+        }
+        boolean claimed = warmUntil == null ? warmedHosts.putIfAbsent(key, now + warmDurationMillis) == null
+                : warmedHosts.replace(key, warmUntil, now + warmDurationMillis);
+        if (claimed) {
+            submit(() -> connect(host.trim()));
+        }
+    }
+
+    /**
+     * @param host the Duo API host
+     * @return whether the connections to the host have been warmed up within the keep-alive duration, or are being
+     * warmed up
+     */
+    public boolean isWarmedUp(String host) {
+        if (host == null) {
+            return false;
+        }
+        Long warmUntil = warmedHosts.get(host.trim().toLowerCase());
+        return warmUntil != null && System.currentTimeMillis() < warmUntil;
+    }
+
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Sign Duo Web requests and Duo API calls with throwaway keys, and verify a Duo Web response, so that the HMAC,
+     * Base64, canonicalization and response parsing paths are compiled before real logins need them.
+     *
+     * @param iterations the number of requests to sign and verify
+     * @throws Exception if signing or verification fails
+     */
+    public static void sign(int iterations) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            String username = USERNAME + i;
+            String sigRequest = DuoWeb.signRequest(IKEY, SKEY, AKEY, username);
+            String appSig = sigRequest.substring(sigRequest.indexOf(':') + 1);
+            String cookie = "AUTH|" + DuoBase64.encodeBytes((username + "|" + IKEY + "|"
+                    + (System.currentTimeMillis() / 1000 + 300)).getBytes());
+            String sigResponse = cookie + "|" + DuoUtil.hmacSign(SKEY, cookie) + ":" + appSig;
+            if (!username.equals(DuoWeb.verifyResponse(IKEY, SKEY, AKEY, sigResponse))) {
+                throw new IllegalStateException("Duo Web warm-up response was not verified");
+            }
+            DuoHttp request = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET, "api-warmup.duosecurity.com",
+                    DuoAuthenticatorConstants.API_USER);
+            request.addParam(DuoAuthenticatorConstants.DUO_USERNAME, username);
+            request.signRequest(IKEY, SKEY);
+        }
+    }
+
+    private void connect(String host) {
+        long start = System.nanoTime();
+        List<CompletableFuture<Object>> pings = new ArrayList<>();
+        try {
+            InetAddress.getAllByName(host);
+            long resolved = System.nanoTime();
+            for (int i = 0; i < connections; i++) {
+                DuoHttp request = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET, host,
+                        DuoAuthenticatorConstants.API_PING);
+                request.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+                pings.add(request.executeRequestAsync());
+            }
+            CompletableFuture.allOf(pings.toArray(new CompletableFuture[pings.size()]))
+                    .get(timeoutMillis, TimeUnit.MILLISECONDS);
+            // The connections stay in the pool for the keep-alive duration from now on.
+            warmedHosts.put(host.toLowerCase(), System.currentTimeMillis() + warmDurationMillis);
+            if (log.isDebugEnabled()) {
+                log.debug("Warmed up " + connections + " connections to Duo host " + host + ", DNS took "
+                        + TimeUnit.NANOSECONDS.toMillis(resolved - start) + "ms, connecting took "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - resolved) + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Let the next login try again.
+            warmedHosts.remove(host.toLowerCase());
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.warn("Could not warm up the connections to Duo host " + host + ": " + cause);
+        } finally {
+            for (CompletableFuture<Object> ping : pings) {
+                ping.cancel(true);
+            }
+        }
+    }
+
+    private void submit(Runnable task) {
+        try {
+            executorService.execute(task);
+        } catch (RuntimeException e) {
+            // Shut down, nothing to warm up.
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free source of the RFC 2822 dates used to sign Duo API requests. A date is formatted at most once per
+ * wall-clock second with an immutable formatter, and the string is shared through an atomic reference.
+ */
+public final class DuoDateFormatter {
+
+    public static final DateTimeFormatter RFC_2822_DATE_FORMATTER =
+            DateTimeFormatter.ofPattern("EEE', 'dd' 'MMM' 'yyyy' 'HH:mm:ss' 'Z", Locale.US)
+                    .withZone(ZoneId.systemDefault());
+
+    private static final AtomicReference<FormattedDate> LAST_DATE = new AtomicReference<>();
+
+    private DuoDateFormatter() {
+    }
+
+    /**
+     * @param millis the time in milliseconds since the epoch
+     * @return the time formatted as an RFC 2822 date, to the second
+     */
+    public static String format(long millis) {
+        long second = Math.floorDiv(millis, 1000);
+        FormattedDate last = LAST_DATE.get();
+        if (last != null && last.second == second) {
+            return last.value;
+        }
+        FormattedDate formatted = new FormattedDate(second,
+                RFC_2822_DATE_FORMATTER.format(Instant.ofEpochSecond(second)));
+        // Losing the race to another thread only means that thread's copy of the same second is published.
+        LAST_DATE.set(formatted);
+        return formatted.value;
+    }
+
+    private static class FormattedDate {
+        private final long second;
+        private final String value;
+
+        private FormattedDate(long second, String value) {
+            this.second = second;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import com.squareup.okhttp.Response;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.authenticator.duo.internal.DuoAuthenticatorServiceComponent;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probes every known Duo API host in the background with an unsigned call to /auth/v2/ping, and keeps the rolling
+ * availability and latency of each host. Hosts are known once a login has used them, since they are part of the
+ * identity provider configuration. Only reachability is probed: I/O errors, timeouts and 5xx replies count as
+ * failures, while any other reply means the host is up whatever the keys of its tenants are. While a host fails
+ * its probes, calls to it fail fast.
+ */
+public class DuoHealthProber {
+
+    private static Log log = LogFactory.getLog(DuoHealthProber.class);
+
+    private final long intervalMillis;
+    private final long timeoutMillis;
+    private final int windowSize;
+    private final int failureThreshold;
+    private final ConcurrentMap<String, String> targets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, DuoHostHealth> health = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param intervalMillis   the time between two probes of a host in milliseconds
+     * @param timeoutMillis    the timeout of a probe in milliseconds
+     * @param windowSize       the number of recent probes the availability and latency are computed over
+     * @param failureThreshold the number of consecutive failed probes after which a host is unavailable
+     */
+    public DuoHealthProber(long intervalMillis, long timeoutMillis, int windowSize, int failureThreshold) {
+        this.intervalMillis = intervalMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.windowSize = windowSize;
+        this.failureThreshold = failureThreshold;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "duo-health-prober");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Get the prober the authenticator bundle started, for readers outside the bundle such as the health page.
+     *
+     * @return the running prober, or null if health probes are disabled
+     */
+    public static DuoHealthProber getActiveProber() {
+        return DuoAuthenticatorServiceComponent.getHealthProber();
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::probeAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add a host to probe.
+     *
+     * @param host the Duo API host
+     */
+    public void register(String host) {
+        if (host == null) {
+            return;
+        }
+        String key = host.toLowerCase();
+        if (targets.containsKey(key)) {
+            return;
+        }
+        health.putIfAbsent(key, new DuoHostHealth(key, windowSize, failureThreshold));
+        if (targets.putIfAbsent(key, host) == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Probing Duo host " + host + " every " + intervalMillis + "ms");
+            }
+            try {
+                scheduler.execute(() -> probe(host));
+            } catch (RuntimeException e) {
+                // Shut down, the host is not probed.
+            }
+        }
+    }
+
+    /**
+     * @param host the Duo API host
+     * @return whether the host answers its probes, true for hosts that are not probed
+     */
+    public boolean isAvailable(String host) {
+        DuoHostHealth hostHealth = host == null ? null : health.get(host.toLowerCase());
+        return hostHealth == null || hostHealth.isAvailable();
+    }
+
+    /**
+     * @param host the Duo API host
+     * @return the health of the host, or null if it is not probed
+     */
+    public DuoHostHealth getHealth(String host) {
+        return host == null ? null : health.get(host.toLowerCase());
+    }
+
+    /**
+     * @return the health of every probed host, keyed by host
+     */
+    public Map<String, DuoHostHealth> getHealthByHost() {
+        return Collections.unmodifiableMap(new TreeMap<>(health));
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        targets.clear();
+    }
+
+    private void probeAll() {
+        for (String host : targets.values()) {
+            probe(host);
+        }
+    }
+
+    private void probe(String host) {
+        if (host == null) {
+            return;
+        }
+        DuoHostHealth hostHealth = health.get(host.toLowerCase());
+        long start = System.nanoTime();
+        String error;
+        try {
+            DuoHttp request = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET, host,
+                    DuoAuthenticatorConstants.API_PING);
+            request.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+            Response response = request.executeHttpRequest();
+            response.body().close();
+            error = response.code() >= 500 ? "HTTP " + response.code() : null;
+        } catch (IOException e) {
+            error = e.toString();
+        } catch (Exception e) {
+            // Not a sign of the host being down.
+            if (log.isDebugEnabled()) {
+                log.debug("Could not probe Duo host " + host, e);
+            }
+            return;
+        }
+        boolean wasAvailable = hostHealth.isAvailable();
+        hostHealth.record(error == null, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), error);
+        if (!wasAvailable && hostHealth.isAvailable()) {
+            log.info("Duo host " + host + " answers its health probes again");
+        } else if (wasAvailable && !hostHealth.isAvailable()) {
+            log.warn("Duo host " + host + " failed " + hostHealth.getConsecutiveFailures()
+                    + " health probes in a row, last error: " + error);
+        }
+    }
+}
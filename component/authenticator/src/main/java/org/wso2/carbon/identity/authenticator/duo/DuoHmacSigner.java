@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes HMACs and digests, and hex encodes the results through a lookup table into a per-thread buffer.
+ * Keyed Mac instances of long lived secrets are kept in a shared pool that is looked up without locking and is
+ * bounded both in secrets and in instances per secret, evicting the secret that entered the pool first. Secrets
+ * used only once, such as the random application key of a login, are signed with {@link #newMac(String, String)}
+ * so that they never enter the pool.
+ */
+public final class DuoHmacSigner {
+
+    public static final String HMAC_SHA1 = "HmacSHA1";
+    public static final String HMAC_SHA512 = "HmacSHA512";
+
+    private static final String HMAC_SHA1_ALIAS = "HMAC-SHA-1";
+    private static final int MAX_POOLED_SECRETS = 64;
+    private static final int MAX_MACS_PER_SECRET = 8;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ConcurrentMap<MacKey, IdleMacs> POOL = new ConcurrentHashMap<>();
+    private static final Queue<MacKey> POOLED_SECRETS = new ConcurrentLinkedQueue<>();
+
+    private static final ThreadLocal<ThreadState> STATE = new ThreadLocal<ThreadState>() {
+        @Override
+        protected ThreadState initialValue() {
+            return new ThreadState();
+        }
+    };
+
+    private DuoHmacSigner() {
+    }
+
+    /**
+     * Create a Mac keyed with a secret that is not pooled, for secrets that are used only once.
+     *
+     * @param algorithm the Mac algorithm
+     * @param secret    the secret, encoded with the platform charset
+     * @return the keyed Mac
+     * @throws NoSuchAlgorithmException if the algorithm is not available
+     * @throws InvalidKeyException      if the secret cannot be used as a key
+     */
+    public static Mac newMac(String algorithm, String secret) throws NoSuchAlgorithmException, InvalidKeyException {
+        return createMac(algorithm, new SecretKeySpec(secret.getBytes(), algorithm));
+    }
+
+    /**
+     * Get the message digest of the calling thread for an algorithm. The instance is reset and must not be kept or
+     * shared with other threads.
+     *
+     * @param algorithm the digest algorithm, such as SHA-512
+     * @return the message digest
+     * @throws NoSuchAlgorithmException if the algorithm is not available
+     */
+    public static MessageDigest getDigest(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, MessageDigest> digests = STATE.get().digests;
+        MessageDigest digest = digests.get(algorithm);
+        if (digest == null) {
+            digest = MessageDigest.getInstance(algorithm);
+            digests.put(algorithm, digest);
+        }
+        digest.reset();
+        return digest;
+    }
+
+    public static byte[] sign(String algorithm, String secret, byte[] data)
+            throws NoSuchAlgorithmException, InvalidKeyException {
+        return sign(new MacKey(algorithm, secret), data, 0, data.length);
+    }
+
+    /**
+     * Sign a range of bytes with a pooled Mac keyed with a long lived secret.
+     *
+     * @param algorithm the Mac algorithm
+     * @param secret    the secret, encoded with the platform charset
+     * @param data      the bytes to sign
+     * @param offset    the index of the first byte
+     * @param length    the number of bytes
+     * @return the MAC
+     * @throws NoSuchAlgorithmException if the algorithm is not available
+     * @throws InvalidKeyException      if the secret cannot be used as a key
+     */
+    public static byte[] sign(String algorithm, String secret, byte[] data, int offset, int length)
+            throws NoSuchAlgorithmException, InvalidKeyException {
+        return sign(new MacKey(algorithm, secret), data, offset, length);
+    }
+
+    public static byte[] sign(String algorithm, byte[] secret, byte[] data)
+            throws NoSuchAlgorithmException, InvalidKeyException {
+        return sign(new MacKey(algorithm, secret.clone()), data, 0, data.length);
+    }
+
+    public static String signHex(String algorithm, String secret, byte[] data)
+            throws NoSuchAlgorithmException, InvalidKeyException {
+        return toHex(sign(algorithm, secret, data));
+    }
+
+    /**
+     * @param bytes the bytes to encode
+     * @return the lowercase hex encoding of the bytes
+     */
+    public static String toHex(byte[] bytes) {
+        return toHex(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param bytes  the bytes to encode
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @return the lowercase hex encoding of the bytes
+     */
+    public static String toHex(byte[] bytes, int offset, int length) {
+        ThreadState state = STATE.get();
+        char[] buffer = state.hexBuffer;
+        if (buffer.length < length * 2) {
+            buffer = new char[length * 2];
+            state.hexBuffer = buffer;
+        }
+        for (int i = 0, j = 0; i < length; i++) {
+            int value = bytes[offset + i] & 0xff;
+            buffer[j++] = HEX_DIGITS[value >>> 4];
+            buffer[j++] = HEX_DIGITS[value & 0x0f];
+        }
+        return new String(buffer, 0, length * 2);
+    }
+
+    /**
+     * Compare a MAC with its lowercase hex encoding in time that depends only on the lengths, so that a forged
+     * signature cannot be found a character at a time.
+     *
+     * @param mac the computed MAC
+     * @param hex the hex encoded MAC received
+     * @return true if the hex string is exactly the lowercase hex encoding of the MAC
+     */
+    public static boolean isEqualHex(byte[] mac, String hex) {
+        return hex != null && isEqualHex(mac, hex, 0, hex.length());
+    }
+
+    /**
+     * Compare a MAC with a lowercase hex encoding held in a range of a string, in time that depends only on the
+     * lengths.
+     *
+     * @param mac    the computed MAC
+     * @param hex    the string holding the hex encoded MAC received
+     * @param offset the index of the first hex character
+     * @param length the number of hex characters
+     * @return true if the range is exactly the lowercase hex encoding of the MAC
+     */
+    public static boolean isEqualHex(byte[] mac, String hex, int offset, int length) {
+        if (length != mac.length * 2) {
+            return false;
+        }
+        int diff = 0;
+        for (int i = 0, j = offset; i < mac.length; i++) {
+            int value = mac[i] & 0xff;
+            diff |= hex.charAt(j++) ^ HEX_DIGITS[value >>> 4];
+            diff |= hex.charAt(j++) ^ HEX_DIGITS[value & 0x0f];
+        }
+        return diff == 0;
+    }
+
+    /**
+     * @return the number of secrets with pooled Mac instances
+     */
+    public static int getPooledSecretCount() {
+        return POOL.size();
+    }
+
+    /**
+     * Drop every pooled Mac, and with them the secrets they are keyed with.
+     */
+    public static void clear() {
+        POOL.clear();
+        POOLED_SECRETS.clear();
+    }
+
+    private static byte[] sign(MacKey key, byte[] data, int offset, int length)
+            throws NoSuchAlgorithmException, InvalidKeyException {
+        IdleMacs idle = POOL.get(key);
+        Mac mac = idle != null ? idle.poll() : null;
+        if (mac == null) {
+            mac = createMac(key.algorithm, key.toKeySpec());
+        }
+        try {
+            mac.update(data, offset, length);
+            return mac.doFinal();
+        } finally {
+            mac.reset();
+            release(key, idle, mac);
+        }
+    }
+
+    /**
+     * Return a Mac to the pool, adding its secret first and evicting the oldest secrets if it is not pooled yet.
+     */
+    private static void release(MacKey key, IdleMacs idle, Mac mac) {
+        if (idle == null) {
+            idle = POOL.get(key);
+        }
+        if (idle == null) {
+            while (POOL.size() >= MAX_POOLED_SECRETS) {
+                MacKey eldest = POOLED_SECRETS.poll();
+                if (eldest == null) {
+                    break;
+                }
+                POOL.remove(eldest);
+            }
+            IdleMacs created = new IdleMacs();
+            idle = POOL.putIfAbsent(key, created);
+            if (idle == null) {
+                idle = created;
+                POOLED_SECRETS.offer(key);
+            }
+        }
+        idle.offer(mac);
+    }
+
+    private static Mac createMac(String algorithm, SecretKeySpec key)
+            throws NoSuchAlgorithmException, InvalidKeyException {
+        Mac mac;
+        try {
+            mac = Mac.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            if (!HMAC_SHA1.equals(algorithm)) {
+                throw e;
+            }
+            mac = Mac.getInstance(HMAC_SHA1_ALIAS);
+        }
+        mac.init(key);
+        return mac;
+    }
+
+    /**
+     * The idle Mac instances of a secret, holding at most {@link #MAX_MACS_PER_SECRET} of them.
+     */
+    private static class IdleMacs {
+        private final Queue<Mac> macs = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private Mac poll() {
+            Mac mac = macs.poll();
+            if (mac != null) {
+                size.decrementAndGet();
+            }
+            return mac;
+        }
+
+        private void offer(Mac mac) {
+            if (size.incrementAndGet() > MAX_MACS_PER_SECRET) {
+                size.decrementAndGet();
+                return;
+            }
+            macs.offer(mac);
+        }
+    }
+
+    private static class ThreadState {
+        private char[] hexBuffer = new char[64];
+        private final Map<String, MessageDigest> digests = new HashMap<>();
+    }
+
+    /**
+     * Pool key of the keyed Mac instances of an algorithm and secret.
+     */
+    private static class MacKey {
+        private final String algorithm;
+        private final Object secret;
+        private final int hash;
+
+        private MacKey(String algorithm, String secret) {
+            this.algorithm = algorithm;
+            this.secret = secret;
+            this.hash = algorithm.hashCode() * 31 + secret.hashCode();
+        }
+
+        private MacKey(String algorithm, byte[] secret) {
+            this.algorithm = algorithm;
+            this.secret = secret;
+            this.hash = algorithm.hashCode() * 31 + Arrays.hashCode(secret) + 1;
+        }
+
+        private SecretKeySpec toKeySpec() {
+            if (secret instanceof byte[]) {
+                return new SecretKeySpec((byte[]) secret, "RAW");
+            }
+            return new SecretKeySpec(((String) secret).getBytes(), algorithm);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof MacKey)) {
+                return false;
+            }
+            MacKey other = (MacKey) object;
+            if (hash != other.hash || !algorithm.equals(other.algorithm)) {
+                return false;
+            }
+            if (secret instanceof byte[] && other.secret instanceof byte[]) {
+                return Arrays.equals((byte[]) secret, (byte[]) other.secret);
+            }
+            return secret.equals(other.secret);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+/**
+ * Rolling health of one Duo API host, kept from the outcomes and latencies of the last health probes.
+ */
+public class DuoHostHealth {
+
+    private final String host;
+    private final boolean[] successes;
+    private final long[] latencies;
+    private final int failureThreshold;
+    private int size;
+    private int index;
+    private int consecutiveFailures;
+    private long lastCheckedAt;
+    private String lastError;
+
+    /**
+     * @param host             the Duo API host
+     * @param windowSize       the number of recent probes the availability and latency are computed over
+     * @param failureThreshold the number of consecutive failed probes after which the host is unavailable
+     */
+    public DuoHostHealth(String host, int windowSize, int failureThreshold) {
+        this.host = host;
+        this.successes = new boolean[Math.max(windowSize, 1)];
+        this.latencies = new long[successes.length];
+        this.failureThreshold = Math.max(failureThreshold, 1);
+    }
+
+    /**
+     * @param success       whether the host answered the probe without a server error
+     * @param latencyMillis how long the probe took in milliseconds
+     * @param error         the failure of the probe, or null
+     */
+    public synchronized void record(boolean success, long latencyMillis, String error) {
+        successes[index] = success;
+        latencies[index] = latencyMillis;
+        index = (index + 1) % successes.length;
+        size = Math.min(size + 1, successes.length);
+        consecutiveFailures = success ? 0 : consecutiveFailures + 1;
+        lastCheckedAt = System.currentTimeMillis();
+        lastError = error;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return whether the host failed fewer probes in a row than the threshold, true until it has been probed
+     */
+    public synchronized boolean isAvailable() {
+        return consecutiveFailures < failureThreshold;
+    }
+
+    /**
+     * @return the share of successful probes in the window, or -1 if the host has not been probed
+     */
+    public synchronized double getAvailability() {
+        if (size == 0) {
+            return -1;
+        }
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            count += successes[i] ? 1 : 0;
+        }
+        return (double) count / size;
+    }
+
+    /**
+     * @return the mean latency of the successful probes in the window in milliseconds, or -1 if there are none
+     */
+    public synchronized long getAverageLatencyMillis() {
+        long total = 0;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (successes[i]) {
+                total += latencies[i];
+                count++;
+            }
+        }
+        return count == 0 ? -1 : total / count;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return the time of the last probe in milliseconds since the epoch, or 0 if the host has not been probed
+     */
+    public synchronized long getLastCheckedAt() {
+        return lastCheckedAt;
+    }
+
+    /**
+     * @return the failure of the last probe, or null if it succeeded
+     */
+    public synchronized String getLastError() {
+        return lastError;
+    }
+}
@@ -19,30 +19,58 @@
 package org.wso2.carbon.identity.authenticator.duo;
 
 import com.squareup.okhttp.*;
+import okio.BufferedSink;
 import org.json.JSONObject;
+import org.wso2.carbon.identity.authenticator.duo.internal.DuoAuthenticatorServiceComponent;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
-import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DuoHttp {
     private String method;
     private String host;
     private String uri;
     private Headers.Builder headers;
-    Map<String, String> params = new HashMap<String, String>();
+    SortedMap<String, String> params = new TreeMap<String, String>();
+    private String queryString;
     private Proxy proxy;
-    private int timeout = 60;
+    private long timeoutMillis = TimeUnit.SECONDS.toMillis(60);
+    private DuoSignatureAlgorithm signatureAlgorithm;
+    private DuoRetryPolicy retryPolicy;
+    private long hedgeDelayMillis;
+    private DuoResponseParser responseParser;
+    private DuoRateLimiter rateLimiter;
+    private String rateLimitKey;
+    private volatile int statusCode;
+    private volatile Call call;
 
+    private static final String RETRY_AFTER = "Retry-After";
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * @deprecated SimpleDateFormat is not thread safe, request dates are formatted by {@link DuoDateFormatter}
+     */
+    @Deprecated
     public static SimpleDateFormat RFC_2822_DATE_FORMAT
             = new SimpleDateFormat("EEE', 'dd' 'MMM' 'yyyy' 'HH:mm:ss' 'Z",
             Locale.US);
 
     public static MediaType FORM_ENCODED = MediaType.parse("application/x-www-form-urlencoded");
+    public static MediaType JSON = MediaType.parse("application/json");
 
     public DuoHttp(String in_method, String in_host, String in_uri) {
         method = in_method.toUpperCase();
@@ -55,15 +83,83 @@ public class DuoHttp {
 
     public DuoHttp(String in_method, String in_host, String in_uri, int timeout) {
         this(in_method, in_host, in_uri);
-        this.timeout = timeout;
+        this.timeoutMillis = TimeUnit.SECONDS.toMillis(timeout);
     }
 
     public Object executeRequest() throws Exception {
-        JSONObject result = new JSONObject(executeRequestRaw());
-        if (!result.getString("stat").equals("OK")) {
-            throw new Exception("Duo error code (" + result.getInt("code") + "): " + result.getString("message"));
+        if (!isRetryEnabled()) {
+            return parseResponse(executeHttpRequest());
         }
-        return result.get("response");
+        retryPolicy.onRequest();
+        for (int attempt = 1; ; attempt++) {
+            long delay;
+            try {
+                Response response = executeHttpRequest();
+                delay = retryPolicy.isRetryable(response.code())
+                        ? retryPolicy.nextDelayMillis(attempt, response.header(RETRY_AFTER)) : -1;
+                if (delay < 0) {
+                    return parseResponse(response);
+                }
+                response.body().close();
+            } catch (IOException e) {
+                delay = retryPolicy.isRetryable(e) ? retryPolicy.nextDelayMillis(attempt, null) : -1;
+                if (delay < 0) {
+                    throw e;
+                }
+            }
+            Thread.sleep(delay);
+        }
+    }
+
+    /**
+     * Execute the request without blocking the calling thread. The returned future fails with a
+     * {@link TimeoutException} if no response arrives within the timeout, or twice the timeout for requests that may
+     * be retried, and cancelling it cancels the HTTP call.
+     * GET requests with a retry policy are retried on transient failures and, when a hedge delay is set, sent a
+     * second time if the first attempt is slow. The first successful attempt wins and the others are cancelled.
+     *
+     * @return a future completed with the "response" element of the Duo reply, or what the response parser read
+     */
+    public CompletableFuture<Object> executeRequestAsync() {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final DuoHttpClientRegistry registry = getClientRegistry();
+        final AsyncCall asyncCall;
+        try {
+            asyncCall = new AsyncCall(registry, future);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        boolean retryEnabled = isRetryEnabled();
+        if (retryEnabled) {
+            retryPolicy.onRequest();
+        }
+        final List<ScheduledFuture<?>> timers = new CopyOnWriteArrayList<>();
+        future.whenComplete((result, error) -> {
+            for (ScheduledFuture<?> timer : timers) {
+                timer.cancel(false);
+            }
+            asyncCall.cancelAll();
+        });
+        long deadlineMillis = retryEnabled ? timeoutMillis * 2 : timeoutMillis;
+        try {
+            // The deadline is set before the call is sent, so that a call is never left running without one.
+            timers.add(registry.getScheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    future.completeExceptionally(new TimeoutException("Duo API request to " + host + uri
+                            + " timed out after " + deadlineMillis + "ms"));
+                }
+            }, deadlineMillis, TimeUnit.MILLISECONDS));
+            if (retryEnabled && hedgeDelayMillis > 0 && retryPolicy.isHedgingEnabled()) {
+                timers.add(registry.getScheduler().schedule(asyncCall::hedge, hedgeDelayMillis,
+                        TimeUnit.MILLISECONDS));
+            }
+            asyncCall.attempt();
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
     }
 
     public String executeRequestRaw() throws Exception {
@@ -72,13 +168,31 @@ public class DuoHttp {
     }
 
     public Response executeHttpRequest() throws Exception {
+        Call call = getClientRegistry().getClient(proxy, timeoutMillis).newCall(buildRequest());
+        this.call = call;
+        Response response = call.execute();
+        onResponse(response);
+        return response;
+    }
+
+    /**
+     * Cancel the HTTP call a blocking {@link #executeRequest()} is waiting for, so that it fails right away.
+     */
+    public void cancel() {
+        Call current = call;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    private Request buildRequest() throws UnsupportedEncodingException {
         String url = "https://" + host + uri;
-        String queryString = createQueryString();
+        String queryString = getQueryString();
         Request.Builder builder = new Request.Builder();
         if (method.equals("POST")) {
-            builder.post(RequestBody.create(FORM_ENCODED, queryString));
+            builder.post(createBody(queryString));
         } else if (method.equals("PUT")) {
-            builder.put(RequestBody.create(FORM_ENCODED, queryString));
+            builder.put(createBody(queryString));
         } else if (method.equals("GET")) {
             if (queryString.length() > 0) {
                 url += "?" + queryString;
@@ -92,32 +206,202 @@ public class DuoHttp {
         } else {
             throw new UnsupportedOperationException("Unsupported method: " + method);
         }
-        Request request = builder.url(url).build();
-        // Set up client.
-        OkHttpClient httpclient = new OkHttpClient();
-        if (proxy != null) {
-            httpclient.setProxy(proxy);
-        }
-        httpclient.setConnectTimeout(timeout, TimeUnit.SECONDS);
-        httpclient.setWriteTimeout(timeout, TimeUnit.SECONDS);
-        httpclient.setReadTimeout(timeout, TimeUnit.SECONDS);
-        // finish and execute request
+        builder.url(url);
         builder.headers(headers.build());
-        return httpclient.newCall(builder.build()).execute();
+        return builder.build();
+    }
+
+    private RequestBody createBody(String queryString) {
+        if (signatureAlgorithm == null || !signatureAlgorithm.isJsonBody()) {
+            return RequestBody.create(FORM_ENCODED, queryString);
+        }
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return JSON;
+            }
+
+            @Override
+            public long contentLength() throws IOException {
+                CountingOutputStream counter = new CountingOutputStream();
+                writeBody(counter);
+                return counter.count;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                OutputStream out = sink.outputStream();
+                writeBody(out);
+                out.flush();
+            }
+        };
+    }
+
+    private void onResponse(Response response) {
+        if (rateLimiter != null && response.code() == HTTP_TOO_MANY_REQUESTS) {
+            rateLimiter.onThrottled(rateLimitKey, response.header(RETRY_AFTER));
+        }
+    }
+
+    private Object parseResponse(Response response) throws Exception {
+        statusCode = response.code();
+        if (responseParser == null) {
+            return parseResponse(response.body().string());
+        }
+        try (InputStream body = response.body().byteStream()) {
+            return responseParser.parse(body);
+        }
+    }
+
+    private Object parseResponse(String body) throws Exception {
+        JSONObject result = new JSONObject(body);
+        if (!result.getString("stat").equals("OK")) {
+            throw new Exception("Duo error code (" + result.getInt("code") + "): " + result.getString("message"));
+        }
+        return result.get("response");
+    }
+
+    private boolean isRetryEnabled() {
+        return retryPolicy != null && method.equals("GET");
+    }
+
+    private static DuoHttpClientRegistry getClientRegistry() {
+        DuoHttpClientRegistry registry = DuoAuthenticatorServiceComponent.getHttpClientRegistry();
+        if (registry != null) {
+            return registry;
+        }
+        return StandaloneRegistryHolder.REGISTRY;
+    }
+
+    /**
+     * The attempts of one asynchronous request: the first one, its retries and a hedged attempt.
+     */
+    private class AsyncCall {
+        private final DuoHttpClientRegistry registry;
+        private final OkHttpClient client;
+        private final Request request;
+        private final CompletableFuture<Object> future;
+        private final List<Call> calls = new CopyOnWriteArrayList<>();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private AsyncCall(DuoHttpClientRegistry registry, CompletableFuture<Object> future) throws IOException {
+            this.registry = registry;
+            this.client = registry.getClient(proxy, timeoutMillis);
+            this.request = buildRequest();
+            this.future = future;
+        }
+
+        private void attempt() {
+            final int attempt = attempts.incrementAndGet();
+            final Call call = client.newCall(request);
+            calls.add(call);
+            inFlight.incrementAndGet();
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Request request, IOException e) {
+                    boolean last = inFlight.decrementAndGet() == 0;
+                    if (future.isDone() || !last) {
+                        // Another attempt is still running and decides the outcome.
+                        return;
+                    }
+                    long delay = isRetryEnabled() && retryPolicy.isRetryable(e)
+                            ? retryPolicy.nextDelayMillis(attempt, null) : -1;
+                    if (delay < 0) {
+                        future.completeExceptionally(e);
+                    } else {
+                        retry(delay);
+                    }
+                }
+
+                @Override
+                public void onResponse(Response response) throws IOException {
+                    DuoHttp.this.onResponse(response);
+                    boolean last = inFlight.decrementAndGet() == 0;
+                    if (future.isDone()) {
+                        response.body().close();
+                        return;
+                    }
+                    if (isRetryEnabled() && retryPolicy.isRetryable(response.code())) {
+                        long delay = last ? retryPolicy.nextDelayMillis(attempt, response.header(RETRY_AFTER)) : 0;
+                        if (delay >= 0) {
+                            response.body().close();
+                            if (last) {
+                                retry(delay);
+                            }
+                            return;
+                        }
+                    }
+                    try {
+                        future.complete(parseResponse(response));
+                    } catch (Exception e) {
+                        future.completeExceptionally(e);
+                    }
+                }
+            });
+        }
+
+        private void retry(long delayMillis) {
+            try {
+                registry.getScheduler().schedule(() -> {
+                    if (!future.isDone()) {
+                        attempt();
+                    }
+                }, delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        private void hedge() {
+            if (!future.isDone() && inFlight.get() > 0 && retryPolicy.tryHedge()) {
+                attempt();
+            }
+        }
+
+        private void cancelAll() {
+            for (Call call : calls) {
+                if (!call.isCanceled()) {
+                    call.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * Lazily created registry used when not running inside the OSGi container.
+     */
+    private static class StandaloneRegistryHolder {
+        private static final DuoHttpClientRegistry REGISTRY = new DuoHttpClientRegistry(
+                DuoAuthenticatorConstants.DEFAULT_HTTP_MAX_IDLE_CONNECTIONS,
+                DuoAuthenticatorConstants.DEFAULT_HTTP_KEEP_ALIVE_DURATION);
     }
 
     public void signRequest(String ikey, String skey) throws UnsupportedEncodingException {
         signRequest(ikey, skey, 2);
     }
 
+    /**
+     * Sign the request with the algorithm registered for a signature version in {@link DuoSignatureAlgorithms}.
+     *
+     * @param ikey        the integration key
+     * @param skey        the secret key
+     * @param sig_version the signature version
+     */
     public void signRequest(String ikey, String skey, int sig_version) throws UnsupportedEncodingException {
+        DuoSignatureAlgorithm algorithm = DuoSignatureAlgorithms.get(sig_version);
         String date = formatDate(new Date());
         String canon = canonRequest(date, sig_version);
-        String sig = signHMAC(skey, canon);
+        String sig;
+        if (DuoHmacSigner.HMAC_SHA1.equals(algorithm.getMacAlgorithm())) {
+            sig = signHMAC(skey, canon);
+        } else {
+            sig = signHMAC(skey, canon, algorithm.getMacAlgorithm());
+        }
         String auth = ikey + ":" + sig;
         String header = "Basic " + DuoBase64.encodeBytes(auth.getBytes());
         addHeader("Authorization", header);
-        if (sig_version == 2) {
+        if (algorithm.isDateSigned()) {
             addHeader("Date", date);
         }
     }
@@ -132,10 +416,16 @@ public class DuoHttp {
         }
     }
 
-    private synchronized String formatDate(Date date) {
-        // Could use ThreadLocal or a pool of format objects instead
-        // depending on the needs of the application.
-        return RFC_2822_DATE_FORMAT.format(date);
+    protected String signHMAC(String skey, String msg, String algorithm) {
+        try {
+            return DuoUtil.hmacSign(skey, msg, algorithm);
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private String formatDate(Date date) {
+        return DuoDateFormatter.format(date.getTime());
     }
 
     public void addHeader(String name, String value) {
@@ -144,6 +434,70 @@ public class DuoHttp {
 
     public void addParam(String name, String value) {
         params.put(name, value);
+        queryString = null;
+    }
+
+    /**
+     * Set the connect, read and write timeout of the request, which also bounds the whole asynchronous call.
+     *
+     * @param timeout the timeout
+     * @param unit    the unit of the timeout
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        timeoutMillis = unit.toMillis(timeout);
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @return the HTTP status code of the reply the request completed with, or 0 if it got no reply
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Retry the request on transient failures. Only GET requests are retried, since they are idempotent.
+     *
+     * @param retryPolicy the retry policy, or null to send the request once
+     */
+    public void setRetryPolicy(DuoRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Send a second request if the first has not answered within a delay, when the retry policy allows hedging.
+     * Only {@link #executeRequestAsync()} hedges, the blocking {@link #executeRequest()} used by the pooled and
+     * virtual execution modes ignores the delay.
+     *
+     * @param delay the delay, or 0 to disable hedging
+     * @param unit  the unit of the delay
+     */
+    public void setHedgeDelay(long delay, TimeUnit unit) {
+        hedgeDelayMillis = unit.toMillis(delay);
+    }
+
+    /**
+     * Read the reply with a parser of its own instead of building a JSONObject of the whole body. The parser then
+     * also decides what a failed reply is.
+     *
+     * @param responseParser the parser, or null to complete with the "response" element of the reply
+     */
+    public void setResponseParser(DuoResponseParser responseParser) {
+        this.responseParser = responseParser;
+    }
+
+    /**
+     * Tell a rate limiter when Duo answers 429, so that it pauses the other calls with the same integration key.
+     *
+     * @param rateLimiter the rate limiter, or null
+     * @param ikey        the integration key the request is signed with
+     */
+    public void setRateLimiter(DuoRateLimiter rateLimiter, String ikey) {
+        this.rateLimiter = rateLimiter;
+        this.rateLimitKey = ikey;
     }
 
     public void setProxy(String host, int port) {
@@ -152,31 +506,100 @@ public class DuoHttp {
 
     protected String canonRequest(String date, int sig_version)
             throws UnsupportedEncodingException {
-        String canon = "";
-        if (sig_version == 2) {
-            canon += date + "\n";
+        signatureAlgorithm = DuoSignatureAlgorithms.get(sig_version);
+        try {
+            return signatureAlgorithm.canonicalize(this, date);
+        } catch (UnsupportedEncodingException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not hash the request body", e);
         }
-        canon += method.toUpperCase() + "\n";
-        canon += host.toLowerCase() + "\n";
-        canon += uri + "\n";
-        canon += createQueryString();
-        return canon;
     }
 
-    private String createQueryString()
-            throws UnsupportedEncodingException {
-        ArrayList<String> args = new ArrayList<String>();
-        ArrayList<String> keys = new ArrayList<String>();
+    public String getMethod() {
+        return method;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public Headers getHeaders() {
+        return headers.build();
+    }
+
+    /**
+     * @return whether the request parameters are sent in the body rather than in the URL
+     */
+    public boolean hasBody() {
+        return method.equals("POST") || method.equals("PUT");
+    }
+
+    /**
+     * Write the request body: the parameters as a compact JSON object with sorted keys for signature versions that
+     * send JSON, the form encoded parameters otherwise, and nothing for requests without a body. The body is written
+     * one parameter at a time so that it can be hashed and sent without being held in memory.
+     *
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    public void writeBody(OutputStream out) throws IOException {
+        if (!hasBody()) {
+            return;
+        }
+        if (signatureAlgorithm == null || !signatureAlgorithm.isJsonBody()) {
+            out.write(getQueryString().getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        StringBuilder builder = new StringBuilder(64);
+        builder.append('{');
+        boolean first = true;
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            if (!first) {
+                builder.append(',');
+            }
+            first = false;
+            DuoCanonicalizer.appendJsonString(builder, param.getKey());
+            builder.append(':');
+            DuoCanonicalizer.appendJsonString(builder, param.getValue());
+            out.write(builder.toString().getBytes(StandardCharsets.US_ASCII));
+            builder.setLength(0);
+        }
+        builder.append('}');
+        out.write(builder.toString().getBytes(StandardCharsets.US_ASCII));
+    }
 
-        for (String key : params.keySet()) {
-            keys.add(key);
+    /**
+     * Get the encoded query string, computed once and shared by the signature and the request.
+     *
+     * @return the encoded query string
+     */
+    public String getQueryString() {
+        if (queryString == null) {
+            queryString = createQueryString();
         }
-        Collections.sort(keys);
-        for (String key : keys) {
-            String name = URLEncoder.encode(key, "UTF-8").replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
-            String value = URLEncoder.encode(params.get(key), "UTF-8").replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
-            args.add(name + "=" + value);
+        return queryString;
+    }
+
+    private String createQueryString() {
+        return DuoCanonicalizer.queryString(params);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
         }
-        return DuoUtil.join(args.toArray(), "&");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Response;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived registry of the OkHttp clients used for outbound Duo API calls. Every client handed out shares one
+ * keep-alive connection pool, so repeated Admin API calls reuse the TCP connection and TLS session to the Duo host.
+ * HTTP/2 is offered during the TLS handshake, so where it is negotiated concurrent calls to a host are multiplexed
+ * over one connection, and responses are requested and decompressed as gzip by OkHttp.
+ */
+public class DuoHttpClientRegistry {
+
+    private static Log log = LogFactory.getLog(DuoHttpClientRegistry.class);
+
+    private final ConnectionPool connectionPool;
+    private final OkHttpClient baseClient;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentMap<String, OkHttpClient> clients = new ConcurrentHashMap<>();
+    private final AtomicLong clientLookups = new AtomicLong();
+    private final Set<Connection> connections = Collections.newSetFromMap(new WeakHashMap<Connection, Boolean>());
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong gzipResponses = new AtomicLong();
+    private final ConcurrentMap<String, Protocol> protocolByHost = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public DuoHttpClientRegistry(int maxIdleConnections, long keepAliveDurationMillis) {
+        this(maxIdleConnections, keepAliveDurationMillis,
+                DuoAuthenticatorConstants.DEFAULT_HTTP_MAX_REQUESTS_PER_HOST);
+    }
+
+    public DuoHttpClientRegistry(int maxIdleConnections, long keepAliveDurationMillis, int maxRequestsPerHost) {
+        this(maxIdleConnections, keepAliveDurationMillis, maxRequestsPerHost,
+                parseProtocols(DuoAuthenticatorConstants.DEFAULT_HTTP_PROTOCOLS));
+    }
+
+    /**
+     * @param maxIdleConnections      the maximum number of idle connections kept in the pool
+     * @param keepAliveDurationMillis the time an idle connection is kept open in milliseconds
+     * @param maxRequestsPerHost      the maximum number of asynchronous calls running at once against one host
+     * @param protocols               the protocols offered to the Duo hosts, in order of preference
+     */
+    public DuoHttpClientRegistry(int maxIdleConnections, long keepAliveDurationMillis, int maxRequestsPerHost,
+                                 List<Protocol> protocols) {
+        connectionPool = new ConnectionPool(maxIdleConnections, keepAliveDurationMillis);
+        baseClient = new OkHttpClient();
+        baseClient.setConnectionPool(connectionPool);
+        baseClient.getDispatcher().setMaxRequestsPerHost(maxRequestsPerHost);
+        baseClient.setProtocols(protocols);
+        baseClient.networkInterceptors().add(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                Response response = chain.proceed(chain.request());
+                onNetworkResponse(chain.request().httpUrl().host(), chain.connection(), response);
+                return response;
+            }
+        });
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "duo-http-timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (log.isDebugEnabled()) {
+            log.debug("Duo HTTP connection pool created with " + maxIdleConnections + " max idle connections and "
+                    + keepAliveDurationMillis + "ms keep-alive");
+        }
+    }
+
+    /**
+     * Get the pooled client for the given proxy and timeout.
+     *
+     * @param proxy   the proxy, or null for a direct connection
+     * @param timeout the connect, read and write timeout in seconds
+     * @return a client sharing the registry's connection pool
+     */
+    public OkHttpClient getClient(Proxy proxy, int timeout) {
+        return getClient(proxy, TimeUnit.SECONDS.toMillis(timeout));
+    }
+
+    /**
+     * Get the pooled client for the given proxy and timeout. A client is kept for every distinct timeout, so
+     * callers should round timeouts that vary.
+     *
+     * @param proxy         the proxy, or null for a direct connection
+     * @param timeoutMillis the connect, read and write timeout in milliseconds
+     * @return a client sharing the registry's connection pool
+     */
+    public OkHttpClient getClient(Proxy proxy, long timeoutMillis) {
+        if (closed) {
+            throw new IllegalStateException("Duo HTTP client registry is already closed");
+        }
+        clientLookups.incrementAndGet();
+        String key = (proxy == null ? Proxy.NO_PROXY : proxy) + "|" + timeoutMillis;
+        OkHttpClient client = clients.get(key);
+        if (client == null) {
+            OkHttpClient newClient = baseClient.clone();
+            if (proxy != null) {
+                newClient.setProxy(proxy);
+            }
+            newClient.setConnectTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+            newClient.setWriteTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+            newClient.setReadTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+            client = clients.putIfAbsent(key, newClient);
+            if (client == null) {
+                client = newClient;
+            }
+        }
+        return client;
+    }
+
+    /**
+     * @return the scheduler used to enforce deadlines on asynchronous calls
+     */
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return the number of asynchronous calls currently running
+     */
+    public int getRunningCallCount() {
+        return baseClient.getDispatcher().getRunningCallCount();
+    }
+
+    /**
+     * @return the number of asynchronous calls waiting for a free dispatcher slot
+     */
+    public int getQueuedCallCount() {
+        return baseClient.getDispatcher().getQueuedCallCount();
+    }
+
+    /**
+     * @return the total number of connections held by the pool
+     */
+    public int getConnectionCount() {
+        return connectionPool.getConnectionCount();
+    }
+
+    /**
+     * @return the number of idle connections held by the pool
+     */
+    public int getIdleConnectionCount() {
+        return connectionPool.getIdleConnectionCount();
+    }
+
+    /**
+     * @return the number of connections opened to the Duo hosts
+     */
+    public long getConnectionsOpenedCount() {
+        return connectionsOpened.get();
+    }
+
+    /**
+     * @return the number of responses that came gzip compressed over the network
+     */
+    public long getGzipResponseCount() {
+        return gzipResponses.get();
+    }
+
+    /**
+     * @return the protocol last negotiated with each Duo host, keyed by host
+     */
+    public Map<String, Protocol> getProtocolByHost() {
+        return Collections.unmodifiableMap(new TreeMap<>(protocolByHost));
+    }
+
+    /**
+     * @return the number of distinct proxy and timeout client configurations
+     */
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * @return the number of times a client was handed out
+     */
+    public long getClientLookupCount() {
+        return clientLookups.get();
+    }
+
+    /**
+     * Evict all pooled connections and stop the dispatcher threads.
+     */
+    public void close() {
+        closed = true;
+        if (log.isDebugEnabled()) {
+            log.debug("Closing Duo HTTP connection pool: " + getConnectionCount() + " connections, "
+                    + getIdleConnectionCount() + " idle, " + getConnectionsOpenedCount() + " opened, "
+                    + getClientLookupCount() + " client lookups, " + getGzipResponseCount() + " gzip responses, "
+                    + "protocols " + getProtocolByHost());
+        }
+        clients.clear();
+        connectionPool.evictAll();
+        baseClient.getDispatcher().getExecutorService().shutdown();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Parse a comma separated list of protocols, such as "h2,http/1.1". OkHttp needs HTTP/1.1 to fall back to when
+     * the Duo host or the JVM cannot negotiate anything else, so it is added when it is missing.
+     *
+     * @param protocols the protocol names
+     * @return the protocols in the given order
+     */
+    public static List<Protocol> parseProtocols(String protocols) {
+        List<Protocol> result = new ArrayList<>();
+        if (protocols != null) {
+            for (String name : protocols.split(",")) {
+                try {
+                    Protocol protocol = Protocol.get(name.trim().toLowerCase());
+                    if (protocol != Protocol.HTTP_1_0 && !result.contains(protocol)) {
+                        result.add(protocol);
+                    }
+                } catch (IOException e) {
+                    log.warn("Ignoring the unknown HTTP protocol " + name.trim());
+                }
+            }
+        }
+        if (!result.contains(Protocol.HTTP_1_1)) {
+            result.add(Protocol.HTTP_1_1);
+        }
+        return result;
+    }
+
+    private void onNetworkResponse(String host, Connection connection, Response response) {
+        if (connection != null) {
+            boolean opened;
+            synchronized (connections) {
+                opened = connections.add(connection);
+            }
+            if (opened) {
+                connectionsOpened.incrementAndGet();
+            }
+        }
+        if ("gzip".equalsIgnoreCase(response.header("Content-Encoding"))) {
+            gzipResponses.incrementAndGet();
+        }
+        Protocol previous = protocolByHost.put(host, response.protocol());
+        if (previous != response.protocol() && log.isDebugEnabled()) {
+            log.debug("Duo host " + host + " speaks " + response.protocol());
+        }
+    }
+}
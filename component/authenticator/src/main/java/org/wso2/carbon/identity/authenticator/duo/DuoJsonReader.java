@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Minimal pull reader of JSON text from a byte stream. Values the caller is not interested in are skipped without
+ * being decoded, so only the strings the caller asks for are ever allocated. It is meant for well formed replies of
+ * the Duo API, and does not reject every malformed document.
+ */
+class DuoJsonReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private byte[] scratch = new byte[64];
+
+    DuoJsonReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * @return the next character that is not white space, without consuming it
+     * @throws IOException   if the stream cannot be read
+     * @throws JSONException if the stream ends
+     */
+    int peek() throws IOException, JSONException {
+        while (true) {
+            if (position == limit && !fill()) {
+                throw syntaxError("Unexpected end of input");
+            }
+            int c = buffer[position];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+            position++;
+        }
+    }
+
+    /**
+     * Consume the next character that is not white space, which must be the expected one.
+     *
+     * @param expected the expected character
+     * @throws IOException   if the stream cannot be read
+     * @throws JSONException if the stream ends or holds another character
+     */
+    void expect(char expected) throws IOException, JSONException {
+        int c = peek();
+        if (c != expected) {
+            throw syntaxError("Expected '" + expected + "' but found '" + (char) c + "'");
+        }
+        position++;
+    }
+
+    /**
+     * Move to the next member of an object or element of an array.
+     *
+     * @param end the character closing the object or array
+     * @return true if there is another member or element, false if the closing character was consumed
+     * @throws IOException   if the stream cannot be read
+     * @throws JSONException if the stream ends
+     */
+    boolean hasNext(char end) throws IOException, JSONException {
+        int c = peek();
+        if (c == end) {
+            position++;
+            return false;
+        }
+        if (c == ',') {
+            position++;
+        }
+        return true;
+    }
+
+    /**
+     * @return the next value, which must be a string
+     * @throws IOException   if the stream cannot be read
+     * @throws JSONException if the stream ends or the value is not a string
+     */
+    String nextString() throws IOException, JSONException {
+        expect('"');
+        int length = 0;
+        boolean escaped = false;
+        while (true) {
+            if (position == limit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            byte b = buffer[position++];
+            if (b == '"') {
+                break;
+            }
+            if (b == '\\') {
+                escaped = true;
+                if (position == limit && !fill()) {
+                    throw syntaxError("Unterminated string");
+                }
+                // Keep the escape as it is, so that an escaped quote does not end the string.
+                length = append(length, b);
+                b = buffer[position++];
+            }
+            length = append(length, b);
+        }
+        String value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        return escaped ? unescape(value) : value;
+    }
+
+    /**
+     * @return the next value, which must be a number, true, false or null, as written
+     * @throws IOException   if the stream cannot be read
+     * @throws JSONException if the stream ends or the value is a string, object or array
+     */
+    String nextLiteral() throws IOException, JSONException {
+        int c = peek();
+        if (c == '"' || c == '{' || c == '[') {
+            throw syntaxError("Expected a literal but found '" + (char) c + "'");
+        }
+        int length = 0;
+        while (position < limit || fill()) {
+            byte b = buffer[position];
+            if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                break;
+            }
+            length = append(length, b);
+            position++;
+        }
+        return new String(scratch, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Skip the next value, including everything nested in it.
+     *
+     * @throws IOException   if the stream cannot be read
+     * @throws JSONException if the stream ends
+     */
+    void skipValue() throws IOException, JSONException {
+        int depth = 0;
+        do {
+            int c = peek();
+            if (c == '"') {
+                position++;
+                skipString();
+            } else if (c == '{' || c == '[') {
+                position++;
+                depth++;
+            } else if (c == '}' || c == ']') {
+                position++;
+                depth--;
+            } else if (c == ',' || c == ':') {
+                position++;
+            } else {
+                skipLiteral();
+            }
+        } while (depth > 0);
+    }
+
+    private void skipString() throws IOException, JSONException {
+        while (true) {
+            if (position == limit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            byte b = buffer[position++];
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                if (position == limit && !fill()) {
+                    throw syntaxError("Unterminated string");
+                }
+                position++;
+            }
+        }
+    }
+
+    private void skipLiteral() throws IOException {
+        while (position < limit || fill()) {
+            byte b = buffer[position];
+            if (b == ',' || b == '}' || b == ']' || b == ':' || b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private int append(int length, byte b) {
+        if (length == scratch.length) {
+            scratch = Arrays.copyOf(scratch, length * 2);
+        }
+        scratch[length] = b;
+        return length + 1;
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private static String unescape(String value) throws JSONException {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            char escape = value.charAt(++i);
+            switch (escape) {
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 >= value.length()) {
+                        throw syntaxError("Invalid escape in \"" + value + "\"");
+                    }
+                    try {
+                        builder.append((char) Integer.parseInt(value.substring(i + 1, i + 5), 16));
+                    } catch (NumberFormatException e) {
+                        throw syntaxError("Invalid escape in \"" + value + "\"");
+                    }
+                    i += 4;
+                    break;
+                default:
+                    builder.append(escape);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static JSONException syntaxError(String message) {
+        return new JSONException("Malformed JSON: " + message);
+    }
+}
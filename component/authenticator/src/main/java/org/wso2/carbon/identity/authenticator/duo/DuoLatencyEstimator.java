@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+/**
+ * Streaming estimate of the latency quantiles of one Duo endpoint. Latencies are counted in logarithmic buckets,
+ * eight per power of two, which keeps the estimate within about 12% of the true value in constant space. All
+ * counts are halved at regular intervals, so the estimate follows the recent behaviour of the endpoint.
+ */
+public class DuoLatencyEstimator {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 17;
+    private static final long MAX_LATENCY = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private final int decayInterval;
+    private long total;
+    private long samples;
+    private int sinceDecay;
+
+    /**
+     * @param decayInterval the number of samples after which all counts are halved
+     */
+    public DuoLatencyEstimator(int decayInterval) {
+        this.decayInterval = Math.max(decayInterval, 1);
+    }
+
+    /**
+     * @param latencyMillis an observed latency in milliseconds
+     */
+    public synchronized void record(long latencyMillis) {
+        counts[bucketOf(Math.min(Math.max(latencyMillis, 0), MAX_LATENCY))]++;
+        total++;
+        samples++;
+        if (++sinceDecay >= decayInterval) {
+            sinceDecay = 0;
+            total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] >>= 1;
+                total += counts[i];
+            }
+        }
+    }
+
+    /**
+     * @param quantile the quantile, such as 0.99
+     * @return the upper bound of the bucket holding the quantile in milliseconds, or -1 if nothing was recorded
+     */
+    public synchronized long getQuantile(double quantile) {
+        if (total == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return MAX_LATENCY;
+    }
+
+    /**
+     * @return the number of latencies recorded since the estimator was created
+     */
+    public synchronized long getSampleCount() {
+        return samples;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
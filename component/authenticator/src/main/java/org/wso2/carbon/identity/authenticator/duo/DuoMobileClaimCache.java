@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Expiring cache of the users' mobile claim values read during mobile verification. Claim values are dropped by
+ * the user operation event listener as soon as they change in the user store, so the time to live only bounds
+ * changes made behind the server's back.
+ */
+public class DuoMobileClaimCache {
+
+    private final long ttlMillis;
+    private final Map<String, Entry<String>> mobileClaims;
+
+    /**
+     * @param ttlMillis  time to live of the cached claim values
+     * @param maxEntries maximum number of cached claim values, least recently used are evicted first
+     */
+    public DuoMobileClaimCache(long ttlMillis, final int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.mobileClaims = Collections.synchronizedMap(new LinkedHashMap<String, Entry<String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<String>> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * @param tenantId            the tenant id
+     * @param tenantAwareUsername the username without the tenant domain
+     * @return the cached mobile claim value, or null if there is none
+     */
+    public String getMobileClaim(int tenantId, String tenantAwareUsername) {
+        return getValue(mobileClaims.get(getKey(tenantId, tenantAwareUsername)));
+    }
+
+    public void putMobileClaim(int tenantId, String tenantAwareUsername, String mobile) {
+        mobileClaims.put(getKey(tenantId, tenantAwareUsername),
+                new Entry<>(mobile, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * Drop the cached mobile claim value of a user.
+     *
+     * @param tenantId            the tenant id
+     * @param tenantAwareUsername the username without the tenant domain
+     * @return whether a value was cached for the user
+     */
+    public boolean invalidate(int tenantId, String tenantAwareUsername) {
+        return mobileClaims.remove(getKey(tenantId, tenantAwareUsername)) != null;
+    }
+
+    public void invalidateAll() {
+        mobileClaims.clear();
+    }
+
+    private static <T> T getValue(Entry<T> entry) {
+        if (entry == null || System.currentTimeMillis() >= entry.expiresAt) {
+            return null;
+        }
+        return entry.value;
+    }
+
+    private static String getKey(int tenantId, String tenantAwareUsername) {
+        return tenantId + "|" + tenantAwareUsername;
+    }
+
+    private static class Entry<T> {
+        private final T value;
+        private final long expiresAt;
+
+        private Entry(T value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
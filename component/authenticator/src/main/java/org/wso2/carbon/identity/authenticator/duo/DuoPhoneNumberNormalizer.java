@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+/**
+ * Turns phone numbers written in different formats into their E.164 digits held in a long, so that
+ * "+94 77 123-4567", "0094771234567" and, with a default country code of 94, "077 1234567" compare equal.
+ */
+public class DuoPhoneNumberNormalizer {
+
+    public static final long INVALID = -1;
+
+    private static final int MAX_DIGITS = 15;
+
+    private final String defaultCountryCode;
+    private final long countryCodeValue;
+    private final int countryCodeDigits;
+
+    /**
+     * @param defaultCountryCode the country calling code assumed for national numbers, e.g. "94", or null
+     */
+    public DuoPhoneNumberNormalizer(String defaultCountryCode) {
+        String countryCode = defaultCountryCode == null ? "" : defaultCountryCode.trim();
+        if (countryCode.startsWith("+")) {
+            countryCode = countryCode.substring(1);
+        }
+        if (countryCode.isEmpty() || countryCode.length() > 3 || !isDigits(countryCode)) {
+            this.defaultCountryCode = null;
+            this.countryCodeValue = 0;
+            this.countryCodeDigits = 0;
+        } else {
+            this.defaultCountryCode = countryCode;
+            this.countryCodeValue = Long.parseLong(countryCode);
+            this.countryCodeDigits = countryCode.length();
+        }
+    }
+
+    /**
+     * Normalize a phone number. Spaces, dashes, dots, slashes and parentheses are ignored. A leading "+" or "00"
+     * marks an international number. A leading "0" is a trunk prefix that is replaced by the default country
+     * code, and other numbers get the default country code. A national number cannot be normalized without a
+     * default country code.
+     *
+     * @param number the phone number as written
+     * @return the E.164 digits, or {@link #INVALID} if the number cannot be normalized
+     */
+    public long normalize(String number) {
+        if (number == null) {
+            return INVALID;
+        }
+        boolean international = false;
+        boolean started = false;
+        int leadingZeros = 0;
+        int digits = 0;
+        long value = 0;
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (!started && c == '0' && digits == 0) {
+                    leadingZeros++;
+                    continue;
+                }
+                started = true;
+                if (++digits > MAX_DIGITS) {
+                    return INVALID;
+                }
+                value = value * 10 + (c - '0');
+            } else if (c == '+' && !started && leadingZeros == 0 && !international) {
+                international = true;
+            } else if (c != ' ' && c != '-' && c != '.' && c != '/' && c != '(' && c != ')' && c != '\t') {
+                return INVALID;
+            }
+        }
+        if (digits == 0 || leadingZeros > 2 || (international && leadingZeros > 0)) {
+            return INVALID;
+        }
+        if (international || leadingZeros == 2) {
+            return value;
+        }
+        if (defaultCountryCode == null) {
+            return leadingZeros == 0 ? value : INVALID;
+        }
+        if (digits + countryCodeDigits > MAX_DIGITS) {
+            return INVALID;
+        }
+        return countryCodeValue * pow10(digits) + value;
+    }
+
+    public String getDefaultCountryCode() {
+        return defaultCountryCode;
+    }
+
+    private static long pow10(int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= 10;
+        }
+        return result;
+    }
+
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
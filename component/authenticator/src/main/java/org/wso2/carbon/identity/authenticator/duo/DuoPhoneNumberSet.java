@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.Arrays;
+
+/**
+ * Immutable open addressing hash set of the normalized phone numbers of a Duo user. Built once per user record, so
+ * checking a mobile claim against the user's phones is a single probe instead of a scan over the JSON array.
+ */
+public class DuoPhoneNumberSet {
+
+    private static final long EMPTY = 0;
+
+    private final DuoPhoneNumberNormalizer normalizer;
+    private final long[] slots;
+    private final int mask;
+    private final int size;
+
+    private DuoPhoneNumberSet(DuoPhoneNumberNormalizer normalizer, long[] numbers, int count) {
+        this.normalizer = normalizer;
+        int capacity = 4;
+        while (capacity < count * 2) {
+            capacity <<= 1;
+        }
+        this.slots = new long[capacity];
+        this.mask = capacity - 1;
+        int added = 0;
+        for (int i = 0; i < count; i++) {
+            if (insert(numbers[i])) {
+                added++;
+            }
+        }
+        this.size = added;
+    }
+
+    /**
+     * Build the set from the "phones" array of a Duo user. Numbers that cannot be normalized are left out.
+     *
+     * @param phoneArray the Duo phones array
+     * @param normalizer the normalizer used for the numbers
+     * @return the set of normalized phone numbers
+     * @throws JSONException if the phones array cannot be read
+     */
+    public static DuoPhoneNumberSet of(JSONArray phoneArray, DuoPhoneNumberNormalizer normalizer)
+            throws JSONException {
+        return of(DuoUserRecord.toPhoneNumbers(phoneArray), normalizer);
+    }
+
+    /**
+     * Build the set from the phone numbers of a Duo user. Numbers that cannot be normalized are left out.
+     *
+     * @param phones     the phone numbers as Duo holds them
+     * @param normalizer the normalizer used for the numbers
+     * @return the set of normalized phone numbers
+     */
+    public static DuoPhoneNumberSet of(String[] phones, DuoPhoneNumberNormalizer normalizer) {
+        long[] numbers = new long[phones.length];
+        int count = 0;
+        for (String phone : phones) {
+            long number = normalizer.normalize(phone);
+            if (number > 0) {
+                numbers[count++] = number;
+            }
+        }
+        return new DuoPhoneNumberSet(normalizer, Arrays.copyOf(numbers, count), count);
+    }
+
+    /**
+     * @param number a normalized phone number
+     * @return true if the number is in the set
+     */
+    public boolean contains(long number) {
+        if (number <= 0) {
+            return false;
+        }
+        for (int i = index(number); ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == number) {
+                return true;
+            } else if (slot == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public DuoPhoneNumberNormalizer getNormalizer() {
+        return normalizer;
+    }
+
+    private boolean insert(long number) {
+        for (int i = index(number); ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == number) {
+                return false;
+            } else if (slot == EMPTY) {
+                slots[i] = number;
+                return true;
+            }
+        }
+    }
+
+    private int index(long number) {
+        long hash = number * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Token bucket limiting the Duo API calls made with each integration key, so that bursts of logins stay within the
+ * Duo API quota instead of being answered with 429. A call that finds the bucket empty waits for its token, up to a
+ * bound, without holding a thread. When Duo answers 429 anyway, calls with that key pause for the Retry-After time,
+ * or a default cool-down when Duo does not say, and then resume at the configured rate without a burst.
+ */
+public class DuoRateLimiter {
+
+    private static Log log = LogFactory.getLog(DuoRateLimiter.class);
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final long maxWaitNanos;
+    private final long coolDownNanos;
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param permitsPerMinute the number of calls allowed per minute and integration key
+     * @param burst            the number of calls that may be made at once after a quiet period
+     * @param maxWaitMillis    the longest a call waits for its token before it is rejected, in milliseconds
+     * @param coolDownMillis   the pause after a 429 reply without Retry-After, in milliseconds
+     */
+    public DuoRateLimiter(int permitsPerMinute, int burst, long maxWaitMillis, long coolDownMillis) {
+        this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(permitsPerMinute, 1);
+        this.toleranceNanos = intervalNanos * (Math.max(burst, 1) - 1);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(maxWaitMillis, 0));
+        this.coolDownNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(coolDownMillis, 0));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "duo-rate-limiter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Start a call once the bucket of its integration key has a token for it.
+     *
+     * @param ikey the integration key the call is signed with
+     * @param call starts the call
+     * @return a future completed with the result of the call, or failed with a {@link DuoUnavailableException} if
+     * the call would have to wait too long. Cancelling it drops a waiting call or cancels a running one
+     */
+    public <T> CompletableFuture<T> execute(String ikey, final Supplier<CompletableFuture<T>> call) {
+        final Bucket bucket = getBucket(ikey);
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        long waitNanos = bucket.reserve(System.nanoTime());
+        if (waitNanos < 0) {
+            result.completeExceptionally(new DuoUnavailableException("Duo API calls with integration key " + ikey
+                    + " are over the rate limit"));
+            return result;
+        }
+        if (waitNanos == 0) {
+            start(call, result);
+            return result;
+        }
+        final ScheduledFuture<?> delayed;
+        try {
+            delayed = scheduler.schedule(() -> start(call, result), waitNanos, TimeUnit.NANOSECONDS);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled() && delayed.cancel(false)) {
+                bucket.refund();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Pause the calls with an integration key after Duo answered 429.
+     *
+     * @param ikey       the integration key of the throttled call
+     * @param retryAfter the Retry-After header of the reply, or null
+     */
+    public void onThrottled(String ikey, String retryAfter) {
+        long pauseNanos = TimeUnit.MILLISECONDS.toNanos(DuoRetryPolicy.parseRetryAfter(retryAfter));
+        if (pauseNanos <= 0) {
+            pauseNanos = coolDownNanos;
+        }
+        getBucket(ikey).throttle(System.nanoTime() + pauseNanos);
+        if (log.isDebugEnabled()) {
+            log.debug("Duo throttled integration key " + ikey + ", pausing its calls for "
+                    + TimeUnit.NANOSECONDS.toMillis(pauseNanos) + "ms");
+        }
+    }
+
+    /**
+     * @return the buckets created so far, keyed by integration key
+     */
+    public Map<String, Bucket> getBuckets() {
+        return Collections.unmodifiableMap(buckets);
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private Bucket getBucket(String ikey) {
+        String key = String.valueOf(ikey);
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+        }
+        return bucket;
+    }
+
+    private static <T> void start(Supplier<CompletableFuture<T>> call, final CompletableFuture<T> result) {
+        if (result.isDone()) {
+            return;
+        }
+        final CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        future.whenComplete((value, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+    }
+
+    /**
+     * The token bucket of one integration key, kept as the theoretical arrival time of the next call: a call may
+     * start once that time is no more than the burst tolerance ahead of it, and every call moves it one interval on.
+     */
+    public class Bucket {
+
+        private long nextNanos = System.nanoTime();
+        private long pausedUntilNanos = System.nanoTime();
+        private final AtomicLong permitsUsed = new AtomicLong();
+        private final AtomicLong delayed = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanosSeen = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong throttled = new AtomicLong();
+
+        /**
+         * @return the time the call has to wait in nanoseconds, or -1 if it would wait longer than allowed
+         */
+        private long reserve(long now) {
+            long startAt;
+            synchronized (this) {
+                startAt = Math.max(now, Math.max(nextNanos - toleranceNanos, pausedUntilNanos));
+                if (startAt - now > maxWaitNanos) {
+                    rejected.incrementAndGet();
+                    return -1;
+                }
+                nextNanos = Math.max(nextNanos, startAt) + intervalNanos;
+            }
+            long wait = startAt - now;
+            permitsUsed.incrementAndGet();
+            if (wait > 0) {
+                delayed.incrementAndGet();
+                waitNanos.addAndGet(wait);
+                maxWaitNanosSeen.accumulateAndGet(wait, Math::max);
+            }
+            return wait;
+        }
+
+        private synchronized void refund() {
+            nextNanos -= intervalNanos;
+            permitsUsed.decrementAndGet();
+        }
+
+        private void throttle(long until) {
+            synchronized (this) {
+                pausedUntilNanos = Math.max(pausedUntilNanos, until);
+                // Resume at the configured rate, without the burst that built up during the pause.
+                nextNanos = Math.max(nextNanos, pausedUntilNanos + toleranceNanos);
+            }
+            throttled.incrementAndGet();
+        }
+
+        /**
+         * @return the number of calls that got a token
+         */
+        public long getPermitsUsedCount() {
+            return permitsUsed.get();
+        }
+
+        /**
+         * @return the number of calls that had to wait for their token
+         */
+        public long getDelayedCount() {
+            return delayed.get();
+        }
+
+        /**
+         * @return the total time calls waited for their tokens in milliseconds
+         */
+        public long getWaitTimeMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+        }
+
+        /**
+         * @return the longest time a call waited for its token in milliseconds
+         */
+        public long getMaxWaitTimeMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxWaitNanosSeen.get());
+        }
+
+        /**
+         * @return the number of calls rejected because they would have waited too long
+         */
+        public long getRejectedCount() {
+            return rejected.get();
+        }
+
+        /**
+         * @return the number of 429 replies from Duo
+         */
+        public long getThrottledCount() {
+            return throttled.get();
+        }
+
+        @Override
+        public String toString() {
+            return "permits used: " + getPermitsUsedCount() + ", delayed: " + getDelayedCount() + ", wait time: "
+                    + getWaitTimeMillis() + "ms, max wait time: " + getMaxWaitTimeMillis() + "ms, rejected: "
+                    + getRejectedCount() + ", throttled: " + getThrottledCount();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides which threads run outbound Duo API calls. In "async" mode calls are handed to the OkHttp dispatcher.
+ * In "virtual" mode each call runs blocking on its own virtual thread, falling back to a fixed pool of platform
+ * threads on JDKs without virtual threads. "pooled" always uses the fixed pool. In the thread modes a semaphore
+ * bounds how many calls are in flight at once. The caller takes the permit before the call is submitted without
+ * waiting, so calls beyond the limit fail right away instead of piling up in the pool's queue or holding the
+ * thread that starts them, which may be a bulkhead or rate limiter thread.
+ */
+public class DuoRequestExecutor {
+
+    public static final String MODE_ASYNC = "async";
+    public static final String MODE_VIRTUAL = "virtual";
+    public static final String MODE_POOLED = "pooled";
+
+    private static Log log = LogFactory.getLog(DuoRequestExecutor.class);
+
+    private final String mode;
+    private final ExecutorService executorService;
+    private final int maxConcurrentRequests;
+    private final Semaphore permits;
+
+    public DuoRequestExecutor(String mode, int maxConcurrentRequests, int poolSize) {
+        if (MODE_VIRTUAL.equalsIgnoreCase(mode)) {
+            ExecutorService virtualExecutor = newVirtualThreadExecutor();
+            if (virtualExecutor != null) {
+                this.mode = MODE_VIRTUAL;
+                this.executorService = virtualExecutor;
+            } else {
+                log.info("Virtual threads are not available on this JDK. Duo API calls will use a fixed pool of "
+                        + poolSize + " threads");
+                this.mode = MODE_POOLED;
+                this.executorService = newFixedThreadPool(poolSize, maxConcurrentRequests);
+            }
+        } else if (MODE_POOLED.equalsIgnoreCase(mode)) {
+            this.mode = MODE_POOLED;
+            this.executorService = newFixedThreadPool(poolSize, maxConcurrentRequests);
+        } else {
+            this.mode = MODE_ASYNC;
+            this.executorService = null;
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.permits = new Semaphore(maxConcurrentRequests);
+        if (log.isDebugEnabled()) {
+            log.debug("Duo API calls run in " + this.mode + " mode");
+        }
+    }
+
+    /**
+     * Execute a signed Duo request according to the configured mode. Cancelling the returned future interrupts
+     * the thread running the call and cancels its HTTP call.
+     *
+     * @param request the signed request
+     * @return a future completed with the "response" element of the Duo reply, or failed with a
+     * {@link DuoUnavailableException} if the limit of calls in flight is reached
+     */
+    public CompletableFuture<Object> execute(final DuoHttp request) {
+        if (executorService == null) {
+            return request.executeRequestAsync();
+        }
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        if (!permits.tryAcquire()) {
+            result.completeExceptionally(new DuoUnavailableException("All " + maxConcurrentRequests
+                    + " Duo API call permits are in use"));
+            return result;
+        }
+        final AtomicBoolean started = new AtomicBoolean();
+        final Future<?> worker;
+        try {
+            worker = executorService.submit(() -> {
+                if (!started.compareAndSet(false, true)) {
+                    // Cancelled before it started, the permit is already given back.
+                    return;
+                }
+                Object response = null;
+                Exception failure = null;
+                try {
+                    response = request.executeRequest();
+                } catch (Exception e) {
+                    failure = e;
+                } finally {
+                    // Give the permit back first, completing the result may start the next call on this thread.
+                    permits.release();
+                }
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else {
+                    result.complete(response);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            result.completeExceptionally(new DuoUnavailableException("Duo API call rejected: " + e.getMessage()));
+            return result;
+        }
+        result.whenComplete((value, error) -> {
+            if (!result.isCancelled()) {
+                return;
+            }
+            if (started.compareAndSet(false, true)) {
+                permits.release();
+            } else {
+                worker.cancel(true);
+                request.cancel();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return the effective execution mode
+     */
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the number of calls that may still start before callers have to wait
+     */
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * @return the approximate number of calls waiting for a permit
+     */
+    public int getQueueLength() {
+        return permits.getQueueLength();
+    }
+
+    public void shutdown() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Create a virtual-thread-per-task executor through reflection, so the connector still runs on JDKs that
+     * predate virtual threads.
+     *
+     * @return the executor, or null when virtual threads are not supported
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newFixedThreadPool(int poolSize, int queueSize) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(queueSize, 1)), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "duo-request-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import java.io.InputStream;
+
+/**
+ * Reads the body of a Duo API reply straight from the network stream into the value the request completes with,
+ * for callers that need only part of the reply.
+ */
+public interface DuoResponseParser {
+
+    /**
+     * @param body the UTF-8 encoded reply body, closed by the caller
+     * @return the value the request completes with
+     * @throws Exception if the reply cannot be read or Duo reported an error
+     */
+    Object parse(InputStream body) throws Exception;
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retry and hedging policy for idempotent Duo API requests. Retries wait for an exponential backoff with full
+ * jitter, or longer if Duo asks for it with Retry-After. Retries and hedged requests each draw from a budget that
+ * is refilled by a fraction of the requests made, so that they cannot multiply the load on Duo during an outage.
+ */
+public class DuoRetryPolicy {
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_INTERNAL_ERROR = 500;
+    private static final int HTTP_NOT_IMPLEMENTED = 501;
+    private static final int BUDGET_CAPACITY = 10;
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final boolean hedgingEnabled;
+    private final Budget retryBudget;
+    private final Budget hedgeBudget;
+
+    /**
+     * @param maxAttempts        the number of attempts of a request, including the first one
+     * @param baseDelayMillis    the backoff before the first retry in milliseconds, doubled for every retry
+     * @param maxDelayMillis     the longest backoff in milliseconds, and the longest Retry-After that is honoured
+     * @param retryBudgetPercent the retries allowed, in percent of the requests made
+     * @param hedgingEnabled     whether a second request is sent when the first one is slow
+     * @param hedgeBudgetPercent the hedged requests allowed, in percent of the requests made
+     */
+    public DuoRetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, int retryBudgetPercent,
+                          boolean hedgingEnabled, int hedgeBudgetPercent) {
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        this.baseDelayMillis = Math.max(baseDelayMillis, 1);
+        this.maxDelayMillis = Math.max(maxDelayMillis, this.baseDelayMillis);
+        this.hedgingEnabled = hedgingEnabled;
+        this.retryBudget = new Budget(retryBudgetPercent, BUDGET_CAPACITY);
+        this.hedgeBudget = new Budget(hedgeBudgetPercent, BUDGET_CAPACITY);
+    }
+
+    /**
+     * Count a new request towards the budgets.
+     */
+    public void onRequest() {
+        retryBudget.deposit();
+        hedgeBudget.deposit();
+    }
+
+    /**
+     * @param statusCode the HTTP status code of a response
+     * @return whether the response is a transient failure worth retrying
+     */
+    public boolean isRetryable(int statusCode) {
+        return statusCode == HTTP_TOO_MANY_REQUESTS
+                || (statusCode >= HTTP_INTERNAL_ERROR && statusCode != HTTP_NOT_IMPLEMENTED);
+    }
+
+    /**
+     * Timeouts are not retried, a slow Duo is left to hedging and the circuit breaker.
+     *
+     * @param e the failure of an attempt
+     * @return whether the failure is worth retrying, such as a reset connection
+     */
+    public boolean isRetryable(IOException e) {
+        return !(e instanceof InterruptedIOException);
+    }
+
+    /**
+     * Decide whether a failed attempt is retried, and when. A retry is taken from the retry budget.
+     *
+     * @param attempt    the number of the attempt that failed, starting at 1
+     * @param retryAfter the Retry-After header of the response, or null
+     * @return the delay before the next attempt in milliseconds, or -1 if the request must not be retried
+     */
+    public long nextDelayMillis(int attempt, String retryAfter) {
+        if (attempt >= maxAttempts) {
+            return -1;
+        }
+        long backoff = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 30));
+        long delay = ThreadLocalRandom.current().nextLong(backoff + 1);
+        long requested = parseRetryAfter(retryAfter);
+        if (requested > maxDelayMillis) {
+            return -1;
+        }
+        if (!retryBudget.withdraw()) {
+            return -1;
+        }
+        return Math.max(delay, requested);
+    }
+
+    /**
+     * @return whether a hedged request may be sent, taken from the hedge budget
+     */
+    public boolean tryHedge() {
+        return hedgingEnabled && hedgeBudget.withdraw();
+    }
+
+    public boolean isHedgingEnabled() {
+        return hedgingEnabled;
+    }
+
+    public Budget getRetryBudget() {
+        return retryBudget;
+    }
+
+    public Budget getHedgeBudget() {
+        return hedgeBudget;
+    }
+
+    /**
+     * @param retryAfter a Retry-After header, in seconds or as an HTTP date
+     * @return the requested delay in milliseconds, or 0 if there is none
+     */
+    static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return 0;
+        }
+        String value = retryAfter.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, try an HTTP date.
+        }
+        try {
+            Instant until = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return Math.max(0, until.toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * A budget of extra requests. Every request adds a fraction of a token up to a capacity, and every extra
+     * request takes a whole token.
+     */
+    public static class Budget {
+
+        private static final long TOKEN = 100;
+
+        private final long depositPerRequest;
+        private final long capacity;
+        private final AtomicLong balance;
+        private final AtomicLong used = new AtomicLong();
+        private final AtomicLong denied = new AtomicLong();
+
+        private Budget(int percent, int capacity) {
+            this.depositPerRequest = Math.max(percent, 0);
+            this.capacity = capacity * TOKEN;
+            this.balance = new AtomicLong(this.capacity);
+        }
+
+        private void deposit() {
+            long current;
+            do {
+                current = balance.get();
+                if (current >= capacity) {
+                    return;
+                }
+            } while (!balance.compareAndSet(current, Math.min(capacity, current + depositPerRequest)));
+        }
+
+        private boolean withdraw() {
+            long current;
+            do {
+                current = balance.get();
+                if (current < TOKEN) {
+                    denied.incrementAndGet();
+                    return false;
+                }
+            } while (!balance.compareAndSet(current, current - TOKEN));
+            used.incrementAndGet();
+            return true;
+        }
+
+        /**
+         * @return the number of extra requests the budget allowed
+         */
+        public long getUsedCount() {
+            return used.get();
+        }
+
+        /**
+         * @return the number of extra requests refused because the budget was spent
+         */
+        public long getDeniedCount() {
+            return denied.get();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import java.io.IOException;
+
+/**
+ * A Duo API request signature version. Implementations are registered with {@link DuoSignatureAlgorithms} and
+ * selected by the signature version passed to {@link DuoHttp#signRequest(String, String, int)}.
+ */
+public interface DuoSignatureAlgorithm {
+
+    /**
+     * @return the HMAC algorithm used to sign the canonical request, such as HmacSHA1
+     */
+    String getMacAlgorithm();
+
+    /**
+     * @return whether the request date is part of the signature and must be sent in the Date header
+     */
+    boolean isDateSigned();
+
+    /**
+     * @return whether POST and PUT parameters are sent as a JSON body instead of a form
+     */
+    boolean isJsonBody();
+
+    /**
+     * Build the canonical string to sign for a request.
+     *
+     * @param request the request to sign
+     * @param date    the formatted request date
+     * @return the canonical request
+     * @throws IOException if the request body cannot be read
+     */
+    String canonicalize(DuoHttp request, String date) throws IOException;
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import com.squareup.okhttp.Headers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the Duo API signature versions. Versions 1 and 2 sign with HMAC-SHA1, version 5 signs with
+ * HMAC-SHA512 and covers the SHA-512 hashes of the body and of the x-duo-* headers. Unknown versions are signed
+ * as version 1, as they always were.
+ */
+public final class DuoSignatureAlgorithms {
+
+    public static final int V1 = 1;
+    public static final int V2 = 2;
+    public static final int V5 = 5;
+
+    private static final String SHA512 = "SHA-512";
+    private static final String X_DUO_HEADER_PREFIX = "x-duo-";
+
+    private static final ConcurrentMap<Integer, DuoSignatureAlgorithm> ALGORITHMS = new ConcurrentHashMap<>();
+
+    static {
+        ALGORITHMS.put(V1, new LegacyAlgorithm(false));
+        ALGORITHMS.put(V2, new LegacyAlgorithm(true));
+        ALGORITHMS.put(V5, new V5Algorithm());
+    }
+
+    private DuoSignatureAlgorithms() {
+    }
+
+    /**
+     * Register or replace the algorithm of a signature version.
+     *
+     * @param version   the signature version
+     * @param algorithm the algorithm
+     */
+    public static void register(int version, DuoSignatureAlgorithm algorithm) {
+        if (algorithm == null) {
+            throw new IllegalArgumentException("Signature algorithm must not be null");
+        }
+        ALGORITHMS.put(version, algorithm);
+    }
+
+    /**
+     * @param version the signature version
+     * @return the algorithm of the version, or the version 1 algorithm if the version is unknown
+     */
+    public static DuoSignatureAlgorithm get(int version) {
+        DuoSignatureAlgorithm algorithm = ALGORITHMS.get(version);
+        return algorithm != null ? algorithm : ALGORITHMS.get(V1);
+    }
+
+    /**
+     * Hash the request body while it is written, without holding it in memory.
+     */
+    static String bodyHash(DuoHttp request) throws IOException {
+        MessageDigest digest = getSha512();
+        DigestOutputStream out = new DigestOutputStream(NullOutputStream.INSTANCE, digest);
+        request.writeBody(out);
+        return DuoHmacSigner.toHex(digest.digest());
+    }
+
+    /**
+     * Hash the x-duo-* headers, with lowercase names in sorted order and names and values separated by NUL.
+     */
+    static String headersHash(Headers headers) {
+        Map<String, String> duoHeaders = new TreeMap<>();
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.name(i).toLowerCase(Locale.ROOT);
+            if (name.startsWith(X_DUO_HEADER_PREFIX)) {
+                duoHeaders.put(name, headers.value(i));
+            }
+        }
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> header : duoHeaders.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append('\0');
+            }
+            builder.append(header.getKey()).append('\0').append(header.getValue());
+        }
+        return DuoHmacSigner.toHex(getSha512().digest(builder.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest getSha512() {
+        try {
+            return DuoHmacSigner.getDigest(SHA512);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(SHA512 + " is not available", e);
+        }
+    }
+
+    private static class LegacyAlgorithm implements DuoSignatureAlgorithm {
+
+        private final boolean dateSigned;
+
+        private LegacyAlgorithm(boolean dateSigned) {
+            this.dateSigned = dateSigned;
+        }
+
+        @Override
+        public String getMacAlgorithm() {
+            return DuoHmacSigner.HMAC_SHA1;
+        }
+
+        @Override
+        public boolean isDateSigned() {
+            return dateSigned;
+        }
+
+        @Override
+        public boolean isJsonBody() {
+            return false;
+        }
+
+        @Override
+        public String canonicalize(DuoHttp request, String date) {
+            return DuoCanonicalizer.canonRequest(date, dateSigned ? V2 : V1, request.getMethod(), request.getHost(),
+                    request.getUri(), request.getQueryString());
+        }
+    }
+
+    private static class V5Algorithm implements DuoSignatureAlgorithm {
+
+        @Override
+        public String getMacAlgorithm() {
+            return DuoHmacSigner.HMAC_SHA512;
+        }
+
+        @Override
+        public boolean isDateSigned() {
+            return true;
+        }
+
+        @Override
+        public boolean isJsonBody() {
+            return true;
+        }
+
+        @Override
+        public String canonicalize(DuoHttp request, String date) throws IOException {
+            String args = request.hasBody() ? "" : request.getQueryString();
+            return date + "\n" + request.getMethod() + "\n" + request.getHost().toLowerCase(Locale.ROOT) + "\n"
+                    + request.getUri() + "\n" + args + "\n" + bodyHash(request) + "\n"
+                    + headersHash(request.getHeaders());
+        }
+    }
+
+    private static class NullOutputStream extends OutputStream {
+
+        private static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Limits the outbound Duo API calls of each tenant, so that a tenant with a slow or misconfigured Duo account
+ * cannot take all the capacity. Each tenant may run a number of calls at once and queue a bounded number more.
+ * Calls beyond that are shed with a {@link DuoUnavailableException}. Queued calls start as running calls of the
+ * same tenant complete, so no thread waits for a slot.
+ */
+public class DuoTenantBulkhead {
+
+    private final int maxConcurrentCalls;
+    private final int maxQueuedCalls;
+    private final ConcurrentMap<Integer, Compartment> compartments = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxConcurrentCalls the number of calls a tenant may run at once
+     * @param maxQueuedCalls     the number of calls a tenant may have waiting for a slot
+     */
+    public DuoTenantBulkhead(int maxConcurrentCalls, int maxQueuedCalls) {
+        this.maxConcurrentCalls = Math.max(maxConcurrentCalls, 1);
+        this.maxQueuedCalls = Math.max(maxQueuedCalls, 0);
+    }
+
+    /**
+     * Run a call in the compartment of a tenant, now if the tenant has a free slot or later if it may queue.
+     *
+     * @param tenantId the tenant id
+     * @param call     starts the call
+     * @return a future completed with the result of the call, or failed with a {@link DuoUnavailableException} if
+     * the call was shed. Cancelling it removes a queued call or cancels a running one
+     */
+    public <T> CompletableFuture<T> execute(int tenantId, Supplier<CompletableFuture<T>> call) {
+        Compartment compartment = compartments.get(tenantId);
+        if (compartment == null) {
+            compartment = compartments.computeIfAbsent(tenantId, id -> new Compartment());
+        }
+        return compartment.execute(tenantId, call);
+    }
+
+    /**
+     * @return the compartments created so far, keyed by tenant id
+     */
+    public Map<Integer, Compartment> getCompartments() {
+        return Collections.unmodifiableMap(compartments);
+    }
+
+    /**
+     * The calls of one tenant, with counters to find noisy tenants.
+     */
+    public class Compartment {
+
+        private final Queue<Runnable> queue = new ArrayDeque<>();
+        private int running;
+        private final AtomicLong executed = new AtomicLong();
+        private final AtomicLong queued = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+
+        private <T> CompletableFuture<T> execute(int tenantId, final Supplier<CompletableFuture<T>> call) {
+            final CompletableFuture<T> result = new CompletableFuture<>();
+            final Runnable start = () -> start(call, result);
+            synchronized (this) {
+                if (running < maxConcurrentCalls) {
+                    running++;
+                } else if (queue.size() < maxQueuedCalls) {
+                    queue.add(start);
+                    queued.incrementAndGet();
+                    result.whenComplete((value, error) -> {
+                        synchronized (this) {
+                            queue.remove(start);
+                        }
+                    });
+                    return result;
+                } else {
+                    rejected.incrementAndGet();
+                    result.completeExceptionally(new DuoUnavailableException("Tenant " + tenantId + " has "
+                            + maxConcurrentCalls + " Duo API calls running and " + maxQueuedCalls + " queued"));
+                    return result;
+                }
+            }
+            start.run();
+            return result;
+        }
+
+        private <T> void start(Supplier<CompletableFuture<T>> call, CompletableFuture<T> result) {
+            if (result.isDone()) {
+                release();
+                return;
+            }
+            executed.incrementAndGet();
+            CompletableFuture<T> future;
+            try {
+                future = call.get();
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                release();
+                return;
+            }
+            future.whenComplete((value, error) -> {
+                release();
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+            result.whenComplete((value, error) -> {
+                if (result.isCancelled()) {
+                    future.cancel(true);
+                }
+            });
+        }
+
+        private void release() {
+            Runnable next;
+            synchronized (this) {
+                next = queue.poll();
+                if (next == null) {
+                    running--;
+                    return;
+                }
+            }
+            // The slot passes to the next queued call.
+            next.run();
+        }
+
+        public synchronized int getRunningCount() {
+            return running;
+        }
+
+        public synchronized int getQueueLength() {
+            return queue.size();
+        }
+
+        /**
+         * @return the number of calls started
+         */
+        public long getExecutedCount() {
+            return executed.get();
+        }
+
+        /**
+         * @return the number of calls that had to wait for a slot
+         */
+        public long getQueuedCount() {
+            return queued.get();
+        }
+
+        /**
+         * @return the number of calls shed because the tenant's queue was full
+         */
+        public long getRejectedCount() {
+            return rejected.get();
+        }
+
+        @Override
+        public String toString() {
+            return "executed: " + getExecutedCount() + ", queued: " + getQueuedCount() + ", rejected: "
+                    + getRejectedCount();
+        }
+    }
+}
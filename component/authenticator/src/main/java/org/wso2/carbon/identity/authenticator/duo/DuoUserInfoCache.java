@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, expiring cache of the user information returned by the Duo Admin API, keyed by Duo host and username.
+ * Users that are not registered in Duo are cached with their own, usually shorter, time to live. An entry that is
+ * close to expiry is served while a fresh copy is loaded in the background.
+ */
+public class DuoUserInfoCache {
+
+    private static Log log = LogFactory.getLog(DuoUserInfoCache.class);
+
+    private final long positiveTtlMillis;
+    private final long negativeTtlMillis;
+    private final long refreshAheadMillis;
+    private final Map<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    /**
+     * @param positiveTtlMillis  time to live of users registered in Duo
+     * @param negativeTtlMillis  time to live of users not registered in Duo
+     * @param refreshAheadMillis how long before expiry an entry is reloaded in the background
+     * @param maxEntries         maximum number of cached users, least recently used are evicted first
+     */
+    public DuoUserInfoCache(long positiveTtlMillis, long negativeTtlMillis, long refreshAheadMillis,
+                            final int maxEntries) {
+        this.positiveTtlMillis = positiveTtlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.refreshAheadMillis = refreshAheadMillis;
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * Get the user information from the cache, loading it on a miss.
+     *
+     * @param host     the Duo API host
+     * @param username the Duo username
+     * @param loader   starts the Admin API call
+     * @return a future of the user information
+     */
+    public CompletableFuture<DuoUserRecord> get(String host, String username,
+                                                final Supplier<CompletableFuture<DuoUserRecord>> loader) {
+        final String key = getKey(host, username);
+        final Entry entry = entries.get(key);
+        long now = System.currentTimeMillis();
+        if (entry != null && now < entry.expiresAt) {
+            hits.incrementAndGet();
+            if (!entry.negative && now >= entry.expiresAt - refreshAheadMillis
+                    && entry.refreshing.compareAndSet(false, true)) {
+                refreshes.incrementAndGet();
+                load(key, loader).whenComplete((result, error) -> {
+                    if (error != null) {
+                        entry.refreshing.set(false);
+                        if (log.isDebugEnabled()) {
+                            log.debug("Background refresh of the Duo user information failed", error);
+                        }
+                    }
+                });
+            }
+            return CompletableFuture.completedFuture(entry.userInfo);
+        }
+        misses.incrementAndGet();
+        return load(key, loader);
+    }
+
+    /**
+     * Remove a user from the cache.
+     *
+     * @param host     the Duo API host
+     * @param username the Duo username
+     */
+    public void invalidate(String host, String username) {
+        entries.remove(getKey(host, username));
+    }
+
+    /**
+     * Remove all users from the cache.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    private CompletableFuture<DuoUserRecord> load(final String key,
+                                                  Supplier<CompletableFuture<DuoUserRecord>> loader) {
+        return loader.get().thenApply(userInfo -> {
+            boolean negative = !userInfo.isRegistered();
+            long ttl = negative ? negativeTtlMillis : positiveTtlMillis;
+            if (ttl > 0) {
+                entries.put(key, new Entry(userInfo, System.currentTimeMillis() + ttl, negative));
+            }
+            return userInfo;
+        });
+    }
+
+    private static String getKey(String host, String username) {
+        return (host == null ? null : host.toLowerCase()) + "|" + username;
+    }
+
+    private static class Entry {
+        private final DuoUserRecord userInfo;
+        private final long expiresAt;
+        private final boolean negative;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(DuoUserRecord userInfo, long expiresAt, boolean negative) {
+            this.userInfo = userInfo;
+            this.expiresAt = expiresAt;
+            this.negative = negative;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent Duo user lookups for the same host, admin integration key and username share a single in-flight
+ * Admin API call and its parsed result.
+ */
+public class DuoUserLookupCoalescer {
+
+    private final ConcurrentMap<String, Call> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Join the in-flight lookup for the user, or start one with the loader if there is none.
+     *
+     * @param host     the Duo API host
+     * @param ikey     the admin integration key
+     * @param username the Duo username
+     * @param loader   starts the Admin API call
+     * @return a future of the user information. A caller may cancel it without affecting other callers, and the
+     * Admin API call is cancelled once every caller waiting on it has cancelled
+     */
+    public CompletableFuture<DuoUserRecord> lookup(String host, String ikey, String username,
+                                                   Supplier<CompletableFuture<DuoUserRecord>> loader) {
+        lookups.incrementAndGet();
+        final String key = host + "|" + ikey + "|" + username;
+        final Call[] started = new Call[1];
+        final Call call = inFlight.compute(key, (k, existing) -> {
+            if (existing != null) {
+                existing.waiters++;
+                return existing;
+            }
+            started[0] = new Call();
+            return started[0];
+        });
+        if (started[0] == null) {
+            coalesced.incrementAndGet();
+        } else {
+            try {
+                CompletableFuture<DuoUserRecord> loading = loader.get();
+                call.loading = loading;
+                loading.whenComplete((result, error) -> {
+                    inFlight.remove(key, call);
+                    if (error != null) {
+                        call.result.completeExceptionally(error);
+                    } else {
+                        call.result.complete(result);
+                    }
+                });
+                if (call.result.isCancelled()) {
+                    loading.cancel(true);
+                }
+            } catch (RuntimeException e) {
+                inFlight.remove(key, call);
+                call.result.completeExceptionally(e);
+            }
+        }
+        final CompletableFuture<DuoUserRecord> waiter = call.result.thenApply(result -> result);
+        waiter.whenComplete((result, error) -> {
+            if (waiter.isCancelled()) {
+                leave(key, call);
+            }
+        });
+        return waiter;
+    }
+
+    /**
+     * Remove a cancelled caller from the lookup, cancelling the Admin API call if it was the last one waiting.
+     */
+    private void leave(String key, Call call) {
+        if (inFlight.computeIfPresent(key, (k, existing) ->
+                existing != call || --existing.waiters > 0 ? existing : null) != null) {
+            return;
+        }
+        call.result.cancel(false);
+        CompletableFuture<DuoUserRecord> loading = call.loading;
+        if (loading != null) {
+            loading.cancel(true);
+        }
+    }
+
+    /**
+     * @return the total number of lookups requested
+     */
+    public long getLookupCount() {
+        return lookups.get();
+    }
+
+    /**
+     * @return the number of lookups that joined a call already in flight
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return the fraction of lookups that were served by a call already in flight
+     */
+    public double getCoalescingRatio() {
+        long total = lookups.get();
+        return total == 0 ? 0 : (double) coalesced.get() / total;
+    }
+
+    /**
+     * @return the number of distinct lookups currently in flight
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * An Admin API call shared by the callers waiting on it.
+     */
+    private static class Call {
+
+        private final CompletableFuture<DuoUserRecord> result = new CompletableFuture<>();
+        private volatile CompletableFuture<DuoUserRecord> loading;
+        // Only changed inside compute calls on the map, which lock the entry.
+        private int waiters = 1;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the Duo user information and mobile claim lookups started while the user is still in the Duo iframe, keyed
+ * by the authentication context identifier, until the Duo response comes back. Prefetches that are not picked up
+ * within the lifetime of a Duo transaction are discarded.
+ */
+public class DuoUserPrefetcher {
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final ExecutorService executorService;
+    private final Map<String, Prefetch> prefetches = new LinkedHashMap<>();
+    private final AtomicLong used = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    public DuoUserPrefetcher(long ttlMillis, int maxEntries, int poolSize) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "duo-prefetch-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Start the lookups for an authentication context.
+     *
+     * @param contextIdentifier the authentication context identifier
+     * @param duoUsername       the username sent to Duo
+     * @param userInfo          the pending Duo user information
+     * @param mobileClaimLoader reads the mobile claim from the user store, run on the prefetch pool
+     */
+    public void prefetch(String contextIdentifier, String duoUsername, CompletableFuture<DuoUserRecord> userInfo,
+                         final Callable<String> mobileClaimLoader) {
+        CompletableFuture<String> mobileClaim = CompletableFuture.supplyAsync(() -> {
+            try {
+                return mobileClaimLoader.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executorService);
+        Prefetch prefetch = new Prefetch(duoUsername, userInfo, mobileClaim,
+                System.currentTimeMillis() + ttlMillis);
+        synchronized (prefetches) {
+            purge();
+            Prefetch previous = prefetches.put(contextIdentifier, prefetch);
+            if (previous != null) {
+                previous.cancel();
+            }
+        }
+    }
+
+    /**
+     * Remove and return the prefetch of an authentication context.
+     *
+     * @param contextIdentifier the authentication context identifier
+     * @param duoUsername       the username verified by Duo
+     * @return the prefetch, or null if there is none for this context and user
+     */
+    public Prefetch take(String contextIdentifier, String duoUsername) {
+        Prefetch prefetch;
+        synchronized (prefetches) {
+            prefetch = prefetches.remove(contextIdentifier);
+        }
+        if (prefetch == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() >= prefetch.expiresAt || !prefetch.duoUsername.equals(duoUsername)) {
+            prefetch.cancel();
+            discarded.incrementAndGet();
+            return null;
+        }
+        used.incrementAndGet();
+        return prefetch;
+    }
+
+    public long getUsedCount() {
+        return used.get();
+    }
+
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    public void shutdown() {
+        synchronized (prefetches) {
+            for (Prefetch prefetch : prefetches.values()) {
+                prefetch.cancel();
+            }
+            prefetches.clear();
+        }
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Drop expired prefetches and the oldest ones above the size limit. Entries are kept in insertion order, so
+     * the expired ones are always at the head.
+     */
+    private void purge() {
+        long now = System.currentTimeMillis();
+        Iterator<Prefetch> iterator = prefetches.values().iterator();
+        while (iterator.hasNext()) {
+            Prefetch prefetch = iterator.next();
+            if (now < prefetch.expiresAt && prefetches.size() < maxEntries) {
+                break;
+            }
+            prefetch.cancel();
+            iterator.remove();
+            discarded.incrementAndGet();
+        }
+    }
+
+    /**
+     * The lookups started for one authentication context.
+     */
+    public static class Prefetch {
+        private final String duoUsername;
+        private final CompletableFuture<DuoUserRecord> userInfo;
+        private final CompletableFuture<String> mobileClaim;
+        private final long expiresAt;
+
+        private Prefetch(String duoUsername, CompletableFuture<DuoUserRecord> userInfo,
+                         CompletableFuture<String> mobileClaim, long expiresAt) {
+            this.duoUsername = duoUsername;
+            this.userInfo = userInfo;
+            this.mobileClaim = mobileClaim;
+            this.expiresAt = expiresAt;
+        }
+
+        public CompletableFuture<DuoUserRecord> getUserInfo() {
+            return userInfo;
+        }
+
+        public CompletableFuture<String> getMobileClaim() {
+            return mobileClaim;
+        }
+
+        private void cancel() {
+            userInfo.cancel(true);
+            mobileClaim.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The part of a Duo Admin API user that the authenticator uses: whether the user exists and the phone numbers of the
+ * user, together with their normalized form, which is built on first use and then shared by every request served
+ * from the same cached record.
+ */
+public class DuoUserRecord {
+
+    private final boolean registered;
+    private final String[] phones;
+    private volatile DuoPhoneNumberSet phoneNumbers;
+
+    /**
+     * @param registered true if Duo returned a user for the username
+     * @param phones     the phone numbers of the user, or null if Duo returned no "phones" array
+     */
+    public DuoUserRecord(boolean registered, String[] phones) {
+        this.registered = registered;
+        this.phones = phones;
+    }
+
+    /**
+     * @param userInfo the "response" array of a Duo users reply
+     */
+    public DuoUserRecord(JSONArray userInfo) {
+        JSONObject user = userInfo.optJSONObject(0);
+        JSONArray phoneArray = user == null ? null : user.optJSONArray(DuoAuthenticatorConstants.DUO_PHONES);
+        this.registered = userInfo.length() > 0;
+        this.phones = phoneArray == null ? null : toPhoneNumbers(phoneArray);
+    }
+
+    /**
+     * Get the user information in the shape of the Duo reply, holding the phone numbers only.
+     *
+     * @return a JSON array with the user, or an empty array if the user is not registered
+     */
+    public JSONArray getUserInfo() {
+        JSONArray userInfo = new JSONArray();
+        if (!registered) {
+            return userInfo;
+        }
+        JSONObject user = new JSONObject();
+        if (phones != null) {
+            JSONArray phoneArray = new JSONArray();
+            for (String number : phones) {
+                JSONObject phone = new JSONObject();
+                try {
+                    phone.put(DuoAuthenticatorConstants.DUO_NUMBER, number);
+                    phoneArray.put(phone);
+                } catch (JSONException e) {
+                    // Not thrown for a string key and value.
+                }
+            }
+            try {
+                user.put(DuoAuthenticatorConstants.DUO_PHONES, phoneArray);
+            } catch (JSONException e) {
+                // Not thrown for a string key and array value.
+            }
+        }
+        return userInfo.put(user);
+    }
+
+    /**
+     * @return true if Duo returned a user for the username
+     */
+    public boolean isRegistered() {
+        return registered;
+    }
+
+    /**
+     * @return the phone numbers of the user as Duo holds them
+     * @throws JSONException if the user information has no phones
+     */
+    public String[] getPhones() throws JSONException {
+        if (phones == null) {
+            throw new JSONException("JSONObject[\"" + DuoAuthenticatorConstants.DUO_PHONES + "\"] not found.");
+        }
+        return phones;
+    }
+
+    /**
+     * @param normalizer the normalizer to apply to the numbers
+     * @return the normalized phone numbers of the user
+     * @throws JSONException if the user information has no phones
+     */
+    public DuoPhoneNumberSet getPhoneNumbers(DuoPhoneNumberNormalizer normalizer) throws JSONException {
+        DuoPhoneNumberSet numbers = phoneNumbers;
+        if (numbers == null || numbers.getNormalizer() != normalizer) {
+            numbers = DuoPhoneNumberSet.of(getPhones(), normalizer);
+            phoneNumbers = numbers;
+        }
+        return numbers;
+    }
+
+    /**
+     * @param phoneArray a Duo "phones" array
+     * @return the "number" of every phone, empty for phones without one
+     */
+    public static String[] toPhoneNumbers(JSONArray phoneArray) {
+        String[] numbers = new String[phoneArray.length()];
+        for (int i = 0; i < numbers.length; i++) {
+            JSONObject phone = phoneArray.optJSONObject(i);
+            numbers[i] = phone == null ? "" : phone.optString(DuoAuthenticatorConstants.DUO_NUMBER, "");
+        }
+        return numbers;
+    }
+}
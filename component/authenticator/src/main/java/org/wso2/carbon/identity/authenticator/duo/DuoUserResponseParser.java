@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo;
+
+import org.json.JSONException;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams a reply of the Duo Admin API users endpoint into a {@link DuoUserRecord}. Only "stat", the error "code"
+ * and "message", and the "number" of every phone of the first user are read, everything else in the reply, such
+ * as groups, tokens and the other attributes of the user, is skipped as it arrives.
+ */
+public class DuoUserResponseParser implements DuoResponseParser {
+
+    private static final String STAT = "stat";
+    private static final String STAT_OK = "OK";
+    private static final String CODE = "code";
+    private static final String MESSAGE = "message";
+    private static final String RESPONSE = "response";
+
+    @Override
+    public DuoUserRecord parse(InputStream body) throws Exception {
+        DuoJsonReader reader = new DuoJsonReader(body);
+        String stat = null;
+        String code = null;
+        String message = null;
+        boolean hasResponse = false;
+        boolean registered = false;
+        String[] phoneNumbers = null;
+        reader.expect('{');
+        while (reader.hasNext('}')) {
+            String name = reader.nextString();
+            reader.expect(':');
+            if (STAT.equals(name) && reader.peek() == '"') {
+                stat = reader.nextString();
+            } else if (CODE.equals(name) && reader.peek() != '"') {
+                code = reader.nextLiteral();
+            } else if (MESSAGE.equals(name) && reader.peek() == '"') {
+                message = reader.nextString();
+            } else if (RESPONSE.equals(name) && reader.peek() == '[') {
+                hasResponse = true;
+                reader.expect('[');
+                while (reader.hasNext(']')) {
+                    if (!registered && reader.peek() == '{') {
+                        registered = true;
+                        phoneNumbers = readPhoneNumbers(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+            } else {
+                reader.skipValue();
+            }
+        }
+        if (!STAT_OK.equals(stat)) {
+            throw new Exception("Duo error code (" + code + "): " + message);
+        }
+        if (!hasResponse) {
+            throw new JSONException("Duo reply has no user list");
+        }
+        return new DuoUserRecord(registered, phoneNumbers);
+    }
+
+    /**
+     * Read the phone numbers of a user object.
+     *
+     * @return the numbers, or null if the user has no "phones" array
+     */
+    private static String[] readPhoneNumbers(DuoJsonReader reader) throws Exception {
+        List<String> numbers = null;
+        reader.expect('{');
+        while (reader.hasNext('}')) {
+            String name = reader.nextString();
+            reader.expect(':');
+            if (!DuoAuthenticatorConstants.DUO_PHONES.equals(name) || reader.peek() != '[') {
+                reader.skipValue();
+                continue;
+            }
+            numbers = new ArrayList<>();
+            reader.expect('[');
+            while (reader.hasNext(']')) {
+                if (reader.peek() == '{') {
+                    numbers.add(readNumber(reader));
+                } else {
+                    reader.skipValue();
+                }
+            }
+        }
+        return numbers == null ? null : numbers.toArray(new String[numbers.size()]);
+    }
+
+    private static String readNumber(DuoJsonReader reader) throws Exception {
+        String number = "";
+        reader.expect('{');
+        while (reader.hasNext('}')) {
+            String name = reader.nextString();
+            reader.expect(':');
+            if (DuoAuthenticatorConstants.DUO_NUMBER.equals(name) && reader.peek() == '"') {
+                number = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        return number;
+    }
+}
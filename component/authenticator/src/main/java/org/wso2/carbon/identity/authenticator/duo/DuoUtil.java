@@ -18,40 +18,37 @@
 
 package org.wso2.carbon.identity.authenticator.duo;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Map;
 
 public class DuoUtil {
     public static String hmacSign(String skey, String data)
             throws NoSuchAlgorithmException, InvalidKeyException {
-        SecretKeySpec key = new SecretKeySpec(skey.getBytes(), "HmacSHA1");
-        Mac mac = Mac.getInstance("HmacSHA1");
-        mac.init(key);
-        byte[] raw = mac.doFinal(data.getBytes());
-        return bytesToHex(raw);
+        return DuoHmacSigner.signHex(DuoHmacSigner.HMAC_SHA1, skey, data.getBytes());
+    }
+
+    /**
+     * Sign data with an HMAC algorithm, such as HmacSHA512, and return the lowercase hex encoding.
+     *
+     * @param skey      the secret key
+     * @param data      the data to sign
+     * @param algorithm the HMAC algorithm
+     * @return the hex encoded signature
+     */
+    public static String hmacSign(String skey, String data, String algorithm)
+            throws NoSuchAlgorithmException, InvalidKeyException {
+        return DuoHmacSigner.signHex(algorithm, skey, data.getBytes(StandardCharsets.UTF_8));
     }
 
     public static byte[] hmacSha1(byte[] key_bytes, byte[] text_bytes)
             throws NoSuchAlgorithmException, InvalidKeyException {
-        Mac hmacSha1;
-        try {
-            hmacSha1 = Mac.getInstance("HmacSHA1");
-        } catch (NoSuchAlgorithmException nsae) {
-            hmacSha1 = Mac.getInstance("HMAC-SHA-1");
-        }
-        SecretKeySpec macKey = new SecretKeySpec(key_bytes, "RAW");
-        hmacSha1.init(macKey);
-        return hmacSha1.doFinal(text_bytes);
+        return DuoHmacSigner.sign(DuoHmacSigner.HMAC_SHA1, key_bytes, text_bytes);
     }
 
     public static String bytesToHex(byte[] b) {
-        String result = "";
-        for (byte aB : b) {
-            result += Integer.toString((aB & 0xff) + 0x100, 16).substring(1);
-        }
-        return result;
+        return DuoHmacSigner.toHex(b);
     }
 
     static String join(Object[] s, String glue) {
@@ -64,4 +61,42 @@ public class DuoUtil {
             out.append(glue).append(s[x]);
         return out.toString();
     }
+
+    /**
+     * Read an integer parameter of the authenticator configuration.
+     *
+     * @param parameters   the authenticator parameters
+     * @param name         the parameter name
+     * @param defaultValue the value used when the parameter is missing or invalid
+     * @return the parameter value
+     */
+    public static int getIntParameter(Map<String, String> parameters, String name, int defaultValue) {
+        if (parameters == null || parameters.get(name) == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(parameters.get(name).trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Read a long parameter of the authenticator configuration.
+     *
+     * @param parameters   the authenticator parameters
+     * @param name         the parameter name
+     * @param defaultValue the value used when the parameter is missing or invalid
+     * @return the parameter value
+     */
+    public static long getLongParameter(Map<String, String> parameters, String name, long defaultValue) {
+        if (parameters == null || parameters.get(name) == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(parameters.get(name).trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
 }
\ No newline at end of file
@@ -18,7 +18,9 @@
 
 package org.wso2.carbon.identity.authenticator.duo;
 
+import javax.crypto.Mac;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 
@@ -34,6 +36,10 @@ public final class DuoWeb {
     private static final int SKEY_LEN = 40;
     private static final int AKEY_LEN = 40;
 
+    // Whether the platform charset encodes ASCII characters as single identical bytes.
+    private static final boolean ASCII_COMPATIBLE = isAsciiCompatible();
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[256]);
+
     public static final String ERROR_USER = "ERR|The username passed to sign_request() is invalid.";
     public static final String ERROR_IKEY = "ERR|The Duo integration key passed to sign_request() is invalid.";
     public static final String ERROR_SKEY = "ERR|The Duo secret key passed to sign_request() is invalid.";
@@ -64,8 +70,8 @@ public final class DuoWeb {
             return ERROR_AKEY;
         }
         try {
-            duo_sig = signVals(skey, username, ikey, DUO_PREFIX, DUO_EXPIRE, time);
-            app_sig = signVals(akey, username, ikey, APP_PREFIX, APP_EXPIRE, time);
+            duo_sig = signVals(skey, true, username, ikey, DUO_PREFIX, DUO_EXPIRE, time);
+            app_sig = signVals(akey, false, username, ikey, APP_PREFIX, APP_EXPIRE, time);
         } catch (Exception e) {
             return ERROR_UNKNOWN;
         }
@@ -81,45 +87,98 @@ public final class DuoWeb {
             throws DuoWebException, NoSuchAlgorithmException, InvalidKeyException, IOException {
         String auth_user = null;
         String app_user;
-        final String[] sigs = sig_response.split(":");
-        final String auth_sig = sigs[0];
-        final String app_sig = sigs[1];
-        auth_user = parseVals(skey, auth_sig, AUTH_PREFIX, ikey, time);
-        app_user = parseVals(akey, app_sig, APP_PREFIX, ikey, time);
+        final int auth_end = sig_response.indexOf(':');
+        // split(":") drops trailing empty fields, so there must be something other than ':' after the first one.
+        if (auth_end < 0 || !hasNonSeparator(sig_response, auth_end + 1, sig_response.length(), ':')) {
+            throw new DuoWebException("Invalid response");
+        }
+        int app_end = sig_response.indexOf(':', auth_end + 1);
+        if (app_end < 0) {
+            app_end = sig_response.length();
+        }
+        auth_user = parseVals(skey, true, sig_response, 0, auth_end, AUTH_PREFIX, ikey, time);
+        app_user = parseVals(akey, false, sig_response, auth_end + 1, app_end, APP_PREFIX, ikey, time);
         if (!auth_user.equals(app_user)) {
             throw new DuoWebException("Authentication failed.");
         }
         return auth_user;
     }
 
-    private static String signVals(final String key, final String username, final String ikey, final String prefix, final int expire, final long time)
+    private static String signVals(final String key, final boolean pooled, final String username, final String ikey,
+                                   final String prefix, final int expire, final long time)
             throws InvalidKeyException, NoSuchAlgorithmException {
         final long expire_ts = time + expire;
         final String exp = Long.toString(expire_ts);
         final String val = username + "|" + ikey + "|" + exp;
         final String cookie = prefix + "|" + DuoBase64.encodeBytes(val.getBytes());
-        final String sig = DuoUtil.hmacSign(key, cookie);
+        final String sig = pooled ? DuoUtil.hmacSign(key, cookie)
+                : DuoHmacSigner.toHex(DuoHmacSigner.newMac(DuoHmacSigner.HMAC_SHA1, key).doFinal(cookie.getBytes()));
         return cookie + "|" + sig;
     }
 
-    private static String parseVals(final String key, final String val, final String prefix, final String ikey, final long time)
+    /**
+     * Parse and verify the "prefix|base64 cookie|signature" value held in the given range of the response. Fields
+     * are located by index and the cookie is decoded into a per-thread buffer, so that only the username becomes a
+     * new String. Input that is not plain ASCII or canonical Base64 takes the general decoding path, which accepts
+     * and rejects exactly what the former split based parser did.
+     */
+    private static String parseVals(final String key, final boolean pooled, final String response, final int start,
+                                    final int end, final String prefix, final String ikey, final long time)
             throws InvalidKeyException, NoSuchAlgorithmException, IOException, DuoWebException {
-        final String[] parts = val.split("\\|");
-        if (parts.length != 3) {
+        final int prefix_end = indexOf(response, '|', start, end);
+        final int b64_end = prefix_end < 0 ? -1 : indexOf(response, '|', prefix_end + 1, end);
+        if (b64_end < 0) {
+            throw new DuoWebException("Invalid response");
+        }
+        int sig_end = indexOf(response, '|', b64_end + 1, end);
+        if (sig_end < 0) {
+            sig_end = end;
+        }
+        // The signature must be the last non-empty field, since split("\\|") drops trailing empty fields.
+        if (sig_end == b64_end + 1 || hasNonSeparator(response, sig_end, end, '|')) {
+            throw new DuoWebException("Invalid response");
+        }
+        final byte[] sig = hmacSign(key, pooled, response, start, b64_end);
+        if (!DuoHmacSigner.isEqualHex(sig, response, b64_end + 1, sig_end - b64_end - 1)) {
+            throw new DuoWebException("Invalid response");
+        }
+        if (prefix_end - start != prefix.length() || !response.regionMatches(start, prefix, 0, prefix.length())) {
+            throw new DuoWebException("Invalid response");
+        }
+        final int b64_length = b64_end - prefix_end - 1;
+        byte[] decoded = getBuffer(b64_length);
+        int decoded_length = DuoBase64.decodeCanonical(response, prefix_end + 1, b64_length, decoded, 0);
+        if (decoded_length < 0 || isGzip(decoded, decoded_length)) {
+            decoded = DuoBase64.decode(response.substring(prefix_end + 1, b64_end));
+            decoded_length = decoded.length;
+        }
+        if (!ASCII_COMPATIBLE || !isAscii(decoded, decoded_length)) {
+            return parseCookie(new String(decoded, 0, decoded_length), ikey, time);
+        }
+        final int user_end = indexOf(decoded, '|', 0, decoded_length);
+        final int ikey_end = user_end < 0 ? -1 : indexOf(decoded, '|', user_end + 1, decoded_length);
+        if (ikey_end < 0) {
             throw new DuoWebException("Invalid response");
         }
-        final String u_prefix = parts[0];
-        final String u_b64 = parts[1];
-        final String u_sig = parts[2];
-        final String sig = DuoUtil.hmacSign(key, u_prefix + "|" + u_b64);
-        if (!DuoUtil.hmacSign(key, sig).equals(DuoUtil.hmacSign(key, u_sig))) {
+        int expire_end = indexOf(decoded, '|', ikey_end + 1, decoded_length);
+        if (expire_end < 0) {
+            expire_end = decoded_length;
+        }
+        if (expire_end == ikey_end + 1 || hasNonSeparator(decoded, expire_end, decoded_length, '|')) {
             throw new DuoWebException("Invalid response");
         }
-        if (!u_prefix.equals(prefix)) {
+        if (!regionEquals(decoded, user_end + 1, ikey_end, ikey)) {
             throw new DuoWebException("Invalid response");
         }
-        final byte[] decoded = DuoBase64.decode(u_b64);
-        final String cookie = new String(decoded);
+        final long expire_ts = parseLong(decoded, ikey_end + 1, expire_end);
+        if (time >= expire_ts) {
+            throw new DuoWebException("Transaction has expired. Please check that the system time is correct.");
+        }
+        return new String(decoded, 0, user_end, StandardCharsets.US_ASCII);
+    }
+
+    private static String parseCookie(final String cookie, final String ikey, final long time)
+            throws DuoWebException {
         final String[] cookie_parts = cookie.split("\\|");
         if (cookie_parts.length != 3) {
             throw new DuoWebException("Invalid response");
@@ -130,10 +189,153 @@ public final class DuoWeb {
         if (!u_ikey.equals(ikey)) {
             throw new DuoWebException("Invalid response");
         }
-        final long expire_ts = Long.parseLong(expire);
+        final long expire_ts;
+        try {
+            expire_ts = Long.parseLong(expire);
+        } catch (NumberFormatException e) {
+            throw new DuoWebException("Invalid response");
+        }
         if (time >= expire_ts) {
             throw new DuoWebException("Transaction has expired. Please check that the system time is correct.");
         }
         return username;
     }
-}
\ No newline at end of file
+
+    /**
+     * Sign a range of the response, with a pooled Mac for the long lived secret key and a Mac of its own for the
+     * application key, which is random for every login.
+     */
+    private static byte[] hmacSign(final String key, final boolean pooled, final String response, final int start,
+                                   final int end) throws InvalidKeyException, NoSuchAlgorithmException {
+        byte[] data = null;
+        int length = 0;
+        if (ASCII_COMPATIBLE) {
+            data = getBuffer(end - start);
+            for (int i = start; i < end; i++) {
+                final char c = response.charAt(i);
+                if (c >= 0x80) {
+                    data = null;
+                    break;
+                }
+                data[length++] = (byte) c;
+            }
+        }
+        if (data == null) {
+            data = response.substring(start, end).getBytes();
+            length = data.length;
+        }
+        if (pooled) {
+            return DuoHmacSigner.sign(DuoHmacSigner.HMAC_SHA1, key, data, 0, length);
+        }
+        final Mac mac = DuoHmacSigner.newMac(DuoHmacSigner.HMAC_SHA1, key);
+        mac.update(data, 0, length);
+        return mac.doFinal();
+    }
+
+    private static long parseLong(final byte[] value, final int start, final int end) throws DuoWebException {
+        int i = start;
+        final boolean negative = value[i] == '-';
+        if (negative || value[i] == '+') {
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            try {
+                return Long.parseLong(new String(value, start, end - start, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                throw new DuoWebException("Invalid response");
+            }
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            final int digit = value[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new DuoWebException("Invalid response");
+            }
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    private static int indexOf(final String value, final char c, final int start, final int end) {
+        final int index = value.indexOf(c, start);
+        return index < end ? index : -1;
+    }
+
+    private static int indexOf(final byte[] value, final char c, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (value[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean hasNonSeparator(final String value, final int start, final int end, final char separator) {
+        for (int i = start; i < end; i++) {
+            if (value.charAt(i) != separator) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasNonSeparator(final byte[] value, final int start, final int end, final char separator) {
+        for (int i = start; i < end; i++) {
+            if (value[i] != separator) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionEquals(final byte[] value, final int start, final int end, final String expected) {
+        if (expected == null || expected.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (value[i] != expected.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(final byte[] value, final int length) {
+        for (int i = 0; i < length; i++) {
+            if (value[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isGzip(final byte[] value, final int length) {
+        return length >= 4 && value[0] == (byte) 0x1f && value[1] == (byte) 0x8b;
+    }
+
+    private static byte[] getBuffer(final int length) {
+        byte[] buffer = BUFFER.get();
+        if (buffer.length < length) {
+            buffer = new byte[length];
+            BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
+    private static boolean isAsciiCompatible() {
+        final char[] chars = new char[128];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) i;
+        }
+        final byte[] bytes = new String(chars).getBytes();
+        if (bytes.length != chars.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -21,10 +21,36 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.osgi.service.component.ComponentContext;
 import org.wso2.carbon.identity.application.authentication.framework.ApplicationAuthenticator;
+import org.wso2.carbon.identity.application.authentication.framework.config.builder.FileBasedConfigurationBuilder;
+import org.wso2.carbon.identity.application.authentication.framework.config.model.AuthenticatorConfig;
+import org.wso2.carbon.identity.authenticator.duo.DuoAdaptiveTimeouts;
 import org.wso2.carbon.identity.authenticator.duo.DuoAuthenticator;
+import org.wso2.carbon.identity.authenticator.duo.DuoAuthenticatorConstants;
+import org.wso2.carbon.identity.authenticator.duo.DuoCircuitBreakerRegistry;
+import org.wso2.carbon.identity.authenticator.duo.DuoConnectionWarmer;
+import org.wso2.carbon.identity.authenticator.duo.DuoHealthProber;
+import org.wso2.carbon.identity.authenticator.duo.DuoHmacSigner;
+import org.wso2.carbon.identity.authenticator.duo.DuoHttpClientRegistry;
+import org.wso2.carbon.identity.authenticator.duo.DuoMobileClaimCache;
+import org.wso2.carbon.identity.authenticator.duo.DuoPhoneNumberNormalizer;
+import org.wso2.carbon.identity.authenticator.duo.DuoRateLimiter;
+import org.wso2.carbon.identity.authenticator.duo.DuoRequestExecutor;
+import org.wso2.carbon.identity.authenticator.duo.DuoRetryPolicy;
+import org.wso2.carbon.identity.authenticator.duo.DuoTenantBulkhead;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserInfoCache;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserLookupCoalescer;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserPrefetcher;
+import org.wso2.carbon.identity.authenticator.duo.DuoUtil;
+import org.wso2.carbon.user.core.listener.UserOperationEventListener;
 import org.wso2.carbon.user.core.service.RealmService;
 
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * @scr.component name="identity.application.authenticator.basicauth.component" immediate="true"
@@ -37,12 +63,200 @@ public class DuoAuthenticatorServiceComponent {
     private static Log log = LogFactory.getLog(DuoAuthenticatorServiceComponent.class);
     
     private static RealmService realmService;
+    private static DuoHttpClientRegistry httpClientRegistry;
+    private static DuoRequestExecutor requestExecutor;
+    private static DuoUserLookupCoalescer userLookupCoalescer;
+    private static DuoUserInfoCache userInfoCache;
+    private static DuoMobileClaimCache mobileClaimCache;
+    private static DuoUserPrefetcher userPrefetcher;
+    private static DuoPhoneNumberNormalizer phoneNumberNormalizer;
+    private static DuoCircuitBreakerRegistry circuitBreakerRegistry;
+    private static DuoTenantBulkhead tenantBulkhead;
+    private static DuoAdaptiveTimeouts adaptiveTimeouts;
+    private static DuoRetryPolicy retryPolicy;
+    private static DuoHealthProber healthProber;
+    private static DuoConnectionWarmer connectionWarmer;
+    private static DuoRateLimiter rateLimiter;
+
     protected void activate(ComponentContext ctxt) {
+        Map<String, String> parameters = getAuthenticatorParameters();
+        final long keepAliveDuration = DuoUtil.getLongParameter(parameters,
+                DuoAuthenticatorConstants.HTTP_KEEP_ALIVE_DURATION,
+                DuoAuthenticatorConstants.DEFAULT_HTTP_KEEP_ALIVE_DURATION);
+        startFeature("HTTP connection pool", () -> {
+            String httpProtocols = parameters.get(DuoAuthenticatorConstants.HTTP_PROTOCOLS);
+            if (httpProtocols == null) {
+                httpProtocols = DuoAuthenticatorConstants.DEFAULT_HTTP_PROTOCOLS;
+            }
+            httpClientRegistry = new DuoHttpClientRegistry(
+                    DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.HTTP_MAX_IDLE_CONNECTIONS,
+                            DuoAuthenticatorConstants.DEFAULT_HTTP_MAX_IDLE_CONNECTIONS),
+                    keepAliveDuration,
+                    DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.HTTP_MAX_REQUESTS_PER_HOST,
+                            DuoAuthenticatorConstants.DEFAULT_HTTP_MAX_REQUESTS_PER_HOST),
+                    DuoHttpClientRegistry.parseProtocols(httpProtocols));
+        });
+        startFeature("request executor", () -> {
+            requestExecutor = new DuoRequestExecutor(parameters.get(DuoAuthenticatorConstants.EXECUTION_MODE),
+                    DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.MAX_CONCURRENT_REQUESTS,
+                            DuoAuthenticatorConstants.DEFAULT_MAX_CONCURRENT_REQUESTS),
+                    DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.EXECUTOR_POOL_SIZE,
+                            DuoAuthenticatorConstants.DEFAULT_EXECUTOR_POOL_SIZE));
+        });
+        userLookupCoalescer = new DuoUserLookupCoalescer();
+        startFeature("user information cache", () -> {
+            long userInfoCacheTtl = DuoUtil.getLongParameter(parameters, DuoAuthenticatorConstants.USER_INFO_CACHE_TTL,
+                    DuoAuthenticatorConstants.DEFAULT_USER_INFO_CACHE_TTL);
+            long userInfoCacheNegativeTtl = DuoUtil.getLongParameter(parameters,
+                    DuoAuthenticatorConstants.USER_INFO_CACHE_NEGATIVE_TTL,
+                    DuoAuthenticatorConstants.DEFAULT_USER_INFO_CACHE_NEGATIVE_TTL);
+            if (userInfoCacheTtl > 0 || userInfoCacheNegativeTtl > 0) {
+                userInfoCache = new DuoUserInfoCache(TimeUnit.SECONDS.toMillis(userInfoCacheTtl),
+                        TimeUnit.SECONDS.toMillis(userInfoCacheNegativeTtl),
+                        TimeUnit.SECONDS.toMillis(DuoUtil.getLongParameter(parameters,
+                                DuoAuthenticatorConstants.USER_INFO_CACHE_REFRESH_AHEAD,
+                                DuoAuthenticatorConstants.DEFAULT_USER_INFO_CACHE_REFRESH_AHEAD)),
+                        DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.USER_INFO_CACHE_MAX_ENTRIES,
+                                DuoAuthenticatorConstants.DEFAULT_USER_INFO_CACHE_MAX_ENTRIES));
+            }
+        });
+        startFeature("mobile claim cache", () -> {
+            long mobileClaimCacheTtl = DuoUtil.getLongParameter(parameters,
+                    DuoAuthenticatorConstants.MOBILE_CLAIM_CACHE_TTL,
+                    DuoAuthenticatorConstants.DEFAULT_MOBILE_CLAIM_CACHE_TTL);
+            if (mobileClaimCacheTtl > 0) {
+                mobileClaimCache = new DuoMobileClaimCache(TimeUnit.SECONDS.toMillis(mobileClaimCacheTtl),
+                        DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.MOBILE_CLAIM_CACHE_MAX_ENTRIES,
+                                DuoAuthenticatorConstants.DEFAULT_MOBILE_CLAIM_CACHE_MAX_ENTRIES));
+            }
+        });
+        startFeature("user prefetcher", () -> {
+            if (Boolean.parseBoolean(parameters.get(DuoAuthenticatorConstants.ENABLE_USER_PREFETCH))) {
+                userPrefetcher = new DuoUserPrefetcher(DuoAuthenticatorConstants.USER_PREFETCH_TTL,
+                        DuoAuthenticatorConstants.USER_PREFETCH_MAX_ENTRIES,
+                        DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.EXECUTOR_POOL_SIZE,
+                                DuoAuthenticatorConstants.DEFAULT_EXECUTOR_POOL_SIZE));
+            }
+        });
+        startFeature("phone number normalizer", () -> {
+            phoneNumberNormalizer = new DuoPhoneNumberNormalizer(
+                    parameters.get(DuoAuthenticatorConstants.DEFAULT_COUNTRY_CODE));
+        });
+        startFeature("circuit breakers", () -> {
+            int circuitBreakerWindowSize = DuoUtil.getIntParameter(parameters,
+                    DuoAuthenticatorConstants.CIRCUIT_BREAKER_WINDOW_SIZE,
+                    DuoAuthenticatorConstants.DEFAULT_CIRCUIT_BREAKER_WINDOW_SIZE);
+            if (circuitBreakerWindowSize > 0) {
+                circuitBreakerRegistry = new DuoCircuitBreakerRegistry(circuitBreakerWindowSize,
+                        DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.CIRCUIT_BREAKER_MINIMUM_CALLS,
+                                DuoAuthenticatorConstants.DEFAULT_CIRCUIT_BREAKER_MINIMUM_CALLS),
+                        DuoUtil.getIntParameter(parameters,
+                                DuoAuthenticatorConstants.CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD,
+                                DuoAuthenticatorConstants.DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE_THRESHOLD),
+                        DuoUtil.getIntParameter(parameters,
+                                DuoAuthenticatorConstants.CIRCUIT_BREAKER_SLOW_CALL_RATE_THRESHOLD,
+                                DuoAuthenticatorConstants.DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_RATE_THRESHOLD),
+                        DuoUtil.getLongParameter(parameters,
+                                DuoAuthenticatorConstants.CIRCUIT_BREAKER_SLOW_CALL_DURATION,
+                                DuoAuthenticatorConstants.DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_DURATION),
+                        DuoUtil.getLongParameter(parameters, DuoAuthenticatorConstants.CIRCUIT_BREAKER_OPEN_DURATION,
+                                DuoAuthenticatorConstants.DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION),
+                        DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.CIRCUIT_BREAKER_HALF_OPEN_CALLS,
+                                DuoAuthenticatorConstants.DEFAULT_CIRCUIT_BREAKER_HALF_OPEN_CALLS));
+            }
+        });
+        startFeature("tenant bulkhead", () -> {
+            int tenantMaxConcurrentRequests = DuoUtil.getIntParameter(parameters,
+                    DuoAuthenticatorConstants.TENANT_MAX_CONCURRENT_REQUESTS,
+                    DuoAuthenticatorConstants.DEFAULT_TENANT_MAX_CONCURRENT_REQUESTS);
+            if (tenantMaxConcurrentRequests > 0) {
+                tenantBulkhead = new DuoTenantBulkhead(tenantMaxConcurrentRequests,
+                        DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.TENANT_MAX_QUEUED_REQUESTS,
+                                DuoAuthenticatorConstants.DEFAULT_TENANT_MAX_QUEUED_REQUESTS));
+            }
+        });
+        startFeature("rate limiter", () -> {
+            int rateLimit = DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.RATE_LIMIT,
+                    DuoAuthenticatorConstants.DEFAULT_RATE_LIMIT);
+            if (rateLimit > 0) {
+                rateLimiter = new DuoRateLimiter(rateLimit,
+                        DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.RATE_LIMIT_BURST,
+                                DuoAuthenticatorConstants.DEFAULT_RATE_LIMIT_BURST),
+                        DuoUtil.getLongParameter(parameters, DuoAuthenticatorConstants.RATE_LIMIT_MAX_WAIT,
+                                DuoAuthenticatorConstants.DEFAULT_RATE_LIMIT_MAX_WAIT),
+                        DuoUtil.getLongParameter(parameters, DuoAuthenticatorConstants.RATE_LIMIT_COOL_DOWN,
+                                DuoAuthenticatorConstants.DEFAULT_RATE_LIMIT_COOL_DOWN));
+            }
+        });
+        startFeature("adaptive timeouts", () -> {
+            adaptiveTimeouts = new DuoAdaptiveTimeouts(
+                    DuoUtil.getLongParameter(parameters, DuoAuthenticatorConstants.HTTP_TIMEOUT_FLOOR,
+                            DuoAuthenticatorConstants.DEFAULT_HTTP_TIMEOUT_FLOOR),
+                    DuoUtil.getLongParameter(parameters, DuoAuthenticatorConstants.HTTP_TIMEOUT_CEILING,
+                            DuoAuthenticatorConstants.DEFAULT_HTTP_TIMEOUT_CEILING),
+                    DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.HTTP_TIMEOUT_MARGIN,
+                            DuoAuthenticatorConstants.DEFAULT_HTTP_TIMEOUT_MARGIN),
+                    DuoAuthenticatorConstants.HTTP_TIMEOUT_MINIMUM_SAMPLES);
+        });
+        startFeature("retry policy", () -> {
+            int retryMaxAttempts = DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.RETRY_MAX_ATTEMPTS,
+                    DuoAuthenticatorConstants.DEFAULT_RETRY_MAX_ATTEMPTS);
+            boolean hedgingEnabled = Boolean.parseBoolean(parameters.get(DuoAuthenticatorConstants.ENABLE_HEDGING));
+            if (retryMaxAttempts > 1 || hedgingEnabled) {
+                retryPolicy = new DuoRetryPolicy(retryMaxAttempts,
+                        DuoUtil.getLongParameter(parameters, DuoAuthenticatorConstants.RETRY_BASE_DELAY,
+                                DuoAuthenticatorConstants.DEFAULT_RETRY_BASE_DELAY),
+                        DuoUtil.getLongParameter(parameters, DuoAuthenticatorConstants.RETRY_MAX_DELAY,
+                                DuoAuthenticatorConstants.DEFAULT_RETRY_MAX_DELAY),
+                        DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.RETRY_BUDGET,
+                                DuoAuthenticatorConstants.DEFAULT_RETRY_BUDGET),
+                        hedgingEnabled,
+                        DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.HEDGE_BUDGET,
+                                DuoAuthenticatorConstants.DEFAULT_HEDGE_BUDGET));
+            }
+            if (hedgingEnabled && requestExecutor != null
+                    && !DuoRequestExecutor.MODE_ASYNC.equals(requestExecutor.getMode())) {
+                log.warn(DuoAuthenticatorConstants.ENABLE_HEDGING + " has no effect in the " + requestExecutor.getMode()
+                        + " " + DuoAuthenticatorConstants.EXECUTION_MODE + ", only the async mode sends hedged calls");
+            }
+        });
+        startFeature("health prober", () -> {
+            long healthCheckInterval = DuoUtil.getLongParameter(parameters,
+                    DuoAuthenticatorConstants.HEALTH_CHECK_INTERVAL,
+                    DuoAuthenticatorConstants.DEFAULT_HEALTH_CHECK_INTERVAL);
+            if (healthCheckInterval > 0) {
+                healthProber = new DuoHealthProber(healthCheckInterval,
+                        DuoUtil.getLongParameter(parameters, DuoAuthenticatorConstants.HEALTH_CHECK_TIMEOUT,
+                                DuoAuthenticatorConstants.DEFAULT_HEALTH_CHECK_TIMEOUT),
+                        DuoAuthenticatorConstants.HEALTH_CHECK_WINDOW_SIZE,
+                        DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.HEALTH_CHECK_FAILURE_THRESHOLD,
+                                DuoAuthenticatorConstants.DEFAULT_HEALTH_CHECK_FAILURE_THRESHOLD));
+                healthProber.start();
+            }
+        });
+        startFeature("connection warm-up", () -> {
+            if (!"false".equalsIgnoreCase(parameters.get(DuoAuthenticatorConstants.ENABLE_WARM_UP))) {
+                connectionWarmer = new DuoConnectionWarmer(
+                        DuoUtil.getIntParameter(parameters, DuoAuthenticatorConstants.WARM_UP_CONNECTIONS,
+                                DuoAuthenticatorConstants.DEFAULT_WARM_UP_CONNECTIONS),
+                        DuoAuthenticatorConstants.WARM_UP_TIMEOUT, keepAliveDuration);
+                connectionWarmer.warmUpSigning(DuoAuthenticatorConstants.WARM_UP_ITERATIONS);
+                String warmUpHosts = parameters.get(DuoAuthenticatorConstants.WARM_UP_HOSTS);
+                if (warmUpHosts != null) {
+                    for (String host : warmUpHosts.split(",")) {
+                        connectionWarmer.warmUp(host);
+                    }
+                }
+            }
+        });
         try {
             DuoAuthenticator authenticator = new DuoAuthenticator();
             Hashtable<String, String> props = new Hashtable<String, String>();
             ctxt.getBundleContext().registerService(ApplicationAuthenticator.class.getName(),
                     authenticator, props);
+            ctxt.getBundleContext().registerService(UserOperationEventListener.class.getName(),
+                    new DuoUserOperationEventListener(), null);
+            registerCacheAdmin();
             if (log.isDebugEnabled()) {
                 log.debug("DuoAuthenticator bundle is activated");
             }
@@ -50,12 +264,112 @@ public class DuoAuthenticatorServiceComponent {
             log.fatal("Error while activating the DUO authenticator ", e);
         }
     }
+
+    /**
+     * Start an optional feature of the authenticator. A feature that fails to start is left disabled, so that the
+     * authenticator is still registered.
+     *
+     * @param feature the name of the feature, for the log
+     * @param starter creates the feature
+     */
+    private static void startFeature(String feature, Runnable starter) {
+        try {
+            starter.run();
+        } catch (Throwable e) {
+            log.error("Could not start the Duo " + feature + ", it stays disabled", e);
+        }
+    }
+
     protected void deactivate(ComponentContext ctxt) {
+        unregisterCacheAdmin();
+        if (connectionWarmer != null) {
+            connectionWarmer.shutdown();
+            connectionWarmer = null;
+        }
+        if (healthProber != null) {
+            healthProber.shutdown();
+            healthProber = null;
+        }
+        if (circuitBreakerRegistry != null && log.isDebugEnabled()) {
+            log.debug("Duo circuit breaker states: " + circuitBreakerRegistry.getStates());
+        }
+        circuitBreakerRegistry = null;
+        DuoHmacSigner.clear();
+        if (tenantBulkhead != null && log.isDebugEnabled()) {
+            log.debug("Duo API calls per tenant: " + tenantBulkhead.getCompartments());
+        }
+        tenantBulkhead = null;
+        if (rateLimiter != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Duo API rate limits per integration key: " + rateLimiter.getBuckets());
+            }
+            rateLimiter.shutdown();
+            rateLimiter = null;
+        }
+        adaptiveTimeouts = null;
+        if (retryPolicy != null && log.isDebugEnabled()) {
+            log.debug("Duo API retries: " + retryPolicy.getRetryBudget().getUsedCount() + ", denied by budget: "
+                    + retryPolicy.getRetryBudget().getDeniedCount() + ", hedged requests: "
+                    + retryPolicy.getHedgeBudget().getUsedCount());
+        }
+        retryPolicy = null;
+        phoneNumberNormalizer = null;
+        if (userPrefetcher != null) {
+            userPrefetcher.shutdown();
+            userPrefetcher = null;
+        }
+        if (userLookupCoalescer != null && log.isDebugEnabled()) {
+            log.debug("Duo user lookups: " + userLookupCoalescer.getLookupCount() + ", coalesced: "
+                    + userLookupCoalescer.getCoalescedCount());
+        }
+        userLookupCoalescer = null;
+        if (userInfoCache != null) {
+            userInfoCache.invalidateAll();
+            userInfoCache = null;
+        }
+        if (mobileClaimCache != null) {
+            mobileClaimCache.invalidateAll();
+            mobileClaimCache = null;
+        }
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+            requestExecutor = null;
+        }
+        if (httpClientRegistry != null) {
+            httpClientRegistry.close();
+            httpClientRegistry = null;
+        }
         if (log.isDebugEnabled()) {
             log.info("DuoAuthenticator bundle is deactivated");
         }
     }
     
+    /**
+     * Register the cache invalidation MBean, replacing the one of an earlier activation.
+     */
+    private static void registerCacheAdmin() {
+        try {
+            ObjectName name = new ObjectName(DuoCacheAdmin.OBJECT_NAME);
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new DuoCacheAdmin(), name);
+        } catch (JMException e) {
+            log.warn("Could not register the Duo cache admin MBean", e);
+        }
+    }
+
+    private static void unregisterCacheAdmin() {
+        try {
+            ObjectName name = new ObjectName(DuoCacheAdmin.OBJECT_NAME);
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            log.warn("Could not unregister the Duo cache admin MBean", e);
+        }
+    }
+
     protected void setRealmService(RealmService realmService) {
         log.debug("Setting the Realm Service");
         DuoAuthenticatorServiceComponent.realmService = realmService;
@@ -70,4 +384,135 @@ public class DuoAuthenticatorServiceComponent {
         return realmService;
     }
 
+    /**
+     * @return the pooled HTTP clients for Duo API calls, or null when the component is not active
+     */
+    public static DuoHttpClientRegistry getHttpClientRegistry() {
+        return httpClientRegistry;
+    }
+
+    /**
+     * @return the executor deciding which threads run Duo API calls, or null when the component is not active
+     */
+    public static DuoRequestExecutor getRequestExecutor() {
+        return requestExecutor;
+    }
+
+    /**
+     * @return the single-flight layer for Duo user lookups, or null when the component is not active
+     */
+    public static DuoUserLookupCoalescer getUserLookupCoalescer() {
+        return userLookupCoalescer;
+    }
+
+    /**
+     * Get the cache of Duo user information. Administrators can use it to drop stale users with
+     * {@link DuoUserInfoCache#invalidate(String, String)} or {@link DuoUserInfoCache#invalidateAll()}.
+     *
+     * @return the cache, or null when caching is disabled or the component is not active
+     */
+    public static DuoUserInfoCache getUserInfoCache() {
+        return userInfoCache;
+    }
+
+    /**
+     * @return the cache of user store managers and mobile claim values, or null when caching is disabled or the
+     * component is not active
+     */
+    public static DuoMobileClaimCache getMobileClaimCache() {
+        return mobileClaimCache;
+    }
+
+    /**
+     * @return the store of Duo user data prefetched at redirect time, or null when prefetching is disabled or the
+     * component is not active
+     */
+    public static DuoUserPrefetcher getUserPrefetcher() {
+        return userPrefetcher;
+    }
+
+    /**
+     * @return the normalizer used to compare mobile claims with Duo phone numbers, or null when the component is
+     * not active
+     */
+    public static DuoPhoneNumberNormalizer getPhoneNumberNormalizer() {
+        return phoneNumberNormalizer;
+    }
+
+    /**
+     * Get the per-host circuit breakers of the Duo API calls. Monitoring can read their state, failure and slow
+     * call rates and rejected call counts from here.
+     *
+     * @return the circuit breakers, or null when they are disabled or the component is not active
+     */
+    public static DuoCircuitBreakerRegistry getCircuitBreakerRegistry() {
+        return circuitBreakerRegistry;
+    }
+
+    /**
+     * Get the per-tenant limits of the Duo API calls. The executed, queued and rejected counts of each tenant
+     * show which tenants are noisy.
+     *
+     * @return the bulkhead, or null when it is disabled or the component is not active
+     */
+    public static DuoTenantBulkhead getTenantBulkhead() {
+        return tenantBulkhead;
+    }
+
+    /**
+     * Get the rate limiter of the Duo API calls. The permits used and the time calls waited for them, per
+     * integration key, show how close the traffic is to the Duo API quota.
+     *
+     * @return the rate limiter, or null when it is disabled or the component is not active
+     */
+    public static DuoRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @return the latency based timeouts of the Duo API endpoints, or null when the component is not active
+     */
+    public static DuoAdaptiveTimeouts getAdaptiveTimeouts() {
+        return adaptiveTimeouts;
+    }
+
+    /**
+     * @return the retry and hedging policy of idempotent Duo API calls, or null when retries are disabled or the
+     * component is not active
+     */
+    public static DuoRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Get the background prober of the Duo API hosts. The authentication endpoint webapp reads the rolling
+     * availability and latency of each host from it for its readiness check.
+     *
+     * @return the prober, or null when health checks are disabled or the component is not active
+     */
+    public static DuoHealthProber getHealthProber() {
+        return healthProber;
+    }
+
+    /**
+     * @return the warmer of the Duo API connections, or null when warm-up is disabled or the component is not active
+     */
+    public static DuoConnectionWarmer getConnectionWarmer() {
+        return connectionWarmer;
+    }
+
+    /**
+     * Get the parameters configured for the authenticator in application-authentication.xml
+     *
+     * @return the authenticator parameters
+     */
+    private static Map<String, String> getAuthenticatorParameters() {
+        AuthenticatorConfig authenticatorConfig = FileBasedConfigurationBuilder.getInstance()
+                .getAuthenticatorBean(DuoAuthenticatorConstants.AUTHENTICATOR_NAME);
+        if (authenticatorConfig == null || authenticatorConfig.getParameterMap() == null) {
+            return Collections.emptyMap();
+        }
+        return authenticatorConfig.getParameterMap();
+    }
+
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo.internal;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.authenticator.duo.DuoMobileClaimCache;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserInfoCache;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
+
+/**
+ * Invalidates the caches of the running Duo authenticator over JMX. The caches are looked up on every call, so
+ * the operations do nothing while a cache is disabled or the bundle is not active.
+ */
+public class DuoCacheAdmin implements DuoCacheAdminMBean {
+
+    public static final String OBJECT_NAME = "org.wso2.carbon.identity.authenticator.duo:type=DuoCacheAdmin";
+
+    private static Log log = LogFactory.getLog(DuoCacheAdmin.class);
+
+    @Override
+    public void invalidateUserInfo(String host, String username) {
+        DuoUserInfoCache userInfoCache = DuoAuthenticatorServiceComponent.getUserInfoCache();
+        if (userInfoCache != null && host != null && username != null) {
+            userInfoCache.invalidate(host, username);
+            log.info("Cleared the cached Duo user information of " + username + " at " + host);
+        }
+    }
+
+    @Override
+    public void invalidateAllUserInfo() {
+        DuoUserInfoCache userInfoCache = DuoAuthenticatorServiceComponent.getUserInfoCache();
+        if (userInfoCache != null) {
+            userInfoCache.invalidateAll();
+            log.info("Cleared the cached Duo user information of every user");
+        }
+    }
+
+    @Override
+    public void invalidateMobileClaim(String username) {
+        DuoMobileClaimCache mobileClaimCache = DuoAuthenticatorServiceComponent.getMobileClaimCache();
+        if (mobileClaimCache != null && username != null) {
+            mobileClaimCache.invalidate(IdentityTenantUtil.getTenantIdOfUser(username),
+                    MultitenantUtils.getTenantAwareUsername(username));
+            log.info("Cleared the cached mobile claim of " + username);
+        }
+    }
+
+    @Override
+    public void invalidateAllMobileClaims() {
+        DuoMobileClaimCache mobileClaimCache = DuoAuthenticatorServiceComponent.getMobileClaimCache();
+        if (mobileClaimCache != null) {
+            mobileClaimCache.invalidateAll();
+            log.info("Cleared the cached mobile claim of every user");
+        }
+    }
+
+    @Override
+    public int getUserInfoCacheSize() {
+        DuoUserInfoCache userInfoCache = DuoAuthenticatorServiceComponent.getUserInfoCache();
+        return userInfoCache != null ? userInfoCache.size() : -1;
+    }
+
+    @Override
+    public long getUserInfoCacheHitCount() {
+        DuoUserInfoCache userInfoCache = DuoAuthenticatorServiceComponent.getUserInfoCache();
+        return userInfoCache != null ? userInfoCache.getHitCount() : 0;
+    }
+
+    @Override
+    public long getUserInfoCacheMissCount() {
+        DuoUserInfoCache userInfoCache = DuoAuthenticatorServiceComponent.getUserInfoCache();
+        return userInfoCache != null ? userInfoCache.getMissCount() : 0;
+    }
+}
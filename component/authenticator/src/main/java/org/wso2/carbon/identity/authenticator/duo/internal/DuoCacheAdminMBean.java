@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.authenticator.duo.internal;
+
+/**
+ * Management interface of the Duo authenticator caches, for operators who need a change made in Duo or in a user
+ * store behind the server's back to take effect before the cached copy expires.
+ */
+public interface DuoCacheAdminMBean {
+
+    /**
+     * Drop the cached Duo user information of a user.
+     *
+     * @param host     the Duo API host
+     * @param username the username as sent to Duo
+     */
+    void invalidateUserInfo(String host, String username);
+
+    /**
+     * Drop the cached Duo user information of every user.
+     */
+    void invalidateAllUserInfo();
+
+    /**
+     * Drop the cached mobile claim value of a user.
+     *
+     * @param username the username, with the tenant domain for users outside the super tenant
+     */
+    void invalidateMobileClaim(String username);
+
+    /**
+     * Drop the cached mobile claim value of every user.
+     */
+    void invalidateAllMobileClaims();
+
+    /**
+     * @return the number of users with cached Duo user information, or -1 if the cache is disabled
+     */
+    int getUserInfoCacheSize();
+
+    /**
+     * @return the number of Duo user lookups served from the cache
+     */
+    long getUserInfoCacheHitCount();
+
+    /**
+     * @return the number of Duo user lookups that called Duo
+     */
+    long getUserInfoCacheMissCount();
+}
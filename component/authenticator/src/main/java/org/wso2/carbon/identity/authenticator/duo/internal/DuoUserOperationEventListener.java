@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.carbon.identity.authenticator.duo.internal;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.identity.authenticator.duo.DuoAuthenticatorConstants;
+import org.wso2.carbon.identity.authenticator.duo.DuoMobileClaimCache;
+import org.wso2.carbon.user.core.UserStoreException;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.common.AbstractUserOperationEventListener;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+
+import java.util.Map;
+
+/**
+ * Drops the cached mobile claim value of a user whenever the user's claims change or the user is deleted.
+ */
+public class DuoUserOperationEventListener extends AbstractUserOperationEventListener {
+
+    private static Log log = LogFactory.getLog(DuoUserOperationEventListener.class);
+
+    private static final int EXECUTION_ORDER_ID = 8000;
+
+    @Override
+    public int getExecutionOrderId() {
+        return EXECUTION_ORDER_ID;
+    }
+
+    @Override
+    public boolean doPostSetUserClaimValue(String userName, UserStoreManager userStoreManager)
+            throws UserStoreException {
+        invalidate(userName, userStoreManager);
+        return true;
+    }
+
+    @Override
+    public boolean doPostSetUserClaimValues(String userName, Map<String, String> claims, String profileName,
+                                            UserStoreManager userStoreManager) throws UserStoreException {
+        if (claims == null || claims.containsKey(DuoAuthenticatorConstants.MOBILE_CLAIM)) {
+            invalidate(userName, userStoreManager);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean doPostDeleteUserClaimValue(String userName, UserStoreManager userStoreManager)
+            throws UserStoreException {
+        invalidate(userName, userStoreManager);
+        return true;
+    }
+
+    @Override
+    public boolean doPostDeleteUserClaimValues(String userName, UserStoreManager userStoreManager)
+            throws UserStoreException {
+        invalidate(userName, userStoreManager);
+        return true;
+    }
+
+    @Override
+    public boolean doPostDeleteUser(String userName, UserStoreManager userStoreManager) throws UserStoreException {
+        invalidate(userName, userStoreManager);
+        return true;
+    }
+
+    /**
+     * Drop the cached claim both with and without the user store domain, since the authenticated user may be
+     * resolved in either form.
+     */
+    private void invalidate(String userName, UserStoreManager userStoreManager) throws UserStoreException {
+        DuoMobileClaimCache mobileClaimCache = DuoAuthenticatorServiceComponent.getMobileClaimCache();
+        if (mobileClaimCache == null) {
+            return;
+        }
+        int tenantId = userStoreManager.getTenantId();
+        String domainAwareUserName = UserCoreUtil.addDomainToName(userName,
+                UserCoreUtil.getDomainName(userStoreManager.getRealmConfiguration()));
+        mobileClaimCache.invalidate(tenantId, userName);
+        mobileClaimCache.invalidate(tenantId, domainAwareUserName);
+        if (log.isDebugEnabled()) {
+            log.debug("Cleared the cached mobile claim of " + domainAwareUserName + " in tenant " + tenantId);
+        }
+    }
+}
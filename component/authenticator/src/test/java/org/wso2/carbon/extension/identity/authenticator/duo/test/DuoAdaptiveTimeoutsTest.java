@@ -0,0 +1,74 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoAdaptiveTimeouts;
+import org.wso2.carbon.identity.authenticator.duo.DuoLatencyEstimator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class DuoAdaptiveTimeoutsTest {
+
+    @Test(description = "Test case for the latency estimator staying close to the exact quantile.")
+    public void testQuantileEstimate() {
+        DuoLatencyEstimator estimator = new DuoLatencyEstimator(Integer.MAX_VALUE);
+        Random random = new Random(99);
+        long[] latencies = new long[10000];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = 50 + (long) (Math.abs(random.nextGaussian()) * 200);
+            estimator.record(latencies[i]);
+        }
+        Arrays.sort(latencies);
+        long exact = latencies[(int) Math.ceil(0.99 * latencies.length) - 1];
+        long estimate = estimator.getQuantile(0.99);
+        Assert.assertTrue(estimate >= exact && estimate <= exact * 1.13, exact + " estimated as " + estimate);
+        Assert.assertEquals(estimator.getSampleCount(), 10000L);
+    }
+
+    @Test(description = "Test case for the latency estimator following a change in latency.")
+    public void testDecay() {
+        DuoLatencyEstimator estimator = new DuoLatencyEstimator(100);
+        for (int i = 0; i < 1000; i++) {
+            estimator.record(2000);
+        }
+        for (int i = 0; i < 1000; i++) {
+            estimator.record(100);
+        }
+        Assert.assertTrue(estimator.getQuantile(0.99) < 120);
+    }
+
+    @Test(description = "Test case for timeouts derived from the p99 within the floor and the ceiling.")
+    public void testGetTimeoutMillis() {
+        DuoAdaptiveTimeouts timeouts = new DuoAdaptiveTimeouts(1000, 15000, 50, 20);
+        Assert.assertEquals(timeouts.getTimeoutMillis("api-1.duosecurity.com", "/admin/v1/users"), 15000L);
+        for (int i = 0; i < 100; i++) {
+            timeouts.record("API-1.duosecurity.com", "/admin/v1/users", 2000);
+            timeouts.record("api-1.duosecurity.com", "/auth/v2/check", 100);
+            timeouts.record("api-1.duosecurity.com", "/auth/v2/auth", 60000);
+        }
+        long timeout = timeouts.getTimeoutMillis("api-1.duosecurity.com", "/admin/v1/users");
+        Assert.assertTrue(timeout >= 3000 && timeout <= 3500, "timeout " + timeout);
+        Assert.assertEquals(timeout % 100, 0L);
+        Assert.assertEquals(timeouts.getTimeoutMillis("api-1.duosecurity.com", "/auth/v2/check"), 1000L);
+        Assert.assertEquals(timeouts.getTimeoutMillis("api-1.duosecurity.com", "/auth/v2/auth"), 15000L);
+    }
+}
@@ -38,6 +38,7 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.ObjectFactory;
 import org.testng.annotations.Test;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.identity.application.authentication.framework.LocalApplicationAuthenticator;
 import org.wso2.carbon.identity.application.authentication.framework.config.model.AuthenticatorConfig;
 import org.wso2.carbon.identity.application.authentication.framework.config.model.SequenceConfig;
@@ -50,32 +51,45 @@ import org.wso2.carbon.identity.application.common.model.Property;
 import org.wso2.carbon.identity.authenticator.duo.DuoAuthenticator;
 import org.wso2.carbon.identity.authenticator.duo.DuoAuthenticatorConstants;
 import org.wso2.carbon.identity.authenticator.duo.DuoHttp;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserInfoCache;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserPrefetcher;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserRecord;
 import org.wso2.carbon.identity.authenticator.duo.internal.DuoAuthenticatorServiceComponent;
 import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
 import org.wso2.carbon.identity.core.util.IdentityUtil;
 import org.wso2.carbon.user.core.UserRealm;
+import org.wso2.carbon.user.core.UserStoreException;
 import org.wso2.carbon.user.core.UserStoreManager;
 import org.wso2.carbon.user.core.service.RealmService;
 import org.wso2.carbon.utils.multitenancy.MultitenantUtils;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.verifyStatic;
 
 /**
  * Test case for Mobile based 2nd factor Local Authenticator
  */
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({IdentityTenantUtil.class, DuoAuthenticatorServiceComponent.class, FrameworkUtils.class,
-        IdentityUtil.class, DuoHttp.class, OkHttpClient.class,Request.class,Response.class})
+        IdentityUtil.class, DuoHttp.class, OkHttpClient.class,Request.class,Response.class,
+        PrivilegedCarbonContext.class})
 public class DuoAuthenticatorTest {
     private DuoAuthenticator duoAuthenticator;
 
@@ -203,6 +217,171 @@ public class DuoAuthenticatorTest {
                 "Cannot find the user realm for the given tenant: 0");
     }
 
+    @Test(description = "Test case for getMobileClaimValueInTenantFlow() method running in the user's tenant.")
+    public void testGetMobileClaimValueInTenantFlow() throws Exception {
+        mockStatic(IdentityTenantUtil.class);
+        mockStatic(DuoAuthenticatorServiceComponent.class);
+        mockStatic(PrivilegedCarbonContext.class);
+        PrivilegedCarbonContext carbonContext = mock(PrivilegedCarbonContext.class);
+        when(PrivilegedCarbonContext.getThreadLocalCarbonContext()).thenReturn(carbonContext);
+        when(IdentityTenantUtil.getTenantIdOfUser(anyString())).thenReturn(1);
+        when(DuoAuthenticatorServiceComponent.getRealmService()).thenReturn(realmService);
+        when(realmService.getTenantUserRealm(1)).thenReturn(userRealm);
+        when(userRealm.getUserStoreManager()).thenReturn(userStoreManager);
+        when(userStoreManager.getUserClaimValue("alice", DuoAuthenticatorConstants.MOBILE_CLAIM, null))
+                .thenReturn("0771234565");
+        Assert.assertEquals(Whitebox.invokeMethod(duoAuthenticator, "getMobileClaimValueInTenantFlow",
+                "alice@wso2.com"), "0771234565");
+        verify(carbonContext).setTenantDomain("wso2.com", true);
+        verifyStatic();
+        PrivilegedCarbonContext.startTenantFlow();
+        verifyStatic();
+        PrivilegedCarbonContext.endTenantFlow();
+    }
+
+    @Test(description = "Test case for awaitMobileClaimValue() method reading the claim again when the prefetch " +
+            "failed.")
+    public void testAwaitMobileClaimValueWithFailedPrefetch() throws Exception {
+        mockStatic(IdentityTenantUtil.class);
+        mockStatic(DuoAuthenticatorServiceComponent.class);
+        when(IdentityTenantUtil.getTenantIdOfUser(anyString())).thenReturn(-1234);
+        when(DuoAuthenticatorServiceComponent.getRealmService()).thenReturn(realmService);
+        when(realmService.getTenantUserRealm(-1234)).thenReturn(userRealm);
+        when(userRealm.getUserStoreManager()).thenReturn(userStoreManager);
+        when(userStoreManager.getUserClaimValue("admin", DuoAuthenticatorConstants.MOBILE_CLAIM, null))
+                .thenReturn("0771234565");
+        CompletableFuture<String> mobileClaim = new CompletableFuture<>();
+        mobileClaim.completeExceptionally(new IOException("user store down"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        Assert.assertEquals(Whitebox.invokeMethod(duoAuthenticator, "awaitMobileClaimValue", mobileClaim,
+                "admin", deadline), "0771234565");
+    }
+
+    @Test(description = "Test case for checkPhoneNumberValidation() cancelling the DUO lookup when reading the " +
+            "mobile claim fails.")
+    public void testCheckPhoneNumberValidationWithClaimFailure() throws Exception {
+        CompletableFuture<DuoUserRecord> pendingUserInfo = mockPendingUserInfo();
+        when(userStoreManager.getUserClaimValue("admin", DuoAuthenticatorConstants.MOBILE_CLAIM, null))
+                .thenThrow(new UserStoreException("user store down"));
+        try {
+            Whitebox.invokeMethod(duoAuthenticator, "checkPhoneNumberValidation", context, "admin",
+                    System.nanoTime() + TimeUnit.SECONDS.toNanos(5));
+            Assert.fail("Reading the mobile claim should fail");
+        } catch (AuthenticationFailedException e) {
+            Assert.assertTrue(pendingUserInfo.isCancelled());
+            Assert.assertNull(context.getProperty(DuoAuthenticatorConstants.MOBILE_CLAIM_NOT_FOUND));
+            Assert.assertNull(context.getProperty(DuoAuthenticatorConstants.USER_NOT_REGISTERED_IN_DUO));
+        }
+    }
+
+    @Test(description = "Test case for checkPhoneNumberValidation() with an empty mobile claim.")
+    public void testCheckPhoneNumberValidationWithoutMobileClaim() throws Exception {
+        CompletableFuture<DuoUserRecord> pendingUserInfo = mockPendingUserInfo();
+        when(userStoreManager.getUserClaimValue("admin", DuoAuthenticatorConstants.MOBILE_CLAIM, null))
+                .thenReturn(null);
+        try {
+            Whitebox.invokeMethod(duoAuthenticator, "checkPhoneNumberValidation", context, "admin",
+                    System.nanoTime() + TimeUnit.SECONDS.toNanos(5));
+            Assert.fail("A user without a mobile claim should not be authenticated");
+        } catch (AuthenticationFailedException e) {
+            Assert.assertTrue(pendingUserInfo.isCancelled());
+            Assert.assertEquals(context.getProperty(DuoAuthenticatorConstants.MOBILE_CLAIM_NOT_FOUND), true);
+            Assert.assertNull(context.getProperty(DuoAuthenticatorConstants.USER_NOT_REGISTERED_IN_DUO));
+        }
+    }
+
+    @Test(description = "Test case for checkPhoneNumberValidation() with a user who is not registered in DUO.")
+    public void testCheckPhoneNumberValidationWithUnregisteredUser() throws Exception {
+        CompletableFuture<DuoUserRecord> pendingUserInfo = mockPendingUserInfo();
+        when(userStoreManager.getUserClaimValue("admin", DuoAuthenticatorConstants.MOBILE_CLAIM, null))
+                .thenReturn("0771234565");
+        pendingUserInfo.complete(new DuoUserRecord(false, null));
+        try {
+            Whitebox.invokeMethod(duoAuthenticator, "checkPhoneNumberValidation", context, "admin",
+                    System.nanoTime() + TimeUnit.SECONDS.toNanos(5));
+            Assert.fail("A user who is not registered in DUO should not be authenticated");
+        } catch (AuthenticationFailedException e) {
+            Assert.assertEquals(context.getProperty(DuoAuthenticatorConstants.USER_NOT_REGISTERED_IN_DUO), true);
+            Assert.assertNull(context.getProperty(DuoAuthenticatorConstants.MOBILE_CLAIM_NOT_FOUND));
+        }
+    }
+
+    @Test(description = "Test case for checkPhoneNumberValidation() reading the DUO user again when the prefetched " +
+            "record says the user is not registered.")
+    public void testCheckPhoneNumberValidationWithStalePrefetch() throws Exception {
+        CompletableFuture<DuoUserRecord> pendingUserInfo = mockPendingUserInfo();
+        pendingUserInfo.complete(new DuoUserRecord(true, new String[]{"0771234565"}));
+        DuoUserPrefetcher userPrefetcher = new DuoUserPrefetcher(60000, 10, 1);
+        try {
+            when(DuoAuthenticatorServiceComponent.getUserPrefetcher()).thenReturn(userPrefetcher);
+            context.setContextIdentifier("context-1");
+            userPrefetcher.prefetch("context-1", "admin",
+                    CompletableFuture.completedFuture(new DuoUserRecord(false, null)), () -> "0771234565");
+            Whitebox.invokeMethod(duoAuthenticator, "checkPhoneNumberValidation", context, "admin",
+                    System.nanoTime() + TimeUnit.SECONDS.toNanos(5));
+            Assert.assertNull(context.getProperty(DuoAuthenticatorConstants.USER_NOT_REGISTERED_IN_DUO));
+            Assert.assertNotNull(context.getSubject());
+            verify(DuoAuthenticatorServiceComponent.getUserInfoCache()).invalidate("api-test.duosecurity.com",
+                    "admin");
+        } finally {
+            userPrefetcher.shutdown();
+        }
+    }
+
+    @Test(description = "Test case for checkPhoneNumberValidation() reading the DUO user again when the cached " +
+            "record says the user is not registered.")
+    public void testCheckPhoneNumberValidationWithStaleNegativeEntry() throws Exception {
+        mockPendingUserInfo();
+        when(userStoreManager.getUserClaimValue("admin", DuoAuthenticatorConstants.MOBILE_CLAIM, null))
+                .thenReturn("0771234565");
+        DuoUserInfoCache userInfoCache = DuoAuthenticatorServiceComponent.getUserInfoCache();
+        when(userInfoCache.get(anyString(), anyString(), any(Supplier.class))).thenReturn(
+                CompletableFuture.completedFuture(new DuoUserRecord(false, null)),
+                CompletableFuture.completedFuture(new DuoUserRecord(true, new String[]{"0771234565"})));
+        Whitebox.invokeMethod(duoAuthenticator, "checkPhoneNumberValidation", context, "admin",
+                System.nanoTime() + TimeUnit.SECONDS.toNanos(5));
+        Assert.assertNull(context.getProperty(DuoAuthenticatorConstants.USER_NOT_REGISTERED_IN_DUO));
+        Assert.assertNotNull(context.getSubject());
+        verify(userInfoCache).invalidate("api-test.duosecurity.com", "admin");
+    }
+
+    @Test(description = "Test case for checkPhoneNumberValidation() reading the DUO user again when the phone of " +
+            "the cached record does not match.")
+    public void testCheckPhoneNumberValidationWithStalePhone() throws Exception {
+        mockPendingUserInfo();
+        when(userStoreManager.getUserClaimValue("admin", DuoAuthenticatorConstants.MOBILE_CLAIM, null))
+                .thenReturn("0771234565");
+        DuoUserInfoCache userInfoCache = DuoAuthenticatorServiceComponent.getUserInfoCache();
+        when(userInfoCache.get(anyString(), anyString(), any(Supplier.class))).thenReturn(
+                CompletableFuture.completedFuture(new DuoUserRecord(true, new String[]{"0770000000"})),
+                CompletableFuture.completedFuture(new DuoUserRecord(true, new String[]{"0771234565"})));
+        Whitebox.invokeMethod(duoAuthenticator, "checkPhoneNumberValidation", context, "admin",
+                System.nanoTime() + TimeUnit.SECONDS.toNanos(5));
+        Assert.assertNull(context.getProperty(DuoAuthenticatorConstants.NUMBER_MISMATCH));
+        Assert.assertNotNull(context.getSubject());
+        verify(userInfoCache).invalidate("api-test.duosecurity.com", "admin");
+    }
+
+    @Test(description = "Test case for getUserInfoAsync() not resolving the tenant of the user on a cache hit.")
+    public void testGetUserInfoAsyncWithCacheHit() throws Exception {
+        mockStatic(IdentityTenantUtil.class);
+        mockStatic(DuoAuthenticatorServiceComponent.class);
+        DuoUserRecord userRecord = new DuoUserRecord(true, new String[]{"0771234565"});
+        DuoUserInfoCache userInfoCache = mock(DuoUserInfoCache.class);
+        when(userInfoCache.get(anyString(), anyString(), any(Supplier.class)))
+                .thenReturn(CompletableFuture.completedFuture(userRecord));
+        when(DuoAuthenticatorServiceComponent.getUserInfoCache()).thenReturn(userInfoCache);
+        Map<String, String> authenticatorProperties = new HashMap<>();
+        authenticatorProperties.put(DuoAuthenticatorConstants.HOST, "api-test.duosecurity.com");
+        context.setAuthenticatorProperties(authenticatorProperties);
+        context.setProperty(DuoAuthenticatorConstants.DUO_USERNAME, "admin");
+        CompletableFuture<DuoUserRecord> userInfo = Whitebox.invokeMethod(duoAuthenticator, "getUserInfoAsync",
+                context, "admin");
+        Assert.assertSame(userInfo.get(), userRecord);
+        verifyStatic(never());
+        IdentityTenantUtil.getTenantIdOfUser(anyString());
+    }
+
     @Test(description = "Test case for checkStatusCode() with number mis match")
     public void testCheckStatusCodeWithNumberMismatch() throws Exception {
         mockStatic(FrameworkUtils.class);
@@ -270,6 +449,28 @@ public class DuoAuthenticatorTest {
         Assert.assertEquals(configProperties.size(), duoAuthenticator.getConfigurationProperties().size());
     }
 
+    /**
+     * Make the DUO user lookup of "admin" return a future that the test completes, and read the mobile claim from
+     * the mocked user store.
+     */
+    private CompletableFuture<DuoUserRecord> mockPendingUserInfo() throws Exception {
+        mockStatic(IdentityTenantUtil.class);
+        mockStatic(DuoAuthenticatorServiceComponent.class);
+        CompletableFuture<DuoUserRecord> pendingUserInfo = new CompletableFuture<>();
+        DuoUserInfoCache userInfoCache = mock(DuoUserInfoCache.class);
+        when(userInfoCache.get(anyString(), anyString(), any(Supplier.class))).thenReturn(pendingUserInfo);
+        when(DuoAuthenticatorServiceComponent.getUserInfoCache()).thenReturn(userInfoCache);
+        when(IdentityTenantUtil.getTenantIdOfUser(anyString())).thenReturn(-1234);
+        when(DuoAuthenticatorServiceComponent.getRealmService()).thenReturn(realmService);
+        when(realmService.getTenantUserRealm(-1234)).thenReturn(userRealm);
+        when(userRealm.getUserStoreManager()).thenReturn(userStoreManager);
+        Map<String, String> authenticatorProperties = new HashMap<>();
+        authenticatorProperties.put(DuoAuthenticatorConstants.HOST, "api-test.duosecurity.com");
+        context.setAuthenticatorProperties(authenticatorProperties);
+        context.setProperty(DuoAuthenticatorConstants.DUO_USERNAME, "admin");
+        return pendingUserInfo;
+    }
+
     @ObjectFactory
     public IObjectFactory getObjectFactory() {
         return new PowerMockObjectFactory();
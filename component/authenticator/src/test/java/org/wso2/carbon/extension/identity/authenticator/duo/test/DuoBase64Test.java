@@ -0,0 +1,70 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoBase64;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class DuoBase64Test {
+
+    @Test(description = "Test case for the JDK backed paths producing the same results as the general codec.")
+    public void testEncodeDecode() throws Exception {
+        Random random = new Random(42);
+        for (int size = 0; size < 300; size++) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            String encoded = DuoBase64.encodeBytes(data);
+            // Line breaking is only applied every 57 bytes, so short payloads take the general encoder unchanged.
+            if (size < 57) {
+                Assert.assertEquals(DuoBase64.encodeBytes(data, 0, size, DuoBase64.DO_BREAK_LINES), encoded);
+            }
+            Assert.assertEquals(DuoBase64.encodeBytes(ByteBuffer.wrap(data)), encoded);
+            if (size == 0) {
+                continue;
+            }
+            byte[] expected = DuoBase64.decode(encoded, DuoBase64.DONT_GUNZIP);
+            Assert.assertEquals(expected, data);
+            // White space is rejected by the JDK decoder, so this takes the general decoder.
+            Assert.assertEquals(DuoBase64.decode(" " + encoded, DuoBase64.DONT_GUNZIP), expected);
+            byte[] destination = new byte[size + 2];
+            Assert.assertEquals(DuoBase64.decode("x" + encoded + "x", 1, encoded.length(), destination, 2), size);
+            Assert.assertEquals(DuoBase64.decode(ByteBuffer.wrap(encoded.getBytes("US-ASCII"))).remaining(), size);
+        }
+    }
+
+    @Test(description = "Test case for the offset based encode() writing into the destination array.")
+    public void testEncodeOffset() throws Exception {
+        byte[] data = "xxHello Worldxx".getBytes("US-ASCII");
+        byte[] destination = new byte[20];
+        int length = DuoBase64.encode(data, 2, 11, destination, 2, DuoBase64.NO_OPTIONS);
+        Assert.assertEquals(new String(destination, 2, length, "US-ASCII"), "SGVsbG8gV29ybGQ=");
+        Assert.assertEquals(DuoBase64.encodeBytes(data, 2, 11, DuoBase64.NO_OPTIONS), "SGVsbG8gV29ybGQ=");
+    }
+
+    @Test(description = "Test case for non canonical input keeping the behaviour of the general decoder.")
+    public void testDecodeNonCanonical() throws Exception {
+        Assert.assertEquals(new String(DuoBase64.decode("SGk=ignored"), "US-ASCII"), "Hi");
+        Assert.assertEquals(new String(DuoBase64.decode("SGVs\nbG8="), "US-ASCII"), "Hello");
+        Assert.assertEquals(new String(DuoBase64.decode("SGVsbG8"), "US-ASCII"), "Hel");
+    }
+}
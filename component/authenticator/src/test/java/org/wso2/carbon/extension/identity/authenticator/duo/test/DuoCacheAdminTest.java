@@ -0,0 +1,104 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoMobileClaimCache;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserInfoCache;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserRecord;
+import org.wso2.carbon.identity.authenticator.duo.internal.DuoAuthenticatorServiceComponent;
+import org.wso2.carbon.identity.authenticator.duo.internal.DuoCacheAdmin;
+import org.wso2.carbon.identity.core.util.IdentityTenantUtil;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({DuoAuthenticatorServiceComponent.class, IdentityTenantUtil.class})
+public class DuoCacheAdminTest {
+
+    private static final String HOST = "api-1.duosecurity.com";
+
+    private DuoCacheAdmin cacheAdmin;
+    private DuoUserInfoCache userInfoCache;
+    private DuoMobileClaimCache mobileClaimCache;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        cacheAdmin = new DuoCacheAdmin();
+        userInfoCache = new DuoUserInfoCache(60000, 60000, 0, 10);
+        for (String username : new String[]{"alice", "bob"}) {
+            userInfoCache.get(HOST, username, () -> CompletableFuture.completedFuture(
+                    new DuoUserRecord(true, new String[]{"+94771234567"}))).get();
+        }
+        mobileClaimCache = new DuoMobileClaimCache(60000, 10);
+        mobileClaimCache.putMobileClaim(-1234, "alice", "+94771234567");
+        mobileClaimCache.putMobileClaim(1, "bob", "+94777654321");
+        mockStatic(DuoAuthenticatorServiceComponent.class);
+        mockStatic(IdentityTenantUtil.class);
+        when(DuoAuthenticatorServiceComponent.getUserInfoCache()).thenReturn(userInfoCache);
+        when(DuoAuthenticatorServiceComponent.getMobileClaimCache()).thenReturn(mobileClaimCache);
+        when(IdentityTenantUtil.getTenantIdOfUser("alice")).thenReturn(-1234);
+        when(IdentityTenantUtil.getTenantIdOfUser("bob@wso2.com")).thenReturn(1);
+    }
+
+    @Test(description = "Test case for clearing the cached Duo user information of one user and of every user.")
+    public void testInvalidateUserInfo() {
+        Assert.assertEquals(cacheAdmin.getUserInfoCacheSize(), 2);
+        cacheAdmin.invalidateUserInfo(HOST, "alice");
+        Assert.assertEquals(cacheAdmin.getUserInfoCacheSize(), 1);
+        cacheAdmin.invalidateAllUserInfo();
+        Assert.assertEquals(cacheAdmin.getUserInfoCacheSize(), 0);
+    }
+
+    @Test(description = "Test case for clearing the cached mobile claim of one user and of every user.")
+    public void testInvalidateMobileClaim() {
+        cacheAdmin.invalidateMobileClaim("bob@wso2.com");
+        Assert.assertNull(mobileClaimCache.getMobileClaim(1, "bob"));
+        Assert.assertEquals(mobileClaimCache.getMobileClaim(-1234, "alice"), "+94771234567");
+        cacheAdmin.invalidateAllMobileClaims();
+        Assert.assertNull(mobileClaimCache.getMobileClaim(-1234, "alice"));
+    }
+
+    @Test(description = "Test case for the operations doing nothing while the caches are disabled.")
+    public void testCachesDisabled() {
+        when(DuoAuthenticatorServiceComponent.getUserInfoCache()).thenReturn(null);
+        when(DuoAuthenticatorServiceComponent.getMobileClaimCache()).thenReturn(null);
+        cacheAdmin.invalidateAllUserInfo();
+        cacheAdmin.invalidateAllMobileClaims();
+        Assert.assertEquals(cacheAdmin.getUserInfoCacheSize(), -1);
+        Assert.assertEquals(userInfoCache.size(), 2);
+        Assert.assertEquals(mobileClaimCache.getMobileClaim(-1234, "alice"), "+94771234567");
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+        return new PowerMockObjectFactory();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoCanonicalizer;
+
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class DuoCanonicalizerTest {
+
+    @Test(description = "Test case for queryString() matching the URLEncoder based encoding it replaced.")
+    public void testQueryString() throws Exception {
+        Random random = new Random(3986);
+        String alphabet = "aZ09-._~*+ /=&%?\u00e9\u4e2d\ud83d\ude00\ud800";
+        for (int i = 0; i < 2000; i++) {
+            TreeMap<String, String> params = new TreeMap<>();
+            for (int j = random.nextInt(4); j >= 0; j--) {
+                params.put(randomString(random, alphabet), randomString(random, alphabet));
+            }
+            Assert.assertEquals(DuoCanonicalizer.queryString(params), legacyQueryString(params));
+        }
+    }
+
+    @Test(description = "Test case for canonRequest() building a version 2 canonical request.")
+    public void testCanonRequest() {
+        Assert.assertEquals(DuoCanonicalizer.canonRequest("Tue, 21 Aug 2012 17:29:18 -0000", 2, "POST",
+                "API-XXXXXXXX.duosecurity.com", "/admin/v1/users", "realname=First%20Last&username=root"),
+                "Tue, 21 Aug 2012 17:29:18 -0000\nPOST\napi-xxxxxxxx.duosecurity.com\n/admin/v1/users\n"
+                        + "realname=First%20Last&username=root");
+        Assert.assertEquals(DuoCanonicalizer.canonRequest("ignored", 1, "GET", "host", "/check", ""),
+                "GET\nhost\n/check\n");
+    }
+
+    @Test(description = "Test case for appendJsonString() escaping values like Duo's reference clients.")
+    public void testAppendJsonString() {
+        StringBuilder builder = new StringBuilder();
+        DuoCanonicalizer.appendJsonString(builder, "a\"b\\c\n\t\u0001\u007f\u00e9\ud83d\ude00");
+        Assert.assertEquals(builder.toString(), "\"a\\\"b\\\\c\\n\\t\\u0001\u007f\\u00e9\\ud83d\\ude00\"");
+    }
+
+    private static String randomString(Random random, String alphabet) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = random.nextInt(6); i > 0; i--) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+
+    private static String legacyQueryString(Map<String, String> params) throws Exception {
+        List<String> keys = new ArrayList<>(params.keySet());
+        Collections.sort(keys);
+        StringBuilder builder = new StringBuilder();
+        for (String key : keys) {
+            if (builder.length() > 0) {
+                builder.append('&');
+            }
+            builder.append(URLEncoder.encode(key, "UTF-8").replace("+", "%20").replace("*", "%2A")
+                    .replace("%7E", "~"));
+            builder.append('=');
+            builder.append(URLEncoder.encode(params.get(key), "UTF-8").replace("+", "%20").replace("*", "%2A")
+                    .replace("%7E", "~"));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.json.JSONException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoCircuitBreaker;
+import org.wso2.carbon.identity.authenticator.duo.DuoCircuitBreakerRegistry;
+
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class DuoCircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(20);
+
+    @Test(description = "Test case for the circuit breaker opening when the failure rate is reached.")
+    public void testOpenOnFailureRate() {
+        DuoCircuitBreaker circuitBreaker = new DuoCircuitBreaker("host", 10, 4, 50, 101, 10000, 60000, 2);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(circuitBreaker.tryAcquire());
+            circuitBreaker.onFailure(FAST);
+        }
+        Assert.assertEquals(circuitBreaker.getState(), DuoCircuitBreaker.State.CLOSED);
+        Assert.assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onSuccess(FAST);
+        Assert.assertEquals(circuitBreaker.getState(), DuoCircuitBreaker.State.OPEN);
+        Assert.assertFalse(circuitBreaker.tryAcquire());
+        Assert.assertEquals(circuitBreaker.getRejectedCount(), 1L);
+        Assert.assertEquals(circuitBreaker.getOpenedCount(), 1L);
+    }
+
+    @Test(description = "Test case for the circuit breaker staying closed below the thresholds.")
+    public void testStayClosed() {
+        DuoCircuitBreaker circuitBreaker = new DuoCircuitBreaker("host", 10, 4, 50, 101, 10000, 60000, 2);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(circuitBreaker.tryAcquire());
+            if (i % 3 == 2) {
+                circuitBreaker.onFailure(FAST);
+            } else {
+                circuitBreaker.onSuccess(SLOW);
+            }
+        }
+        Assert.assertEquals(circuitBreaker.getState(), DuoCircuitBreaker.State.CLOSED);
+        Assert.assertTrue(circuitBreaker.getFailureRate() < 50);
+    }
+
+    @Test(description = "Test case for the circuit breaker opening when the slow call rate is reached.")
+    public void testOpenOnSlowCallRate() {
+        DuoCircuitBreaker circuitBreaker = new DuoCircuitBreaker("host", 4, 4, 100, 75, 10000, 60000, 2);
+        circuitBreaker.onSuccess(SLOW);
+        circuitBreaker.onSuccess(FAST);
+        circuitBreaker.onSuccess(SLOW);
+        Assert.assertEquals(circuitBreaker.getState(), DuoCircuitBreaker.State.CLOSED);
+        circuitBreaker.onSuccess(SLOW);
+        Assert.assertEquals(circuitBreaker.getState(), DuoCircuitBreaker.State.OPEN);
+    }
+
+    @Test(description = "Test case for the half-open trial calls closing or reopening the circuit breaker.")
+    public void testHalfOpen() throws Exception {
+        DuoCircuitBreaker circuitBreaker = new DuoCircuitBreaker("host", 2, 2, 50, 101, 10000, 50, 2);
+        circuitBreaker.onFailure(FAST);
+        circuitBreaker.onFailure(FAST);
+        Assert.assertEquals(circuitBreaker.getState(), DuoCircuitBreaker.State.OPEN);
+        Thread.sleep(80);
+        Assert.assertEquals(circuitBreaker.getState(), DuoCircuitBreaker.State.HALF_OPEN);
+        Assert.assertTrue(circuitBreaker.tryAcquire());
+        Assert.assertTrue(circuitBreaker.tryAcquire());
+        Assert.assertFalse(circuitBreaker.tryAcquire());
+        circuitBreaker.onIgnored();
+        Assert.assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onSuccess(FAST);
+        circuitBreaker.onFailure(FAST);
+        Assert.assertEquals(circuitBreaker.getState(), DuoCircuitBreaker.State.OPEN);
+
+        Thread.sleep(80);
+        Assert.assertTrue(circuitBreaker.tryAcquire());
+        Assert.assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onSuccess(FAST);
+        circuitBreaker.onSuccess(FAST);
+        Assert.assertEquals(circuitBreaker.getState(), DuoCircuitBreaker.State.CLOSED);
+        Assert.assertEquals(circuitBreaker.getOpenedCount(), 2L);
+    }
+
+    @Test(description = "Test case for the registry keeping one circuit breaker per host.")
+    public void testRegistry() {
+        DuoCircuitBreakerRegistry registry = new DuoCircuitBreakerRegistry(2, 2, 50, 101, 10000, 60000, 1);
+        Assert.assertTrue(registry.get("API-1.duosecurity.com") == registry.get("api-1.duosecurity.com"));
+        registry.get("api-1.duosecurity.com").onFailure(FAST);
+        registry.get("api-1.duosecurity.com").onFailure(FAST);
+        Assert.assertEquals(registry.getStates().get("api-1.duosecurity.com"), DuoCircuitBreaker.State.OPEN);
+        Assert.assertEquals(registry.get("api-2.duosecurity.com").getState(), DuoCircuitBreaker.State.CLOSED);
+    }
+
+    @Test(description = "Test case for only transport failures, timeouts and 5xx and 429 replies counting as failures.")
+    public void testIsFailure() {
+        Assert.assertTrue(DuoCircuitBreaker.isFailure(new UnknownHostException("api-1.duosecurity.com"), 0));
+        Assert.assertTrue(DuoCircuitBreaker.isFailure(new CompletionException(new SocketTimeoutException()), 0));
+        Assert.assertTrue(DuoCircuitBreaker.isFailure(new TimeoutException(), 0));
+        Assert.assertTrue(DuoCircuitBreaker.isFailure(new Exception("Duo error code (50000): Internal error"), 500));
+        Assert.assertTrue(DuoCircuitBreaker.isFailure(new Exception("Duo error code (42901): Too Many Requests"), 429));
+        Assert.assertFalse(DuoCircuitBreaker.isFailure(new Exception("Duo error code (40002): Invalid request"), 400));
+        Assert.assertFalse(DuoCircuitBreaker.isFailure(new Exception("Duo error code (40103)"), 401));
+        Assert.assertFalse(DuoCircuitBreaker.isFailure(new JSONException("Malformed JSON"), 200));
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoConnectionWarmer;
+
+public class DuoConnectionWarmerTest {
+
+    @Test(description = "Test case for signing and verifying requests with the warm-up keys.")
+    public void testSign() throws Exception {
+        DuoConnectionWarmer.sign(5);
+    }
+
+    @Test(description = "Test case for ignoring hosts that are blank.")
+    public void testWarmUpBlankHost() {
+        DuoConnectionWarmer connectionWarmer = new DuoConnectionWarmer(1, 1000);
+        try {
+            connectionWarmer.warmUp(null);
+            connectionWarmer.warmUp(" ");
+            Assert.assertFalse(connectionWarmer.isWarmedUp(null));
+            Assert.assertFalse(connectionWarmer.isWarmedUp(" "));
+        } finally {
+            connectionWarmer.shutdown();
+        }
+    }
+
+    @Test(description = "Test case for a host counting as warmed up for the keep-alive duration only.")
+    public void testWarmUpExpiry() throws Exception {
+        DuoConnectionWarmer connectionWarmer = new DuoConnectionWarmer(1, 1000, 50);
+        // Shut down first, so that the mark is not dropped by a failed connection attempt.
+        connectionWarmer.shutdown();
+        connectionWarmer.warmUp("API-test.duosecurity.com");
+        Assert.assertTrue(connectionWarmer.isWarmedUp("api-test.duosecurity.com"));
+        Thread.sleep(80);
+        Assert.assertFalse(connectionWarmer.isWarmedUp("api-test.duosecurity.com"));
+        connectionWarmer.warmUp("api-test.duosecurity.com");
+        Assert.assertTrue(connectionWarmer.isWarmedUp("api-test.duosecurity.com"));
+    }
+}
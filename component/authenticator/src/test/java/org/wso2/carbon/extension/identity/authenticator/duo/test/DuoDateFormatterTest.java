@@ -0,0 +1,77 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoDateFormatter;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class DuoDateFormatterTest {
+
+    @Test(description = "Test case for format() matching the SimpleDateFormat it replaced.")
+    public void testFormat() {
+        SimpleDateFormat expected = new SimpleDateFormat("EEE', 'dd' 'MMM' 'yyyy' 'HH:mm:ss' 'Z", Locale.US);
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            long millis = Math.abs(random.nextLong()) % 4102444800000L;
+            Assert.assertEquals(DuoDateFormatter.format(millis), expected.format(new Date(millis)));
+            Assert.assertEquals(DuoDateFormatter.format(millis + 1), expected.format(new Date(millis + 1)));
+        }
+    }
+
+    @Test(description = "Test case for concurrent callers formatting across second boundaries.")
+    public void testFormatConcurrent() throws Exception {
+        final SimpleDateFormat expected = new SimpleDateFormat("EEE', 'dd' 'MMM' 'yyyy' 'HH:mm:ss' 'Z", Locale.US);
+        final long start = 1500000000000L;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int offset = t;
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        long millis = start + (i + offset) * 250L;
+                        String value = DuoDateFormatter.format(millis);
+                        synchronized (expected) {
+                            if (!value.equals(expected.format(new Date(millis)))) {
+                                return false;
+                            }
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoHmacSigner;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class DuoHmacSignerTest {
+
+    @Test(description = "Test case for signing with pooled Mac instances across secrets and algorithms.")
+    public void testSign() throws Exception {
+        byte[] data = "Hello World".getBytes(Charset.forName("UTF-8"));
+        for (int i = 0; i < 3; i++) {
+            for (String secret : new String[]{"secret1", "secret2"}) {
+                for (String algorithm : new String[]{"HmacSHA1", "HmacSHA512"}) {
+                    Mac mac = Mac.getInstance(algorithm);
+                    mac.init(new SecretKeySpec(secret.getBytes(), algorithm));
+                    byte[] expected = mac.doFinal(data);
+                    Assert.assertEquals(DuoHmacSigner.sign(algorithm, secret, data), expected);
+                    Assert.assertEquals(DuoHmacSigner.sign(algorithm, secret.getBytes(), data), expected);
+                }
+            }
+        }
+    }
+
+    @Test(description = "Test case for signing a range of bytes with a pooled Mac.")
+    public void testSignRange() throws Exception {
+        byte[] data = "xxdataxx".getBytes(Charset.forName("UTF-8"));
+        byte[] expected = DuoHmacSigner.sign(DuoHmacSigner.HMAC_SHA1, "10", "data".getBytes(Charset.forName("UTF-8")));
+        Assert.assertEquals(DuoHmacSigner.sign(DuoHmacSigner.HMAC_SHA1, "10", data, 2, 4), expected);
+        Assert.assertEquals(DuoHmacSigner.toHex(expected), "1dcb5e97a5b7fc5331d85b68e011de62b900d28f");
+    }
+
+    @Test(description = "Test case for secrets used once staying out of the pool, and the pool being cleared.")
+    public void testPool() throws Exception {
+        byte[] data = "data".getBytes(Charset.forName("UTF-8"));
+        DuoHmacSigner.clear();
+        Mac mac = DuoHmacSigner.newMac(DuoHmacSigner.HMAC_SHA1, "10");
+        Assert.assertEquals(DuoHmacSigner.toHex(mac.doFinal(data)), "1dcb5e97a5b7fc5331d85b68e011de62b900d28f");
+        Assert.assertEquals(DuoHmacSigner.getPooledSecretCount(), 0);
+        for (int i = 0; i < 100; i++) {
+            DuoHmacSigner.sign(DuoHmacSigner.HMAC_SHA1, "secret" + i, data);
+        }
+        Assert.assertEquals(DuoHmacSigner.getPooledSecretCount(), 64);
+        DuoHmacSigner.clear();
+        Assert.assertEquals(DuoHmacSigner.getPooledSecretCount(), 0);
+    }
+
+    @Test(description = "Test case for pooled Mac instances being used by one thread at a time.")
+    public void testConcurrentSign() throws Exception {
+        final byte[] data = "Hello World".getBytes(Charset.forName("UTF-8"));
+        final byte[] expected = DuoHmacSigner.sign(DuoHmacSigner.HMAC_SHA512, "secret", data);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    if (!Arrays.equals(DuoHmacSigner.sign(DuoHmacSigner.HMAC_SHA512, "secret", data), expected)) {
+                        return false;
+                    }
+                }
+                return true;
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            Assert.assertTrue(result.get());
+        }
+        executor.shutdown();
+    }
+
+    @Test(description = "Test case for toHex() with an offset and a buffer larger than the default.")
+    public void testToHex() {
+        byte[] bytes = new byte[100];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 7);
+        }
+        StringBuilder expected = new StringBuilder();
+        for (int i = 10; i < bytes.length; i++) {
+            expected.append(String.format("%02x", bytes[i] & 0xff));
+        }
+        Assert.assertEquals(DuoHmacSigner.toHex(bytes, 10, 90), expected.toString());
+        Assert.assertEquals(DuoHmacSigner.toHex(new byte[]{0, -1, 16}), "00ff10");
+    }
+
+    @Test(description = "Test case for isEqualHex() accepting only the exact lowercase hex encoding.")
+    public void testIsEqualHex() throws Exception {
+        byte[] mac = DuoHmacSigner.sign(DuoHmacSigner.HMAC_SHA1, "10", "data".getBytes(Charset.forName("UTF-8")));
+        Assert.assertTrue(DuoHmacSigner.isEqualHex(mac, "1dcb5e97a5b7fc5331d85b68e011de62b900d28f"));
+        Assert.assertFalse(DuoHmacSigner.isEqualHex(mac, "1DCB5E97A5B7FC5331D85B68E011DE62B900D28F"));
+        Assert.assertFalse(DuoHmacSigner.isEqualHex(mac, "1dcb5e97a5b7fc5331d85b68e011de62b900d28e"));
+        Assert.assertFalse(DuoHmacSigner.isEqualHex(mac, "1dcb5e97a5b7fc5331d85b68e011de62b900d2"));
+        Assert.assertFalse(DuoHmacSigner.isEqualHex(mac, ""));
+        Assert.assertFalse(DuoHmacSigner.isEqualHex(mac, null));
+    }
+}
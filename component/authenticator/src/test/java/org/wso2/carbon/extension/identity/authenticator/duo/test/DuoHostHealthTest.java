@@ -0,0 +1,53 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoHostHealth;
+
+public class DuoHostHealthTest {
+
+    @Test(description = "Test case for the rolling availability and latency of a host.")
+    public void testRollingHealth() {
+        DuoHostHealth health = new DuoHostHealth("api-1.duosecurity.com", 4, 2);
+        Assert.assertTrue(health.isAvailable());
+        Assert.assertEquals(health.getAvailability(), -1.0, 0.0);
+        Assert.assertEquals(health.getAverageLatencyMillis(), -1L);
+
+        health.record(true, 100, null);
+        health.record(true, 300, null);
+        health.record(false, 5000, "timeout");
+        Assert.assertTrue(health.isAvailable());
+        Assert.assertEquals(health.getAvailability(), 2.0 / 3, 0.001);
+        Assert.assertEquals(health.getAverageLatencyMillis(), 200L);
+        Assert.assertEquals(health.getLastError(), "timeout");
+
+        health.record(false, 5000, "timeout");
+        Assert.assertFalse(health.isAvailable());
+        Assert.assertEquals(health.getConsecutiveFailures(), 2);
+
+        health.record(true, 500, null);
+        Assert.assertTrue(health.isAvailable());
+        Assert.assertEquals(health.getAvailability(), 0.5, 0.001);
+        Assert.assertEquals(health.getAverageLatencyMillis(), 400L);
+        Assert.assertNull(health.getLastError());
+        Assert.assertTrue(health.getLastCheckedAt() > 0);
+    }
+}
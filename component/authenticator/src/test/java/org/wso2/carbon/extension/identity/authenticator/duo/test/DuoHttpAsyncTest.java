@@ -0,0 +1,322 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoAuthenticatorConstants;
+import org.wso2.carbon.identity.authenticator.duo.DuoHttp;
+import org.wso2.carbon.identity.authenticator.duo.DuoHttpClientRegistry;
+import org.wso2.carbon.identity.authenticator.duo.DuoRetryPolicy;
+import org.wso2.carbon.identity.authenticator.duo.internal.DuoAuthenticatorServiceComponent;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Proxy;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+/**
+ * Test cases for asynchronous Duo API requests, answered by a scripted interceptor instead of the Duo host.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({DuoAuthenticatorServiceComponent.class})
+public class DuoHttpAsyncTest {
+
+    private static final String PONG = "{\"stat\":\"OK\",\"response\":\"pong\"}";
+    private static final String UNAVAILABLE = "{\"stat\":\"FAIL\",\"code\":50301,\"message\":\"Unavailable\"}";
+
+    private ScriptedInterceptor interceptor;
+    private DuoHttpClientRegistry registry;
+    private CountDownLatch release;
+
+    @BeforeMethod
+    public void setUp() {
+        interceptor = new ScriptedInterceptor();
+        registry = new ScriptedRegistry(interceptor);
+        release = new CountDownLatch(1);
+        mockStatic(DuoAuthenticatorServiceComponent.class);
+        when(DuoAuthenticatorServiceComponent.getHttpClientRegistry()).thenReturn(registry);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        release.countDown();
+        registry.close();
+    }
+
+    @Test(description = "Test case for executeRequestAsync() completing with the Duo response.")
+    public void testExecuteRequestAsync() throws Exception {
+        interceptor.then(chain -> respond(chain, 200, PONG));
+        DuoHttp duoRequest = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET, "localhost", "/auth/v2/ping");
+        Assert.assertEquals(duoRequest.executeRequestAsync().get(5, TimeUnit.SECONDS), "pong");
+        Assert.assertEquals(duoRequest.getStatusCode(), 200);
+        Assert.assertEquals(interceptor.getCallCount(), 1);
+    }
+
+    @Test(description = "Test case for executeRequestAsync() failing with a TimeoutException after the timeout.")
+    public void testExecuteRequestAsyncDeadline() throws Exception {
+        interceptor.then(chain -> {
+            await(release);
+            return respond(chain, 200, PONG);
+        });
+        DuoHttp duoRequest = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET, "localhost", "/auth/v2/ping");
+        duoRequest.setTimeout(100, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        try {
+            duoRequest.executeRequestAsync().get(5, TimeUnit.SECONDS);
+            Assert.fail("A request without a response should time out");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test(description = "Test case for executeRequestAsync() failing without a call when no deadline can be set.")
+    public void testExecuteRequestAsyncSchedulerRejected() throws Exception {
+        interceptor.then(chain -> respond(chain, 200, PONG));
+        registry.getScheduler().shutdownNow();
+        DuoHttp duoRequest = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET, "localhost", "/auth/v2/ping");
+        try {
+            duoRequest.executeRequestAsync().get(5, TimeUnit.SECONDS);
+            Assert.fail("A request without a deadline should not be sent");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        Assert.assertEquals(interceptor.getCallCount(), 0);
+    }
+
+    @Test(description = "Test case for cancelling the future of executeRequestAsync() cancelling the HTTP call.")
+    public void testCancelExecuteRequestAsync() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CompletableFuture<Exception> outcome = new CompletableFuture<>();
+        interceptor.then(chain -> {
+            started.countDown();
+            await(release);
+            try {
+                // A cancelled call fails here instead of going to the network.
+                return chain.proceed(chain.request());
+            } catch (IOException e) {
+                outcome.complete(e);
+                throw e;
+            }
+        });
+        DuoHttp duoRequest = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET, "localhost:1", "/auth/v2/ping");
+        CompletableFuture<Object> future = duoRequest.executeRequestAsync();
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(future.cancel(true));
+        release.countDown();
+        Assert.assertEquals(outcome.get(5, TimeUnit.SECONDS).getMessage(), "Canceled");
+    }
+
+    @Test(description = "Test case for executeRequestAsync() retrying a GET answered with 503.")
+    public void testRetryOnServiceUnavailable() throws Exception {
+        interceptor.then(chain -> respond(chain, 503, UNAVAILABLE, null)).then(chain -> respond(chain, 200, PONG));
+        DuoRetryPolicy retryPolicy = new DuoRetryPolicy(3, 1, 50, 20, false, 0);
+        DuoHttp duoRequest = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET, "localhost", "/auth/v2/ping");
+        duoRequest.setRetryPolicy(retryPolicy);
+        Assert.assertEquals(duoRequest.executeRequestAsync().get(5, TimeUnit.SECONDS), "pong");
+        Assert.assertEquals(interceptor.getCallCount(), 2);
+        Assert.assertEquals(retryPolicy.getRetryBudget().getUsedCount(), 1);
+    }
+
+    @Test(description = "Test case for executeRequestAsync() waiting for the Retry-After of a 503 before retrying.")
+    public void testRetryAfter() throws Exception {
+        interceptor.then(chain -> respond(chain, 503, UNAVAILABLE, "1")).then(chain -> respond(chain, 200, PONG));
+        DuoHttp duoRequest = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET, "localhost", "/auth/v2/ping");
+        duoRequest.setRetryPolicy(new DuoRetryPolicy(3, 1, 2000, 20, false, 0));
+        long start = System.nanoTime();
+        Assert.assertEquals(duoRequest.executeRequestAsync().get(5, TimeUnit.SECONDS), "pong");
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(1000));
+        Assert.assertEquals(interceptor.getCallCount(), 2);
+    }
+
+    @Test(description = "Test case for executeRequestAsync() failing when Retry-After is longer than the maximum " +
+            "delay.")
+    public void testRetryAfterAboveMaxDelay() throws Exception {
+        interceptor.then(chain -> respond(chain, 503, UNAVAILABLE, "5")).then(chain -> respond(chain, 200, PONG));
+        DuoHttp duoRequest = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET, "localhost", "/auth/v2/ping");
+        duoRequest.setRetryPolicy(new DuoRetryPolicy(3, 1, 500, 20, false, 0));
+        try {
+            duoRequest.executeRequestAsync().get(5, TimeUnit.SECONDS);
+            Assert.fail("A Retry-After above the maximum delay should fail the request");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getMessage().contains("50301"));
+        }
+        Assert.assertEquals(interceptor.getCallCount(), 1);
+    }
+
+    @Test(description = "Test case for executeRequestAsync() giving up once the retry budget is spent.")
+    public void testRetryBudgetExhausted() throws Exception {
+        for (int i = 0; i < 12; i++) {
+            interceptor.then(chain -> respond(chain, 503, UNAVAILABLE, null));
+        }
+        // No refill, so only the ten tokens the budget starts with can be spent.
+        DuoRetryPolicy retryPolicy = new DuoRetryPolicy(20, 1, 5, 0, false, 0);
+        DuoHttp duoRequest = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET, "localhost", "/auth/v2/ping");
+        duoRequest.setRetryPolicy(retryPolicy);
+        try {
+            duoRequest.executeRequestAsync().get(5, TimeUnit.SECONDS);
+            Assert.fail("A request that is never answered with success should fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getMessage().contains("50301"));
+        }
+        Assert.assertEquals(interceptor.getCallCount(), 11);
+        Assert.assertEquals(retryPolicy.getRetryBudget().getUsedCount(), 10);
+        Assert.assertEquals(retryPolicy.getRetryBudget().getDeniedCount(), 1);
+    }
+
+    @Test(description = "Test case for a hedged call answering before a slow first call.")
+    public void testHedgeWins() throws Exception {
+        interceptor.then(chain -> {
+            await(release);
+            return respond(chain, 200, "{\"stat\":\"OK\",\"response\":\"first\"}");
+        }).then(chain -> respond(chain, 200, PONG));
+        DuoRetryPolicy retryPolicy = new DuoRetryPolicy(1, 1, 50, 0, true, 5);
+        DuoHttp duoRequest = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET, "localhost", "/auth/v2/ping");
+        duoRequest.setRetryPolicy(retryPolicy);
+        duoRequest.setHedgeDelay(50, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(duoRequest.executeRequestAsync().get(5, TimeUnit.SECONDS), "pong");
+        Assert.assertEquals(interceptor.getCallCount(), 2);
+        Assert.assertEquals(retryPolicy.getHedgeBudget().getUsedCount(), 1);
+    }
+
+    @Test(description = "Test case for the first call answering while the hedged call is still running.")
+    public void testHedgeLoses() throws Exception {
+        final CountDownLatch hedged = new CountDownLatch(1);
+        final CountDownLatch firstRelease = new CountDownLatch(1);
+        interceptor.then(chain -> {
+            await(firstRelease);
+            return respond(chain, 200, "{\"stat\":\"OK\",\"response\":\"first\"}");
+        }).then(chain -> {
+            hedged.countDown();
+            await(release);
+            return respond(chain, 200, PONG);
+        });
+        DuoRetryPolicy retryPolicy = new DuoRetryPolicy(1, 1, 50, 0, true, 5);
+        DuoHttp duoRequest = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET, "localhost", "/auth/v2/ping");
+        duoRequest.setRetryPolicy(retryPolicy);
+        duoRequest.setHedgeDelay(50, TimeUnit.MILLISECONDS);
+        CompletableFuture<Object> future = duoRequest.executeRequestAsync();
+        Assert.assertTrue(hedged.await(5, TimeUnit.SECONDS));
+        firstRelease.countDown();
+        Assert.assertEquals(future.get(5, TimeUnit.SECONDS), "first");
+        Assert.assertEquals(retryPolicy.getHedgeBudget().getUsedCount(), 1);
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    static Response respond(Interceptor.Chain chain, int code, String body) {
+        return respond(chain, code, body, null);
+    }
+
+    static Response respond(Interceptor.Chain chain, int code, String body, String retryAfter) {
+        Response.Builder builder = new Response.Builder()
+                .request(chain.request())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .body(ResponseBody.create(DuoHttp.JSON, body));
+        if (retryAfter != null) {
+            builder.header("Retry-After", retryAfter);
+        }
+        return builder.build();
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+        return new PowerMockObjectFactory();
+    }
+
+    /**
+     * Answers the calls with the scripted steps in order, one step per attempt.
+     */
+    static class ScriptedInterceptor implements Interceptor {
+        private final Queue<Interceptor> steps = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        ScriptedInterceptor then(Interceptor step) {
+            steps.add(step);
+            return this;
+        }
+
+        int getCallCount() {
+            return calls.get();
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            calls.incrementAndGet();
+            Interceptor step = steps.poll();
+            if (step == null) {
+                throw new IOException("No scripted response left");
+            }
+            return step.intercept(chain);
+        }
+    }
+
+    /**
+     * Hands out clients that are answered by the scripted interceptor.
+     */
+    static class ScriptedRegistry extends DuoHttpClientRegistry {
+        private final Interceptor interceptor;
+
+        ScriptedRegistry(Interceptor interceptor) {
+            super(DuoAuthenticatorConstants.DEFAULT_HTTP_MAX_IDLE_CONNECTIONS,
+                    DuoAuthenticatorConstants.DEFAULT_HTTP_KEEP_ALIVE_DURATION);
+            this.interceptor = interceptor;
+        }
+
+        @Override
+        public OkHttpClient getClient(Proxy proxy, long timeoutMillis) {
+            OkHttpClient client = super.getClient(proxy, timeoutMillis).clone();
+            client.interceptors().add(interceptor);
+            return client;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoHttpClientRegistry;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class DuoHttpClientRegistryTest {
+
+    @Test(description = "Test case for parsing the offered HTTP protocols.")
+    public void testParseProtocols() {
+        Assert.assertEquals(DuoHttpClientRegistry.parseProtocols("h2,http/1.1"),
+                Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        Assert.assertEquals(DuoHttpClientRegistry.parseProtocols(" H2 , h2"),
+                Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        Assert.assertEquals(DuoHttpClientRegistry.parseProtocols("http/1.1, h2"),
+                Arrays.asList(Protocol.HTTP_1_1, Protocol.HTTP_2));
+    }
+
+    @Test(description = "Test case for falling back to HTTP/1.1 when no usable protocol is given.")
+    public void testParseProtocolsFallback() {
+        Assert.assertEquals(DuoHttpClientRegistry.parseProtocols(null), Collections.singletonList(Protocol.HTTP_1_1));
+        Assert.assertEquals(DuoHttpClientRegistry.parseProtocols("http/1.0,quic"),
+                Collections.singletonList(Protocol.HTTP_1_1));
+    }
+
+    @Test(description = "Test case for one client being kept per proxy and timeout, all sharing one pool.")
+    public void testClientReuse() {
+        DuoHttpClientRegistry registry = new DuoHttpClientRegistry(5, 60000);
+        Proxy proxy = new Proxy(Proxy.Type.HTTP, InetSocketAddress.createUnresolved("proxy.example.com", 3128));
+        OkHttpClient direct = registry.getClient(null, 5000L);
+        Assert.assertSame(registry.getClient(null, 5000L), direct);
+        Assert.assertSame(registry.getClient(null, 5), direct);
+        Assert.assertEquals(direct.getReadTimeout(), 5000);
+
+        OkHttpClient slow = registry.getClient(null, 10000L);
+        OkHttpClient proxied = registry.getClient(proxy, 5000L);
+        Assert.assertNotSame(slow, direct);
+        Assert.assertNotSame(proxied, direct);
+        Assert.assertSame(registry.getClient(proxy, 5000L), proxied);
+        Assert.assertEquals(proxied.getProxy(), proxy);
+        Assert.assertSame(slow.getConnectionPool(), direct.getConnectionPool());
+        Assert.assertSame(proxied.getConnectionPool(), direct.getConnectionPool());
+        Assert.assertSame(proxied.getDispatcher(), direct.getDispatcher());
+        Assert.assertEquals(registry.getClientCount(), 3);
+        Assert.assertEquals(registry.getClientLookupCount(), 6L);
+        registry.close();
+    }
+
+    @Test(description = "Test case for closing the registry shutting down its dispatcher and scheduler.")
+    public void testClose() {
+        DuoHttpClientRegistry registry = new DuoHttpClientRegistry(5, 60000);
+        OkHttpClient client = registry.getClient(null, 5000L);
+        registry.close();
+        Assert.assertTrue(client.getDispatcher().getExecutorService().isShutdown());
+        Assert.assertTrue(registry.getScheduler().isShutdown());
+        Assert.assertEquals(registry.getClientCount(), 0);
+        Assert.assertEquals(registry.getConnectionCount(), 0);
+    }
+
+    @Test(expectedExceptions = {IllegalStateException.class}, description = "Test case for getClient() after the "
+            + "registry is closed.")
+    public void testGetClientAfterClose() {
+        DuoHttpClientRegistry registry = new DuoHttpClientRegistry(5, 60000);
+        registry.close();
+        registry.getClient(null, 5000L);
+    }
+}
@@ -67,6 +67,9 @@ public class DuoHttpTest {
     @Test(description = "Test case for createQueryString() method.")
     public void testCreateQueryString() throws Exception {
         mockStatic(DuoUtil.class);
-        Assert.assertEquals(Whitebox.invokeMethod(duoHttp,"createQueryString"),null);
+        Assert.assertEquals(Whitebox.invokeMethod(duoHttp,"createQueryString"),"");
+        duoHttp.addParam("username", "john doe");
+        duoHttp.addParam("limit", "1");
+        Assert.assertEquals(Whitebox.invokeMethod(duoHttp,"createQueryString"),"limit=1&username=john%20doe");
     }
 }
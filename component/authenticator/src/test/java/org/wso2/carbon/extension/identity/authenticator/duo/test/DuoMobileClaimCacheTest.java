@@ -0,0 +1,70 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoMobileClaimCache;
+
+public class DuoMobileClaimCacheTest {
+
+    @Test(description = "Test case for cached mobile claims being kept per tenant and user.")
+    public void testPutAndGet() {
+        DuoMobileClaimCache cache = new DuoMobileClaimCache(60000, 10);
+        cache.putMobileClaim(-1234, "alice", "+94771234567");
+        cache.putMobileClaim(1, "alice", "+94777654321");
+        Assert.assertEquals(cache.getMobileClaim(-1234, "alice"), "+94771234567");
+        Assert.assertEquals(cache.getMobileClaim(1, "alice"), "+94777654321");
+        Assert.assertNull(cache.getMobileClaim(-1234, "bob"));
+    }
+
+    @Test(description = "Test case for cached mobile claims expiring after the time to live.")
+    public void testExpiry() throws Exception {
+        DuoMobileClaimCache cache = new DuoMobileClaimCache(50, 10);
+        cache.putMobileClaim(-1234, "alice", "+94771234567");
+        Assert.assertEquals(cache.getMobileClaim(-1234, "alice"), "+94771234567");
+        Thread.sleep(80);
+        Assert.assertNull(cache.getMobileClaim(-1234, "alice"));
+    }
+
+    @Test(description = "Test case for the least recently used mobile claim being evicted first.")
+    public void testEviction() {
+        DuoMobileClaimCache cache = new DuoMobileClaimCache(60000, 2);
+        cache.putMobileClaim(-1234, "alice", "1");
+        cache.putMobileClaim(-1234, "bob", "2");
+        cache.getMobileClaim(-1234, "alice");
+        cache.putMobileClaim(-1234, "carol", "3");
+        Assert.assertEquals(cache.getMobileClaim(-1234, "alice"), "1");
+        Assert.assertNull(cache.getMobileClaim(-1234, "bob"));
+        Assert.assertEquals(cache.getMobileClaim(-1234, "carol"), "3");
+    }
+
+    @Test(description = "Test case for dropping the cached mobile claims of one user or of every user.")
+    public void testInvalidate() {
+        DuoMobileClaimCache cache = new DuoMobileClaimCache(60000, 10);
+        cache.putMobileClaim(-1234, "alice", "1");
+        cache.putMobileClaim(-1234, "bob", "2");
+        Assert.assertTrue(cache.invalidate(-1234, "alice"));
+        Assert.assertFalse(cache.invalidate(-1234, "alice"));
+        Assert.assertNull(cache.getMobileClaim(-1234, "alice"));
+        Assert.assertEquals(cache.getMobileClaim(-1234, "bob"), "2");
+        cache.invalidateAll();
+        Assert.assertNull(cache.getMobileClaim(-1234, "bob"));
+    }
+}
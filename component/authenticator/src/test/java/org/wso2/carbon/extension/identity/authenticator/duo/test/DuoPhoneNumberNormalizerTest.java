@@ -0,0 +1,81 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoPhoneNumberNormalizer;
+import org.wso2.carbon.identity.authenticator.duo.DuoPhoneNumberSet;
+
+public class DuoPhoneNumberNormalizerTest {
+
+    @Test(description = "Test case for numbers written in different formats normalizing to the same value.")
+    public void testNormalize() {
+        DuoPhoneNumberNormalizer normalizer = new DuoPhoneNumberNormalizer("94");
+        Assert.assertEquals(normalizer.normalize("+94 77 123-4567"), 94771234567L);
+        Assert.assertEquals(normalizer.normalize("0094771234567"), 94771234567L);
+        Assert.assertEquals(normalizer.normalize("0771234567"), 94771234567L);
+        Assert.assertEquals(normalizer.normalize("(077) 123 4567"), 94771234567L);
+        Assert.assertEquals(normalizer.normalize("771234567"), 94771234567L);
+    }
+
+    @Test(description = "Test case for national numbers not being guessed as international ones.")
+    public void testNormalizeNationalNumberStartingWithCountryCode() {
+        DuoPhoneNumberNormalizer normalizer = new DuoPhoneNumberNormalizer("1");
+        Assert.assertEquals(normalizer.normalize("1234567890"), 11234567890L);
+        Assert.assertEquals(normalizer.normalize("+1234567890"), 1234567890L);
+    }
+
+    @Test(description = "Test case for trunk prefixed numbers without a default country code.")
+    public void testNormalizeTrunkPrefixWithoutCountryCode() {
+        DuoPhoneNumberNormalizer normalizer = new DuoPhoneNumberNormalizer(null);
+        Assert.assertEquals(normalizer.normalize("0771234567"), DuoPhoneNumberNormalizer.INVALID);
+        Assert.assertEquals(normalizer.normalize("0094771234567"), 94771234567L);
+        Assert.assertEquals(normalizer.normalize("94771234567"), 94771234567L);
+    }
+
+    @Test(description = "Test case for numbers that cannot be normalized.")
+    public void testNormalizeInvalid() {
+        DuoPhoneNumberNormalizer normalizer = new DuoPhoneNumberNormalizer(null);
+        Assert.assertEquals(normalizer.normalize(null), DuoPhoneNumberNormalizer.INVALID);
+        Assert.assertEquals(normalizer.normalize(""), DuoPhoneNumberNormalizer.INVALID);
+        Assert.assertEquals(normalizer.normalize("077-CALL-ME"), DuoPhoneNumberNormalizer.INVALID);
+        Assert.assertEquals(normalizer.normalize("+1 2345 6789 0123 4567"), DuoPhoneNumberNormalizer.INVALID);
+        Assert.assertEquals(normalizer.normalize("94+771234567"), DuoPhoneNumberNormalizer.INVALID);
+    }
+
+    @Test(description = "Test case for looking up normalized numbers in a phone number set.")
+    public void testPhoneNumberSet() throws Exception {
+        DuoPhoneNumberNormalizer normalizer = new DuoPhoneNumberNormalizer("1");
+        JSONArray phones = new JSONArray();
+        for (String number : new String[]{"+1 (555) 010-0001", "555.010.0002", "", "+15550100001"}) {
+            JSONObject phone = new JSONObject();
+            phone.put("number", number);
+            phones.put(phone);
+        }
+        DuoPhoneNumberSet phoneNumbers = DuoPhoneNumberSet.of(phones, normalizer);
+        Assert.assertEquals(phoneNumbers.size(), 2);
+        Assert.assertTrue(phoneNumbers.contains(normalizer.normalize("+15550100001")));
+        Assert.assertTrue(phoneNumbers.contains(normalizer.normalize("5550100002")));
+        Assert.assertFalse(phoneNumbers.contains(normalizer.normalize("5550100003")));
+        Assert.assertFalse(phoneNumbers.contains(DuoPhoneNumberNormalizer.INVALID));
+    }
+}
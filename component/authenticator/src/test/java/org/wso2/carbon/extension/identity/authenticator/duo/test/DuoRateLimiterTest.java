@@ -0,0 +1,102 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoRateLimiter;
+import org.wso2.carbon.identity.authenticator.duo.DuoUnavailableException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DuoRateLimiterTest {
+
+    private AtomicInteger calls;
+
+    @BeforeMethod
+    public void setUp() {
+        calls = new AtomicInteger();
+    }
+
+    @Test(description = "Test case for calls beyond the burst waiting for their token.")
+    public void testBurstThenWait() throws Exception {
+        DuoRateLimiter rateLimiter = new DuoRateLimiter(600, 2, 1000, 1000);
+        try {
+            Assert.assertTrue(rateLimiter.execute("ikey", this::call).isDone());
+            Assert.assertTrue(rateLimiter.execute("ikey", this::call).isDone());
+            CompletableFuture<Integer> third = rateLimiter.execute("ikey", this::call);
+            Assert.assertTrue(rateLimiter.execute("other", this::call).isDone());
+            Assert.assertFalse(third.isDone());
+            Assert.assertEquals(third.get(1, TimeUnit.SECONDS).intValue(), 4);
+
+            DuoRateLimiter.Bucket bucket = rateLimiter.getBuckets().get("ikey");
+            Assert.assertEquals(bucket.getPermitsUsedCount(), 3);
+            Assert.assertEquals(bucket.getDelayedCount(), 1);
+            Assert.assertTrue(bucket.getMaxWaitTimeMillis() <= 100);
+            Assert.assertEquals(rateLimiter.getBuckets().get("other").getDelayedCount(), 0);
+        } finally {
+            rateLimiter.shutdown();
+        }
+    }
+
+    @Test(description = "Test case for rejecting calls that would wait too long.")
+    public void testReject() throws Exception {
+        DuoRateLimiter rateLimiter = new DuoRateLimiter(60, 1, 100, 1000);
+        try {
+            Assert.assertTrue(rateLimiter.execute("ikey", this::call).isDone());
+            try {
+                rateLimiter.execute("ikey", this::call).get();
+                Assert.fail("The call over the rate limit was not rejected");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof DuoUnavailableException);
+            }
+            Assert.assertEquals(calls.get(), 1);
+            Assert.assertEquals(rateLimiter.getBuckets().get("ikey").getRejectedCount(), 1);
+        } finally {
+            rateLimiter.shutdown();
+        }
+    }
+
+    @Test(description = "Test case for pausing the calls of a key after Duo answered 429.")
+    public void testThrottled() throws Exception {
+        DuoRateLimiter rateLimiter = new DuoRateLimiter(6000, 10, 2000, 500);
+        try {
+            rateLimiter.onThrottled("ikey", "1");
+            CompletableFuture<Integer> paused = rateLimiter.execute("ikey", this::call);
+            Assert.assertFalse(paused.isDone());
+            paused.cancel(true);
+            Assert.assertEquals(rateLimiter.getBuckets().get("ikey").getPermitsUsedCount(), 0);
+
+            rateLimiter.onThrottled("ikey", "5");
+            Assert.assertTrue(rateLimiter.execute("ikey", this::call).isCompletedExceptionally());
+            Assert.assertEquals(rateLimiter.getBuckets().get("ikey").getThrottledCount(), 2);
+            Assert.assertEquals(calls.get(), 0);
+        } finally {
+            rateLimiter.shutdown();
+        }
+    }
+
+    private CompletableFuture<Integer> call() {
+        return CompletableFuture.completedFuture(calls.incrementAndGet());
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoAuthenticatorConstants;
+import org.wso2.carbon.identity.authenticator.duo.DuoHttp;
+import org.wso2.carbon.identity.authenticator.duo.DuoRequestExecutor;
+import org.wso2.carbon.identity.authenticator.duo.DuoUnavailableException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class DuoRequestExecutorTest {
+
+    @Test(description = "Test case for calls beyond the limit failing instead of waiting in the pool's queue.")
+    public void testPermitTakenBeforeSubmit() throws Exception {
+        DuoRequestExecutor executor = new DuoRequestExecutor(DuoRequestExecutor.MODE_POOLED, 1, 4);
+        BlockingRequest first = new BlockingRequest();
+        CompletableFuture<Object> running = executor.execute(first);
+        Assert.assertTrue(first.started.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(executor.getAvailablePermits(), 0);
+
+        BlockingRequest second = new BlockingRequest();
+        CompletableFuture<Object> rejected = executor.execute(second);
+        Assert.assertTrue(rejected.isCompletedExceptionally());
+        try {
+            rejected.get();
+            Assert.fail("The call should have been rejected");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof DuoUnavailableException);
+        }
+        Assert.assertEquals(second.started.getCount(), 1L);
+
+        first.release.countDown();
+        Assert.assertEquals(running.get(5, TimeUnit.SECONDS), "OK");
+        Assert.assertEquals(executor.getAvailablePermits(), 1);
+        executor.shutdown();
+    }
+
+    @Test(description = "Test case for a call started when the previous one completes getting its permit.")
+    public void testPermitReleasedBeforeCompletion() throws Exception {
+        final DuoRequestExecutor executor = new DuoRequestExecutor(DuoRequestExecutor.MODE_POOLED, 1, 2);
+        final BlockingRequest next = new BlockingRequest();
+        next.release.countDown();
+        final CompletableFuture<CompletableFuture<Object>> started = new CompletableFuture<>();
+        BlockingRequest first = new BlockingRequest();
+        executor.execute(first).thenRun(() -> started.complete(executor.execute(next)));
+        first.release.countDown();
+        Assert.assertEquals(started.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS), "OK");
+        executor.shutdown();
+    }
+
+    @Test(description = "Test case for cancelling a call interrupting the thread running it.")
+    public void testCancelInterruptsWorker() throws Exception {
+        DuoRequestExecutor executor = new DuoRequestExecutor(DuoRequestExecutor.MODE_POOLED, 2, 2);
+        BlockingRequest request = new BlockingRequest();
+        CompletableFuture<Object> response = executor.execute(request);
+        Assert.assertTrue(request.started.await(5, TimeUnit.SECONDS));
+        response.cancel(true);
+        Assert.assertTrue(request.interrupted.await(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getAvailablePermits() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(executor.getAvailablePermits(), 2);
+        executor.shutdown();
+    }
+
+    @Test(description = "Test case for cancelling a call that has not started giving its permit back.")
+    public void testCancelBeforeStart() throws Exception {
+        DuoRequestExecutor executor = new DuoRequestExecutor(DuoRequestExecutor.MODE_POOLED, 2, 1);
+        BlockingRequest first = new BlockingRequest();
+        executor.execute(first);
+        Assert.assertTrue(first.started.await(5, TimeUnit.SECONDS));
+        BlockingRequest queued = new BlockingRequest();
+        CompletableFuture<Object> response = executor.execute(queued);
+        Assert.assertEquals(executor.getAvailablePermits(), 0);
+        response.cancel(true);
+        Assert.assertEquals(executor.getAvailablePermits(), 1);
+        first.release.countDown();
+        Thread.sleep(50);
+        Assert.assertEquals(queued.started.getCount(), 1L);
+        executor.shutdown();
+    }
+
+    @Test(description = "Test case for the virtual mode falling back to the pool on JDKs without virtual threads.")
+    public void testMode() {
+        DuoRequestExecutor executor = new DuoRequestExecutor(DuoRequestExecutor.MODE_VIRTUAL, 2, 2);
+        boolean virtualThreads;
+        try {
+            Thread.class.getMethod("ofVirtual");
+            virtualThreads = true;
+        } catch (NoSuchMethodException e) {
+            virtualThreads = false;
+        }
+        Assert.assertEquals(executor.getMode(), virtualThreads ? DuoRequestExecutor.MODE_VIRTUAL
+                : DuoRequestExecutor.MODE_POOLED);
+        executor.shutdown();
+        Assert.assertEquals(new DuoRequestExecutor(null, 2, 2).getMode(), DuoRequestExecutor.MODE_ASYNC);
+    }
+
+    /**
+     * Request that blocks until it is released or interrupted instead of calling Duo.
+     */
+    private static class BlockingRequest extends DuoHttp {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+
+        private BlockingRequest() {
+            super(DuoAuthenticatorConstants.HTTP_GET, "api-1.duosecurity.com", DuoAuthenticatorConstants.API_USER);
+        }
+
+        @Override
+        public Object executeRequest() throws Exception {
+            started.countDown();
+            try {
+                release.await();
+                return "OK";
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+        }
+    }
+}
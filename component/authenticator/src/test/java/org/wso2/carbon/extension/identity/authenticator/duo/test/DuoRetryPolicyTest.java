@@ -0,0 +1,86 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoRetryPolicy;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+public class DuoRetryPolicyTest {
+
+    @Test(description = "Test case for the responses and failures that are retried.")
+    public void testIsRetryable() {
+        DuoRetryPolicy retryPolicy = new DuoRetryPolicy(3, 100, 2000, 10, false, 5);
+        Assert.assertTrue(retryPolicy.isRetryable(429));
+        Assert.assertTrue(retryPolicy.isRetryable(503));
+        Assert.assertFalse(retryPolicy.isRetryable(501));
+        Assert.assertFalse(retryPolicy.isRetryable(400));
+        Assert.assertFalse(retryPolicy.isRetryable(200));
+        Assert.assertTrue(retryPolicy.isRetryable(new IOException("Connection reset")));
+        Assert.assertFalse(retryPolicy.isRetryable(new SocketTimeoutException()));
+    }
+
+    @Test(description = "Test case for the jittered exponential backoff and the attempt limit.")
+    public void testNextDelayMillis() {
+        DuoRetryPolicy retryPolicy = new DuoRetryPolicy(3, 100, 150, 100, false, 5);
+        for (int i = 0; i < 5; i++) {
+            long first = retryPolicy.nextDelayMillis(1, null);
+            long second = retryPolicy.nextDelayMillis(2, null);
+            Assert.assertTrue(first >= 0 && first <= 100, "first delay " + first);
+            Assert.assertTrue(second >= 0 && second <= 150, "second delay " + second);
+            Assert.assertEquals(retryPolicy.nextDelayMillis(3, null), -1L);
+            retryPolicy.onRequest();
+            retryPolicy.onRequest();
+        }
+    }
+
+    @Test(description = "Test case for honouring Retry-After.")
+    public void testRetryAfter() {
+        DuoRetryPolicy retryPolicy = new DuoRetryPolicy(3, 10, 5000, 10, false, 5);
+        Assert.assertTrue(retryPolicy.nextDelayMillis(1, "2") >= 2000);
+        Assert.assertEquals(retryPolicy.nextDelayMillis(1, "60"), -1L);
+        Assert.assertTrue(retryPolicy.nextDelayMillis(1, "Wed, 21 Oct 2015 07:28:00 GMT") <= 10);
+    }
+
+    @Test(description = "Test case for the retry and hedge budgets limiting extra requests.")
+    public void testBudgets() {
+        DuoRetryPolicy retryPolicy = new DuoRetryPolicy(2, 1, 1, 50, true, 0);
+        int retries = 0;
+        while (retryPolicy.nextDelayMillis(1, null) >= 0) {
+            retries++;
+        }
+        Assert.assertEquals(retries, 10);
+        retryPolicy.onRequest();
+        Assert.assertEquals(retryPolicy.nextDelayMillis(1, null), -1L);
+        retryPolicy.onRequest();
+        Assert.assertTrue(retryPolicy.nextDelayMillis(1, null) >= 0);
+        Assert.assertEquals(retryPolicy.getRetryBudget().getUsedCount(), 11L);
+        Assert.assertEquals(retryPolicy.getRetryBudget().getDeniedCount(), 2L);
+
+        int hedges = 0;
+        while (retryPolicy.tryHedge()) {
+            hedges++;
+        }
+        Assert.assertEquals(hedges, 10);
+        Assert.assertFalse(new DuoRetryPolicy(2, 1, 1, 50, false, 100).tryHedge());
+    }
+}
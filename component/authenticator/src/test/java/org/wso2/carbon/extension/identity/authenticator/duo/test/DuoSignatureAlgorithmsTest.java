@@ -0,0 +1,90 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoBase64;
+import org.wso2.carbon.identity.authenticator.duo.DuoHttp;
+import org.wso2.carbon.identity.authenticator.duo.DuoSignatureAlgorithm;
+import org.wso2.carbon.identity.authenticator.duo.DuoSignatureAlgorithms;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+public class DuoSignatureAlgorithmsTest {
+
+    @Test(description = "Test case for signRequest() signing a version 5 request with HMAC-SHA512.")
+    public void testSignRequestV5() throws Exception {
+        DuoHttp request = new DuoHttp("post", "API-XXXXXXXX.duosecurity.com", "/auth/v2/preauth");
+        request.addParam("username", "j\u00f6hn");
+        request.addParam("factor", "auto");
+        request.addHeader("X-Duo-Trace", "abc");
+        request.signRequest("ikey", "skey", 5);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        request.writeBody(body);
+        Assert.assertEquals(body.toString("US-ASCII"), "{\"factor\":\"auto\",\"username\":\"j\\u00f6hn\"}");
+
+        String date = request.getHeaders().get("Date");
+        Assert.assertNotNull(date);
+        String canon = date + "\nPOST\napi-xxxxxxxx.duosecurity.com\n/auth/v2/preauth\n\n"
+                + sha512Hex(body.toByteArray()) + "\n"
+                + sha512Hex("x-duo-trace\0abc".getBytes(StandardCharsets.UTF_8));
+        Mac mac = Mac.getInstance("HmacSHA512");
+        mac.init(new SecretKeySpec("skey".getBytes(StandardCharsets.UTF_8), "HmacSHA512"));
+        String signature = toHex(mac.doFinal(canon.getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(request.getHeaders().get("Authorization"),
+                "Basic " + DuoBase64.encodeBytes(("ikey:" + signature).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test(description = "Test case for get() falling back to version 1 for unknown versions.")
+    public void testGet() {
+        DuoSignatureAlgorithm v1 = DuoSignatureAlgorithms.get(DuoSignatureAlgorithms.V1);
+        Assert.assertEquals(DuoSignatureAlgorithms.get(3), v1);
+        Assert.assertFalse(v1.isDateSigned());
+        Assert.assertTrue(DuoSignatureAlgorithms.get(DuoSignatureAlgorithms.V2).isDateSigned());
+        Assert.assertEquals(DuoSignatureAlgorithms.get(DuoSignatureAlgorithms.V5).getMacAlgorithm(), "HmacSHA512");
+    }
+
+    @Test(description = "Test case for the body of a version 5 GET request being empty.")
+    public void testWriteBodyGet() throws Exception {
+        DuoHttp request = new DuoHttp("GET", "host", "/auth/v2/check");
+        request.addParam("a", "b");
+        request.signRequest("ikey", "skey", 5);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        request.writeBody(body);
+        Assert.assertEquals(body.size(), 0);
+    }
+
+    private static String sha512Hex(byte[] data) throws Exception {
+        return toHex(MessageDigest.getInstance("SHA-512").digest(data));
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoTenantBulkhead;
+import org.wso2.carbon.identity.authenticator.duo.DuoUnavailableException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+public class DuoTenantBulkheadTest {
+
+    @Test(description = "Test case for calls beyond the concurrency limit being queued and then shed.")
+    public void testQueueAndShed() throws Exception {
+        DuoTenantBulkhead bulkhead = new DuoTenantBulkhead(2, 1);
+        final List<CompletableFuture<String>> calls = new ArrayList<>();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(bulkhead.execute(1, () -> {
+                CompletableFuture<String> call = new CompletableFuture<>();
+                calls.add(call);
+                return call;
+            }));
+        }
+        Assert.assertEquals(calls.size(), 2);
+        Assert.assertTrue(results.get(3).isCompletedExceptionally());
+        try {
+            results.get(3).get();
+            Assert.fail("The call should have been shed");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof DuoUnavailableException);
+        }
+        DuoTenantBulkhead.Compartment compartment = bulkhead.getCompartments().get(1);
+        Assert.assertEquals(compartment.getQueueLength(), 1);
+
+        calls.get(0).complete("first");
+        Assert.assertEquals(results.get(0).get(), "first");
+        Assert.assertEquals(calls.size(), 3);
+        calls.get(2).complete("third");
+        Assert.assertEquals(results.get(2).get(), "third");
+
+        Assert.assertEquals(compartment.getExecutedCount(), 3L);
+        Assert.assertEquals(compartment.getQueuedCount(), 1L);
+        Assert.assertEquals(compartment.getRejectedCount(), 1L);
+        Assert.assertEquals(compartment.getRunningCount(), 1);
+    }
+
+    @Test(description = "Test case for tenants having separate limits.")
+    public void testTenantsAreIsolated() {
+        DuoTenantBulkhead bulkhead = new DuoTenantBulkhead(1, 0);
+        CompletableFuture<Object> first = bulkhead.execute(1, CompletableFuture::new);
+        CompletableFuture<Object> shed = bulkhead.execute(1, CompletableFuture::new);
+        CompletableFuture<Object> otherTenant = bulkhead.execute(2, CompletableFuture::new);
+        Assert.assertFalse(first.isDone());
+        Assert.assertTrue(shed.isCompletedExceptionally());
+        Assert.assertFalse(otherTenant.isDone());
+    }
+
+    @Test(description = "Test case for cancelling queued and running calls.")
+    public void testCancel() {
+        DuoTenantBulkhead bulkhead = new DuoTenantBulkhead(1, 1);
+        final CompletableFuture<Object> running = new CompletableFuture<>();
+        CompletableFuture<Object> first = bulkhead.execute(1, () -> running);
+        CompletableFuture<Object> queued = bulkhead.execute(1, CompletableFuture::new);
+        queued.cancel(true);
+        Assert.assertEquals(bulkhead.getCompartments().get(1).getQueueLength(), 0);
+        first.cancel(true);
+        Assert.assertTrue(running.isCancelled());
+        Assert.assertEquals(bulkhead.getCompartments().get(1).getRunningCount(), 0);
+    }
+}
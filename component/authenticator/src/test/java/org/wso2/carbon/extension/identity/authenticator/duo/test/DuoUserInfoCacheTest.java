@@ -0,0 +1,89 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserInfoCache;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserRecord;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DuoUserInfoCacheTest {
+    private AtomicInteger loads;
+    private DuoUserRecord userInfo;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        loads = new AtomicInteger();
+        JSONArray users = new JSONArray();
+        users.put(new JSONObject());
+        userInfo = new DuoUserRecord(users);
+    }
+
+    @Test(description = "Test case for a cached user being served without calling Duo.")
+    public void testGetCached() throws Exception {
+        DuoUserInfoCache cache = new DuoUserInfoCache(60000, 60000, 0, 10);
+        Assert.assertSame(cache.get("api-host", "admin", () -> load(userInfo)).get(), userInfo);
+        Assert.assertSame(cache.get("API-HOST", "admin", () -> load(userInfo)).get(), userInfo);
+        Assert.assertEquals(loads.get(), 1);
+        Assert.assertEquals(cache.getHitCount(), 1);
+    }
+
+    @Test(description = "Test case for users not registered in Duo being cached with the negative TTL.")
+    public void testGetNegativeDisabled() throws Exception {
+        DuoUserInfoCache cache = new DuoUserInfoCache(60000, 0, 0, 10);
+        cache.get("api-host", "unknown", () -> load(new DuoUserRecord(new JSONArray()))).get();
+        cache.get("api-host", "unknown", () -> load(new DuoUserRecord(new JSONArray()))).get();
+        Assert.assertEquals(loads.get(), 2);
+        Assert.assertEquals(cache.size(), 0);
+    }
+
+    @Test(description = "Test case for an entry close to expiry being refreshed in the background.")
+    public void testGetRefreshAhead() throws Exception {
+        DuoUserInfoCache cache = new DuoUserInfoCache(60000, 60000, 60000, 10);
+        cache.get("api-host", "admin", () -> load(userInfo)).get();
+        DuoUserRecord refreshed = new DuoUserRecord(new JSONArray());
+        Assert.assertSame(cache.get("api-host", "admin", () -> load(refreshed)).get(), userInfo);
+        Assert.assertEquals(cache.getRefreshCount(), 1);
+        Assert.assertEquals(loads.get(), 2);
+    }
+
+    @Test(description = "Test case for invalidate() and the max entry limit.")
+    public void testInvalidateAndMaxEntries() throws Exception {
+        DuoUserInfoCache cache = new DuoUserInfoCache(60000, 60000, 0, 2);
+        cache.get("api-host", "user1", () -> load(userInfo)).get();
+        cache.get("api-host", "user2", () -> load(userInfo)).get();
+        cache.get("api-host", "user3", () -> load(userInfo)).get();
+        Assert.assertEquals(cache.size(), 2);
+        cache.invalidate("api-host", "user3");
+        Assert.assertEquals(cache.size(), 1);
+        cache.invalidateAll();
+        Assert.assertEquals(cache.size(), 0);
+    }
+
+    private CompletableFuture<DuoUserRecord> load(DuoUserRecord result) {
+        loads.incrementAndGet();
+        return CompletableFuture.completedFuture(result);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.json.JSONArray;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserLookupCoalescer;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserRecord;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DuoUserLookupCoalescerTest {
+    private DuoUserLookupCoalescer coalescer;
+    private AtomicInteger loads;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        coalescer = new DuoUserLookupCoalescer();
+        loads = new AtomicInteger();
+    }
+
+    @Test(description = "Test case for concurrent lookups of the same user sharing one call.")
+    public void testLookupCoalesced() throws Exception {
+        CompletableFuture<DuoUserRecord> call = new CompletableFuture<>();
+        CompletableFuture<DuoUserRecord> first = coalescer.lookup("host", "ikey", "admin", () -> load(call));
+        CompletableFuture<DuoUserRecord> second = coalescer.lookup("host", "ikey", "admin", () -> load(call));
+        Assert.assertEquals(coalescer.getInFlightCount(), 1);
+        DuoUserRecord userInfo = new DuoUserRecord(new JSONArray());
+        call.complete(userInfo);
+        Assert.assertSame(first.get(), userInfo);
+        Assert.assertSame(second.get(), userInfo);
+        Assert.assertEquals(loads.get(), 1);
+        Assert.assertEquals(coalescer.getCoalescedCount(), 1);
+        Assert.assertEquals(coalescer.getCoalescingRatio(), 0.5);
+        Assert.assertEquals(coalescer.getInFlightCount(), 0);
+    }
+
+    @Test(description = "Test case for lookups of different users not being coalesced.")
+    public void testLookupNotCoalescedForDifferentUsers() throws Exception {
+        coalescer.lookup("host", "ikey", "admin", () -> load(new CompletableFuture<DuoUserRecord>()));
+        coalescer.lookup("host", "ikey", "user", () -> load(new CompletableFuture<DuoUserRecord>()));
+        Assert.assertEquals(loads.get(), 2);
+        Assert.assertEquals(coalescer.getCoalescedCount(), 0);
+    }
+
+    @Test(description = "Test case for a caller cancelling its lookup without affecting others.")
+    public void testLookupCancelled() throws Exception {
+        CompletableFuture<DuoUserRecord> call = new CompletableFuture<>();
+        CompletableFuture<DuoUserRecord> first = coalescer.lookup("host", "ikey", "admin", () -> load(call));
+        CompletableFuture<DuoUserRecord> second = coalescer.lookup("host", "ikey", "admin", () -> load(call));
+        first.cancel(true);
+        DuoUserRecord userInfo = new DuoUserRecord(new JSONArray());
+        call.complete(userInfo);
+        Assert.assertSame(second.get(), userInfo);
+        Assert.assertFalse(call.isCancelled());
+    }
+
+    @Test(description = "Test case for the call being cancelled when every caller has cancelled its lookup.")
+    public void testLookupCancelledByAllCallers() throws Exception {
+        CompletableFuture<DuoUserRecord> call = new CompletableFuture<>();
+        CompletableFuture<DuoUserRecord> first = coalescer.lookup("host", "ikey", "admin", () -> load(call));
+        CompletableFuture<DuoUserRecord> second = coalescer.lookup("host", "ikey", "admin", () -> load(call));
+        first.cancel(true);
+        Assert.assertFalse(call.isCancelled());
+        second.cancel(true);
+        Assert.assertTrue(call.isCancelled());
+        Assert.assertEquals(coalescer.getInFlightCount(), 0);
+        CompletableFuture<DuoUserRecord> next = new CompletableFuture<>();
+        coalescer.lookup("host", "ikey", "admin", () -> load(next));
+        Assert.assertEquals(loads.get(), 2);
+    }
+
+    private CompletableFuture<DuoUserRecord> load(CompletableFuture<DuoUserRecord> call) {
+        loads.incrementAndGet();
+        return call;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.modules.testng.PowerMockObjectFactory;
+import org.testng.Assert;
+import org.testng.IObjectFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.ObjectFactory;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoAuthenticatorConstants;
+import org.wso2.carbon.identity.authenticator.duo.DuoMobileClaimCache;
+import org.wso2.carbon.identity.authenticator.duo.internal.DuoAuthenticatorServiceComponent;
+import org.wso2.carbon.identity.authenticator.duo.internal.DuoUserOperationEventListener;
+import org.wso2.carbon.user.core.UserStoreManager;
+import org.wso2.carbon.user.core.config.RealmConfiguration;
+import org.wso2.carbon.user.core.util.UserCoreUtil;
+
+import java.util.Collections;
+
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({DuoAuthenticatorServiceComponent.class, UserCoreUtil.class})
+public class DuoUserOperationEventListenerTest {
+
+    private DuoUserOperationEventListener listener;
+    private DuoMobileClaimCache mobileClaimCache;
+
+    @Mock
+    private UserStoreManager userStoreManager;
+
+    @Mock
+    private RealmConfiguration realmConfiguration;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        initMocks(this);
+        listener = new DuoUserOperationEventListener();
+        mobileClaimCache = new DuoMobileClaimCache(60000, 10);
+        mobileClaimCache.putMobileClaim(1, "alice", "+94771234567");
+        mobileClaimCache.putMobileClaim(1, "SECONDARY/alice", "+94771234567");
+        mobileClaimCache.putMobileClaim(1, "bob", "+94777654321");
+        mockStatic(DuoAuthenticatorServiceComponent.class);
+        mockStatic(UserCoreUtil.class);
+        when(DuoAuthenticatorServiceComponent.getMobileClaimCache()).thenReturn(mobileClaimCache);
+        when(userStoreManager.getTenantId()).thenReturn(1);
+        when(userStoreManager.getRealmConfiguration()).thenReturn(realmConfiguration);
+        when(UserCoreUtil.getDomainName(realmConfiguration)).thenReturn("SECONDARY");
+        when(UserCoreUtil.addDomainToName("alice", "SECONDARY")).thenReturn("SECONDARY/alice");
+    }
+
+    @Test(description = "Test case for a mobile claim update dropping the cached claim with and without the domain.")
+    public void testSetMobileClaim() throws Exception {
+        Assert.assertTrue(listener.doPostSetUserClaimValues("alice", Collections.singletonMap(
+                DuoAuthenticatorConstants.MOBILE_CLAIM, "+94777777777"), null, userStoreManager));
+        Assert.assertNull(mobileClaimCache.getMobileClaim(1, "alice"));
+        Assert.assertNull(mobileClaimCache.getMobileClaim(1, "SECONDARY/alice"));
+        Assert.assertEquals(mobileClaimCache.getMobileClaim(1, "bob"), "+94777654321");
+    }
+
+    @Test(description = "Test case for an update of other claims keeping the cached mobile claim.")
+    public void testSetOtherClaim() throws Exception {
+        Assert.assertTrue(listener.doPostSetUserClaimValues("alice", Collections.singletonMap(
+                "http://wso2.org/claims/givenname", "Alice"), null, userStoreManager));
+        Assert.assertEquals(mobileClaimCache.getMobileClaim(1, "alice"), "+94771234567");
+    }
+
+    @Test(description = "Test case for claim deletion and user deletion dropping the cached mobile claim.")
+    public void testDelete() throws Exception {
+        Assert.assertTrue(listener.doPostDeleteUserClaimValue("alice", userStoreManager));
+        Assert.assertNull(mobileClaimCache.getMobileClaim(1, "alice"));
+        mobileClaimCache.putMobileClaim(1, "alice", "+94771234567");
+        Assert.assertTrue(listener.doPostDeleteUser("alice", userStoreManager));
+        Assert.assertNull(mobileClaimCache.getMobileClaim(1, "alice"));
+        Assert.assertNull(mobileClaimCache.getMobileClaim(1, "SECONDARY/alice"));
+    }
+
+    @Test(description = "Test case for the listener doing nothing when the mobile claim cache is disabled.")
+    public void testCacheDisabled() throws Exception {
+        when(DuoAuthenticatorServiceComponent.getMobileClaimCache()).thenReturn(null);
+        Assert.assertTrue(listener.doPostDeleteUser("alice", userStoreManager));
+        Assert.assertEquals(mobileClaimCache.getMobileClaim(1, "alice"), "+94771234567");
+    }
+
+    @ObjectFactory
+    public IObjectFactory getObjectFactory() {
+        return new PowerMockObjectFactory();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserPrefetcher;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserRecord;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class DuoUserPrefetcherTest {
+
+    private DuoUserPrefetcher prefetcher;
+
+    @BeforeMethod
+    public void setUp() {
+        prefetcher = new DuoUserPrefetcher(60000, 10, 2);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        prefetcher.shutdown();
+    }
+
+    @Test(description = "Test case for taking the prefetch parked for an authentication context.")
+    public void testPrefetchAndTake() throws Exception {
+        CompletableFuture<DuoUserRecord> userInfo = new CompletableFuture<>();
+        prefetcher.prefetch("context-1", "alice", userInfo, () -> "+15550100001");
+        DuoUserPrefetcher.Prefetch prefetch = prefetcher.take("context-1", "alice");
+        Assert.assertNotNull(prefetch);
+        Assert.assertSame(prefetch.getUserInfo(), userInfo);
+        Assert.assertEquals(prefetch.getMobileClaim().get(5, TimeUnit.SECONDS), "+15550100001");
+        Assert.assertEquals(prefetcher.getUsedCount(), 1);
+        Assert.assertNull(prefetcher.take("context-1", "alice"));
+    }
+
+    @Test(description = "Test case for discarding a prefetch made for another user.")
+    public void testTakeWithOtherUser() {
+        CompletableFuture<DuoUserRecord> userInfo = new CompletableFuture<>();
+        prefetcher.prefetch("context-1", "alice", userInfo, () -> "+15550100001");
+        Assert.assertNull(prefetcher.take("context-1", "bob"));
+        Assert.assertTrue(userInfo.isCancelled());
+        Assert.assertEquals(prefetcher.getDiscardedCount(), 1);
+        Assert.assertEquals(prefetcher.getUsedCount(), 0);
+    }
+
+    @Test(description = "Test case for discarding a prefetch that was not taken within the time to live.")
+    public void testExpiry() throws Exception {
+        prefetcher.shutdown();
+        prefetcher = new DuoUserPrefetcher(50, 10, 2);
+        CompletableFuture<DuoUserRecord> userInfo = new CompletableFuture<>();
+        prefetcher.prefetch("context-1", "alice", userInfo, () -> "+15550100001");
+        Thread.sleep(80);
+        Assert.assertNull(prefetcher.take("context-1", "alice"));
+        Assert.assertTrue(userInfo.isCancelled());
+        Assert.assertEquals(prefetcher.getDiscardedCount(), 1);
+    }
+
+    @Test(description = "Test case for a failed mobile claim lookup completing the prefetch exceptionally.")
+    public void testFailedMobileClaimLoader() throws Exception {
+        prefetcher.prefetch("context-1", "alice", new CompletableFuture<DuoUserRecord>(), () -> {
+            throw new IOException("user store down");
+        });
+        DuoUserPrefetcher.Prefetch prefetch = prefetcher.take("context-1", "alice");
+        Assert.assertNotNull(prefetch);
+        try {
+            prefetch.getMobileClaim().get(5, TimeUnit.SECONDS);
+            Assert.fail("The failed mobile claim lookup should not return a value");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test(description = "Test case for a new prefetch of the same context cancelling the previous one.")
+    public void testPrefetchReplacesPrevious() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<DuoUserRecord> firstUserInfo = new CompletableFuture<>();
+        prefetcher.prefetch("context-1", "alice", firstUserInfo, () -> {
+            release.await();
+            return "+15550100001";
+        });
+        prefetcher.prefetch("context-1", "alice", new CompletableFuture<DuoUserRecord>(), () -> "+15550100002");
+        release.countDown();
+        Assert.assertTrue(firstUserInfo.isCancelled());
+        DuoUserPrefetcher.Prefetch prefetch = prefetcher.take("context-1", "alice");
+        Assert.assertNotNull(prefetch);
+        Assert.assertEquals(prefetch.getMobileClaim().get(5, TimeUnit.SECONDS), "+15550100002");
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.json.JSONException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserRecord;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserResponseParser;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+public class DuoUserResponseParserTest {
+
+    private final DuoUserResponseParser parser = new DuoUserResponseParser();
+
+    @Test(description = "Test case for reading the phone numbers of a user with many phones and groups.")
+    public void testParseUser() throws Exception {
+        StringBuilder reply = new StringBuilder("{\"response\": [{\"alias1\": null, \"created\": 1489612729, "
+                + "\"email\": \"jsmith@example.com\", \"groups\": [");
+        for (int i = 0; i < 200; i++) {
+            reply.append(i == 0 ? "" : ", ").append("{\"desc\": \"Group \\\"").append(i)
+                    .append("\\\" [phones]\", \"name\": \"group-").append(i).append("\"}");
+        }
+        reply.append("], \"is_enrolled\": true, \"last_login\": null, \"phones\": [");
+        for (int i = 0; i < 50; i++) {
+            reply.append(i == 0 ? "" : ", ").append("{\"activated\": true, \"capabilities\": [\"push\", \"sms\"], ")
+                    .append("\"extension\": \"\", \"name\": \"phone ").append(i).append("\", \"number\": \"+1555010")
+                    .append(String.format("%04d", i)).append("\", \"phone_id\": \"DP").append(i)
+                    .append("\", \"platform\": \"Apple iOS\", \"sms_passcodes_sent\": false, \"type\": \"Mobile\"}");
+        }
+        reply.append("], \"realname\": \"Jos\\u00e9 Smith\", \"status\": \"active\", \"tokens\": [], ")
+                .append("\"user_id\": \"DU3RP9I2WOC59VZX672N\", \"username\": \"jsmith\"}], \"stat\": \"OK\"}");
+
+        DuoUserRecord record = parse(reply.toString());
+        Assert.assertTrue(record.isRegistered());
+        Assert.assertEquals(record.getPhones().length, 50);
+        Assert.assertEquals(record.getPhones()[0], "+15550100000");
+        Assert.assertEquals(record.getPhones()[49], "+15550100049");
+    }
+
+    @Test(description = "Test case for decoding escaped and non-ASCII phone numbers.")
+    public void testParseEscapedNumbers() throws Exception {
+        DuoUserRecord record = parse("{\"stat\":\"OK\",\"response\":[{\"phones\":[{\"number\":\"+1\\u0020555\"},"
+                + "{\"number\":\"\u0661\u0662\"},{\"type\":\"Landline\"},{\"number\":\"a\\\\b\\\"c\"}]}]}");
+        Assert.assertEquals(record.getPhones(), new String[]{"+1 555", "\u0661\u0662", "", "a\\b\"c"});
+    }
+
+    @Test(description = "Test case for a username that is not registered in Duo.")
+    public void testParseUnregistered() throws Exception {
+        DuoUserRecord record = parse("{\"response\": [], \"stat\": \"OK\"}");
+        Assert.assertFalse(record.isRegistered());
+        Assert.assertEquals(record.getUserInfo().length(), 0);
+    }
+
+    @Test(description = "Test case for a user without a phones array.", expectedExceptions = JSONException.class)
+    public void testParseUserWithoutPhones() throws Exception {
+        DuoUserRecord record = parse("{\"response\": [{\"username\": \"jsmith\", \"phones\": null}], "
+                + "\"stat\": \"OK\"}");
+        Assert.assertTrue(record.isRegistered());
+        record.getPhones();
+    }
+
+    @Test(description = "Test case for an error reply of Duo.")
+    public void testParseFailure() {
+        try {
+            parse("{\"code\": 40103, \"message\": \"Invalid signature in request credentials\", \"stat\": \"FAIL\"}");
+            Assert.fail("The error reply was accepted");
+        } catch (Exception e) {
+            Assert.assertEquals(e.getMessage(), "Duo error code (40103): Invalid signature in request credentials");
+        }
+    }
+
+    @Test(description = "Test case for a truncated reply.", expectedExceptions = JSONException.class)
+    public void testParseTruncated() throws Exception {
+        parse("{\"response\": [{\"phones\": [{\"number\": \"+1555");
+    }
+
+    private DuoUserRecord parse(String reply) throws Exception {
+        return parser.parse(new ByteArrayInputStream(reply.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ *  Copyright (c) 2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.extension.identity.authenticator.duo.test;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.carbon.identity.authenticator.duo.DuoBase64;
+import org.wso2.carbon.identity.authenticator.duo.DuoWeb;
+import org.wso2.carbon.identity.authenticator.duo.DuoWebException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+public class DuoWebTest {
+    private static final String IKEY = "DIXXXXXXXXXXXXXXXXXX";
+    private static final String SKEY = "deadbeefdeadbeefdeadbeefdeadbeefdeadbeef";
+    private static final String AKEY = "useacustomerprovidedapplicationsecretkey";
+    private static final long TIME = 1500000000;
+
+    private static final String[] USERNAMES = {"admin", "user@carbon.super", "", "\u00fcn\u00efc\u00f6de", "a|b", "x"};
+    private static final String[] IKEYS = {IKEY, IKEY, IKEY, "", "DIYYYYYYYYYYYYYYYYYY", IKEY + "|"};
+    private static final String[] EXPIRES = {"1500000300", "1500000300", "+1500000300", "1500000000", "-1", "",
+            "abc", "99999999999999999999", "\u0661\u0665\u0660\u0660\u0660\u0660\u0660\u0663\u0660\u0660",
+            "0001500000300", "+", "1500000300|", "1500000300||x"};
+    private static final String[] TAILS = {"", "", "", "|", "||", "|x"};
+    private static final String MUTATIONS = ":|=+/ \n\u00e9AZaz09";
+
+    @Test(description = "Test case for verifyResponse() with a response signed the way Duo signs it.")
+    public void testVerifyResponse() throws Exception {
+        String response = sign(SKEY, "AUTH", "admin|" + IKEY + "|1500000300") + ":"
+                + sign(AKEY, "APP", "admin|" + IKEY + "|1500000300");
+        Assert.assertEquals(DuoWeb.verifyResponse(IKEY, SKEY, AKEY, response, TIME), "admin");
+    }
+
+    @Test(description = "Test case for verifyResponse() rejecting expired and malformed responses.",
+            expectedExceptions = DuoWebException.class)
+    public void testVerifyResponseExpired() throws Exception {
+        String response = sign(SKEY, "AUTH", "admin|" + IKEY + "|1500000000") + ":"
+                + sign(AKEY, "APP", "admin|" + IKEY + "|1500000300");
+        DuoWeb.verifyResponse(IKEY, SKEY, AKEY, response, TIME);
+    }
+
+    @Test(description = "Test case for verifyResponse() accepting and rejecting the same responses as the split " +
+            "based parser it replaced.")
+    public void testVerifyResponseFuzz() throws Exception {
+        Random random = new Random(20170101L);
+        int accepted = 0;
+        for (int i = 0; i < 20000; i++) {
+            String cookie = randomCookie(random);
+            String response = randomVals(random, SKEY, "AUTH", cookie) + ":"
+                    + randomVals(random, AKEY, "APP", random.nextInt(5) == 0 ? randomCookie(random) : cookie)
+                    + pick(random, new String[]{"", "", "", ":", "::", ":junk"});
+            if (random.nextInt(10) == 0) {
+                response = mutate(random, response);
+            }
+            String expected = null;
+            String actual = null;
+            Exception expectedError = null;
+            Exception actualError = null;
+            try {
+                expected = LegacyDuoWeb.verifyResponse(IKEY, SKEY, AKEY, response, TIME);
+            } catch (Exception e) {
+                expectedError = e;
+            }
+            try {
+                actual = DuoWeb.verifyResponse(IKEY, SKEY, AKEY, response, TIME);
+            } catch (Exception e) {
+                actualError = e;
+            }
+            Assert.assertEquals(actualError == null, expectedError == null, "Accept mismatch for " + response);
+            Assert.assertEquals(actual, expected, "Username mismatch for " + response);
+            if (actualError == null) {
+                accepted++;
+            }
+        }
+        Assert.assertTrue(accepted > 500);
+    }
+
+    private static String randomCookie(Random random) {
+        return pick(random, USERNAMES) + "|" + pick(random, IKEYS) + "|" + pick(random, EXPIRES);
+    }
+
+    private static String randomVals(Random random, String key, String prefix, String cookie) throws Exception {
+        String b64 = encode(random, cookie.getBytes("UTF-8"));
+        String vals = (random.nextInt(20) == 0 ? prefix.toLowerCase() : prefix) + "|" + b64;
+        String sig = hmacSign(random.nextInt(20) == 0 ? AKEY + SKEY : key, vals);
+        if (random.nextInt(20) == 0) {
+            sig = sig.toUpperCase();
+        }
+        return vals + "|" + sig + pick(random, TAILS);
+    }
+
+    private static String encode(Random random, byte[] data) throws Exception {
+        switch (random.nextInt(8)) {
+            case 0:
+                String spaced = Base64.getEncoder().encodeToString(data);
+                int index = random.nextInt(spaced.length() + 1);
+                return spaced.substring(0, index) + pick(random, new String[]{" ", "\n", "\t"})
+                        + spaced.substring(index);
+            case 1:
+                return Base64.getEncoder().withoutPadding().encodeToString(data);
+            case 2:
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+                gzip.write(data);
+                gzip.close();
+                return Base64.getEncoder().encodeToString(bytes.toByteArray());
+            case 3:
+                return Base64.getEncoder().encodeToString(data) + pick(random, new String[]{"AB", "=", "*"});
+            case 4:
+                return mutate(random, Base64.getEncoder().encodeToString(data));
+            default:
+                return Base64.getEncoder().encodeToString(data);
+        }
+    }
+
+    private static String mutate(Random random, String value) {
+        StringBuilder builder = new StringBuilder(value);
+        int index = random.nextInt(builder.length() + 1);
+        char c = MUTATIONS.charAt(random.nextInt(MUTATIONS.length()));
+        switch (random.nextInt(3)) {
+            case 0:
+                builder.insert(index, c);
+                break;
+            case 1:
+                if (index < builder.length()) {
+                    builder.deleteCharAt(index);
+                }
+                break;
+            default:
+                if (index < builder.length()) {
+                    builder.setCharAt(index, c);
+                }
+        }
+        return builder.toString();
+    }
+
+    private static String sign(String key, String prefix, String cookie) throws Exception {
+        String vals = prefix + "|" + DuoBase64.encodeBytes(cookie.getBytes());
+        return vals + "|" + hmacSign(key, vals);
+    }
+
+    private static String hmacSign(String key, String data) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA1");
+        mac.init(new SecretKeySpec(key.getBytes(), "HmacSHA1"));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : mac.doFinal(data.getBytes())) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    /**
+     * The split based parser that DuoWeb used before, kept as the reference for the fuzz test.
+     */
+    private static class LegacyDuoWeb {
+
+        static String verifyResponse(String ikey, String skey, String akey, String sig_response, long time)
+                throws Exception {
+            final String[] sigs = sig_response.split(":");
+            final String auth_user = parseVals(skey, sigs[0], "AUTH", ikey, time);
+            final String app_user = parseVals(akey, sigs[1], "APP", ikey, time);
+            if (!auth_user.equals(app_user)) {
+                throw new DuoWebException("Authentication failed.");
+            }
+            return auth_user;
+        }
+
+        static String parseVals(String key, String val, String prefix, String ikey, long time) throws Exception {
+            final String[] parts = val.split("\\|");
+            if (parts.length != 3) {
+                throw new DuoWebException("Invalid response");
+            }
+            final String sig = hmacSign(key, parts[0] + "|" + parts[1]);
+            if (!hmacSign(key, sig).equals(hmacSign(key, parts[2]))) {
+                throw new DuoWebException("Invalid response");
+            }
+            if (!parts[0].equals(prefix)) {
+                throw new DuoWebException("Invalid response");
+            }
+            final String cookie = new String(DuoBase64.decode(parts[1]));
+            final String[] cookie_parts = cookie.split("\\|");
+            if (cookie_parts.length != 3) {
+                throw new DuoWebException("Invalid response");
+            }
+            if (!cookie_parts[1].equals(ikey)) {
+                throw new DuoWebException("Invalid response");
+            }
+            if (time >= Long.parseLong(cookie_parts[2])) {
+                throw new DuoWebException("Transaction has expired. Please check that the system time is correct.");
+            }
+            return cookie_parts[0];
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.duo.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.wso2.carbon.identity.authenticator.duo.DuoAuthenticatorConstants;
+import org.wso2.carbon.identity.authenticator.duo.DuoHttp;
+import org.wso2.carbon.identity.authenticator.duo.DuoRequestExecutor;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserResponseParser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for a burst of concurrent Duo user lookups, the call behind mobile number verification, to complete in each
+ * ExecutionMode against a stub Duo server. The calls get a timeout long enough for the whole burst, so that the
+ * modes are compared on how fast they get through it rather than on how many calls time out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DuoRequestExecutorBenchmark {
+
+    private static final String IKEY = "DIXXXXXXXXXXXXXXXXXX";
+    private static final String SKEY = "deadbeefdeadbeefdeadbeefdeadbeefdeadbeef";
+    private static final DuoUserResponseParser USER_RESPONSE_PARSER = new DuoUserResponseParser();
+
+    @Param({DuoRequestExecutor.MODE_ASYNC, DuoRequestExecutor.MODE_VIRTUAL, DuoRequestExecutor.MODE_POOLED})
+    public String mode;
+
+    @Param({"1000", "5000", "10000"})
+    public int verifications;
+
+    @Param({"20"})
+    public int poolSize;
+
+    @Param({"10"})
+    public long latencyMillis;
+
+    private StubDuoRegistry registry;
+    private DuoRequestExecutor requestExecutor;
+
+    @Setup
+    public void setUp() throws Exception {
+        // The async mode gets as many dispatcher slots as the pooled mode gets threads.
+        registry = new StubDuoRegistry(poolSize, latencyMillis);
+        StubDuoRegistry.install(registry);
+        requestExecutor = new DuoRequestExecutor(mode, verifications, poolSize);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        requestExecutor.shutdown();
+        StubDuoRegistry.install(null);
+        registry.close();
+    }
+
+    @Benchmark
+    public void verifyMobileNumbers(Blackhole blackhole) throws Exception {
+        List<CompletableFuture<Object>> results = new ArrayList<>(verifications);
+        for (int i = 0; i < verifications; i++) {
+            DuoHttp duoRequest = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET, StubDuoRegistry.HOST,
+                    DuoAuthenticatorConstants.API_USER);
+            duoRequest.addParam(DuoAuthenticatorConstants.DUO_USERNAME, "user" + i);
+            duoRequest.signRequest(IKEY, SKEY);
+            duoRequest.setResponseParser(USER_RESPONSE_PARSER);
+            duoRequest.setTimeout(10, TimeUnit.MINUTES);
+            results.add(requestExecutor.execute(duoRequest));
+        }
+        for (CompletableFuture<Object> result : results) {
+            blackhole.consume(result.get());
+        }
+    }
+}
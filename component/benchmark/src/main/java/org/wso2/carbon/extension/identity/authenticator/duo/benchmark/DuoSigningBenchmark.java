@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.duo.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.identity.authenticator.duo.DuoAuthenticatorConstants;
+import org.wso2.carbon.identity.authenticator.duo.DuoBase64;
+import org.wso2.carbon.identity.authenticator.duo.DuoHmacSigner;
+import org.wso2.carbon.identity.authenticator.duo.DuoHttp;
+import org.wso2.carbon.identity.authenticator.duo.DuoSignatureAlgorithms;
+import org.wso2.carbon.identity.authenticator.duo.DuoWeb;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the signing done for every Duo login: the Admin API request signature in each signature version,
+ * and the signing of the Duo Web request and verification of its response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DuoSigningBenchmark {
+
+    private static final String IKEY = "DIXXXXXXXXXXXXXXXXXX";
+    private static final String SKEY = "deadbeefdeadbeefdeadbeefdeadbeefdeadbeef";
+    private static final String AKEY = "useacustomerprovidedapplicationsecretkey";
+    private static final String USERNAME = "admin";
+    private static final long TIME = 1500000000;
+
+    private String signedResponse;
+
+    @Setup
+    public void setUp() throws Exception {
+        String cookie = USERNAME + "|" + IKEY + "|" + (TIME + 300);
+        signedResponse = sign(SKEY, "AUTH", cookie) + ":" + sign(AKEY, "APP", cookie);
+    }
+
+    @Benchmark
+    public DuoHttp signAdminRequestV2() throws Exception {
+        return signAdminRequest(DuoSignatureAlgorithms.V2);
+    }
+
+    @Benchmark
+    public DuoHttp signAdminRequestV5() throws Exception {
+        return signAdminRequest(DuoSignatureAlgorithms.V5);
+    }
+
+    @Benchmark
+    public String signWebRequest() {
+        return DuoWeb.signRequest(IKEY, SKEY, AKEY, USERNAME, TIME);
+    }
+
+    @Benchmark
+    public String verifyWebResponse() throws Exception {
+        return DuoWeb.verifyResponse(IKEY, SKEY, AKEY, signedResponse, TIME);
+    }
+
+    private static DuoHttp signAdminRequest(int version) throws Exception {
+        DuoHttp duoRequest = new DuoHttp(DuoAuthenticatorConstants.HTTP_GET, StubDuoRegistry.HOST,
+                DuoAuthenticatorConstants.API_USER);
+        duoRequest.addParam(DuoAuthenticatorConstants.DUO_USERNAME, USERNAME);
+        duoRequest.signRequest(IKEY, SKEY, version);
+        return duoRequest;
+    }
+
+    private static String sign(String key, String prefix, String cookie) throws Exception {
+        String vals = prefix + "|" + DuoBase64.encodeBytes(cookie.getBytes(StandardCharsets.UTF_8));
+        return vals + "|" + DuoHmacSigner.signHex(DuoHmacSigner.HMAC_SHA1, key,
+                vals.getBytes(StandardCharsets.UTF_8));
+    }
+}
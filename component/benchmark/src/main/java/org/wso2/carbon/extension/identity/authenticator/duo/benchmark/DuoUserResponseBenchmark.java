@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.duo.benchmark;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserRecord;
+import org.wso2.carbon.identity.authenticator.duo.DuoUserResponseParser;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of reading the phone numbers out of a Duo Admin API users reply, streamed into a compact record as the
+ * connector does and, for comparison, parsed into a full JSON tree first.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DuoUserResponseBenchmark {
+
+    private static final DuoUserResponseParser USER_RESPONSE_PARSER = new DuoUserResponseParser();
+
+    @Param({"1", "10"})
+    public int phones;
+
+    @Param({"0", "50"})
+    public int groups;
+
+    private byte[] reply;
+
+    @Setup
+    public void setUp() {
+        StringBuilder json = new StringBuilder("{\"stat\":\"OK\",\"response\":[{\"user_id\":\"DUXXXXXXXXXXXXXXXXXX\","
+                + "\"username\":\"admin\",\"status\":\"active\",\"groups\":[");
+        for (int i = 0; i < groups; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"group_id\":\"DG").append(i)
+                    .append("\",\"name\":\"Group ").append(i).append("\",\"desc\":\"Users of group ").append(i)
+                    .append("\"}");
+        }
+        json.append("],\"phones\":[");
+        for (int i = 0; i < phones; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"phone_id\":\"DP").append(i)
+                    .append("\",\"number\":\"+1555555").append(String.format("%04d", i))
+                    .append("\",\"type\":\"Mobile\",\"activated\":true}");
+        }
+        json.append("]}]}");
+        reply = json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public DuoUserRecord streamUserReply() throws Exception {
+        return USER_RESPONSE_PARSER.parse(new ByteArrayInputStream(reply));
+    }
+
+    @Benchmark
+    public String[] parseUserReplyTree() throws Exception {
+        JSONObject result = new JSONObject(new String(reply, StandardCharsets.UTF_8));
+        JSONArray users = result.getJSONArray("response");
+        return DuoUserRecord.toPhoneNumbers(users.getJSONObject(0).getJSONArray("phones"));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.extension.identity.authenticator.duo.benchmark;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import org.wso2.carbon.identity.authenticator.duo.DuoAuthenticatorConstants;
+import org.wso2.carbon.identity.authenticator.duo.DuoHttp;
+import org.wso2.carbon.identity.authenticator.duo.DuoHttpClientRegistry;
+import org.wso2.carbon.identity.authenticator.duo.internal.DuoAuthenticatorServiceComponent;
+
+import java.io.InterruptedIOException;
+import java.lang.reflect.Field;
+import java.net.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Client registry standing in for a Duo server. Its clients answer every Duo API call in process with a users reply
+ * after a fixed latency, so that the benchmarks measure how the connector runs its calls and not the network.
+ */
+class StubDuoRegistry extends DuoHttpClientRegistry {
+
+    static final String HOST = "api-stub.duosecurity.com";
+
+    private static final String USER_REPLY = "{\"stat\":\"OK\",\"response\":[{\"user_id\":\"DUXXXXXXXXXXXXXXXXXX\","
+            + "\"username\":\"admin\",\"status\":\"active\",\"phones\":[{\"phone_id\":\"DPXXXXXXXXXXXXXXXXXX\","
+            + "\"number\":\"+15555550100\",\"type\":\"Mobile\",\"activated\":true}]}]}";
+
+    private final Interceptor stub;
+    private final ConcurrentMap<OkHttpClient, OkHttpClient> stubClients = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxRequestsPerHost the maximum number of asynchronous calls running at once against the stub host
+     * @param latencyMillis      the time the stub takes to answer a call in milliseconds
+     */
+    StubDuoRegistry(int maxRequestsPerHost, final long latencyMillis) {
+        super(DuoAuthenticatorConstants.DEFAULT_HTTP_MAX_IDLE_CONNECTIONS,
+                DuoAuthenticatorConstants.DEFAULT_HTTP_KEEP_ALIVE_DURATION, maxRequestsPerHost);
+        stub = chain -> {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            return new Response.Builder()
+                    .request(chain.request())
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .body(ResponseBody.create(DuoHttp.JSON, USER_REPLY))
+                    .build();
+        };
+    }
+
+    @Override
+    public OkHttpClient getClient(Proxy proxy, long timeoutMillis) {
+        return stubClients.computeIfAbsent(super.getClient(proxy, timeoutMillis), client -> {
+            OkHttpClient stubClient = client.clone();
+            stubClient.interceptors().add(stub);
+            return stubClient;
+        });
+    }
+
+    /**
+     * Make the Duo API calls of the connector use a registry, the way the authenticator bundle does when it is
+     * activated.
+     *
+     * @param registry the registry, or null to go back to the default one
+     * @throws ReflectiveOperationException if the registry cannot be set
+     */
+    static void install(DuoHttpClientRegistry registry) throws ReflectiveOperationException {
+        Field field = DuoAuthenticatorServiceComponent.class.getDeclaredField("httpClientRegistry");
+        field.setAccessible(true);
+        field.set(null, registry);
+    }
+}